@@ -94,15 +94,16 @@ public class BackgroundJobReportContentGenerator extends ParameterContentGenerat
     }
     reportComponent.setInputs( inputs );
 
-    final AsyncJobFileStagingHandler handler = new AsyncJobFileStagingHandler( userSession );
+    final IPentahoAsyncExecutor executor =
+      PentahoSystem.get( PentahoAsyncExecutor.class, PentahoAsyncExecutor.BEAN_NAME, null );
+
+    final AsyncJobFileStagingHandler handler = new AsyncJobFileStagingHandler( userSession,
+      executor != null && executor.isJournaled() );
     // will write to async stage target
     reportComponent.setOutputStream( handler.getStagingOutputStream() );
 
     final PentahoAsyncReportExecution
       asyncExec = new PentahoAsyncReportExecution( path, reportComponent, handler, userSession, instanceId, audit );
-
-    final IPentahoAsyncExecutor executor =
-      PentahoSystem.get( PentahoAsyncExecutor.class, PentahoAsyncExecutor.BEAN_NAME, null );
     // delegation
     if ( reportComponent.validate() ) {
       final UUID reservedId = getReservedId();
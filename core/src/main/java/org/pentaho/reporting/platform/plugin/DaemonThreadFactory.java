@@ -0,0 +1,76 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates named daemon threads for the background work of the plugin, so that none of it keeps the server from
+ * stopping. Pools shared by all requests are obtained with {@link #getSharedPool(String, int, int)} and shut down when
+ * the plugin is unloaded.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+  private static final Map<String, ExecutorService> sharedPools = new HashMap<>();
+
+  private final String name;
+  private final int priority;
+
+  public DaemonThreadFactory( final String name ) {
+    this( name, Thread.NORM_PRIORITY );
+  }
+
+  public DaemonThreadFactory( final String name, final int priority ) {
+    this.name = name;
+    this.priority = priority;
+  }
+
+  @Override public Thread newThread( final Runnable r ) {
+    final Thread thread = Executors.defaultThreadFactory().newThread( r );
+    thread.setDaemon( true );
+    thread.setPriority( priority );
+    thread.setName( name );
+    return thread;
+  }
+
+  /**
+   * @param name     thread name, also identifies the pool
+   * @param threads  pool size, used when the pool is created
+   * @param priority thread priority
+   * @return fixed size pool shared by all callers using the same name
+   */
+  public static synchronized ExecutorService getSharedPool( final String name, final int threads,
+                                                            final int priority ) {
+    ExecutorService pool = sharedPools.get( name );
+    if ( pool == null || pool.isShutdown() ) {
+      pool = Executors.newFixedThreadPool( threads, new DaemonThreadFactory( name, priority ) );
+      sharedPools.put( name, pool );
+    }
+    return pool;
+  }
+
+  /**
+   * Stops the shared pools, tasks still running are interrupted.
+   */
+  public static synchronized void shutdownSharedPools() {
+    for ( final ExecutorService pool : sharedPools.values() ) {
+      pool.shutdownNow();
+    }
+    sharedPools.clear();
+  }
+}
@@ -19,6 +19,7 @@ import java.io.OutputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.pentaho.platform.api.engine.IParameterProvider;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
@@ -52,17 +53,23 @@ public class DownloadReportContentHandler {
     // in the future
     if ( !file.isFolder() && !file.getPath().equals( "/" ) ) {
       SimpleRepositoryFileData fileData = repository.getDataForRead( file.getId(), SimpleRepositoryFileData.class );
-      InputStream input = fileData.getStream();
-      final byte[] data = input.toString().getBytes();
-      if ( data == null ) {
+      final InputStream input = fileData.getStream();
+      if ( input == null ) {
         response.setStatus( HttpServletResponse.SC_BAD_REQUEST );
       } else {
         response.setHeader( "Content-Disposition", "attach; filename=\"" + file.getName() + "\"" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         response.setHeader( "Content-Description", file.getName() ); //$NON-NLS-1$
         response.setDateHeader( "Last-Modified", file.getLastModifiedDate().getTime() ); //$NON-NLS-1$
-        response.setContentLength( data.length );
+        if ( file.getFileSize() > 0 ) {
+          ExecuteReportContentHandler.setContentLength( response, file.getFileSize() );
+        }
         response.setHeader( "Cache-Control", "private, max-age=0, must-revalidate" ); //$NON-NLS-1$ //$NON-NLS-2$
-        outputStream.write( data );
+        // stream the content, files may exceed the size of an array
+        try {
+          IOUtils.copyLarge( input, outputStream );
+        } finally {
+          IOUtils.closeQuietly( input );
+        }
       }
     } else {
       response.setStatus( HttpServletResponse.SC_FORBIDDEN );
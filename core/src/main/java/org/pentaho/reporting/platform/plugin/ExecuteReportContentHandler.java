@@ -18,6 +18,7 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
@@ -36,9 +37,14 @@ import org.pentaho.reporting.engine.classic.core.MasterReport;
 import org.pentaho.reporting.engine.classic.core.event.async.ReportListenerThreadHolder;
 import org.pentaho.reporting.engine.classic.core.modules.output.table.html.HtmlTableModule;
 import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+import org.pentaho.reporting.platform.plugin.async.AsyncAdmissionController;
+import org.pentaho.reporting.platform.plugin.async.IPentahoAsyncExecutor;
+import org.pentaho.reporting.platform.plugin.async.PentahoAsyncExecutor;
 import org.pentaho.reporting.platform.plugin.messages.Messages;
 import org.pentaho.reporting.platform.plugin.staging.AbstractStagingHandler;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
 import org.pentaho.reporting.platform.plugin.staging.StagingHandler;
+import org.pentaho.reporting.platform.plugin.staging.TempFileStagingHandler;
 
 public class ExecuteReportContentHandler {
   public static final String FORCED_BUFFERED_WRITING =
@@ -90,8 +96,17 @@ public class ExecuteReportContentHandler {
       reportComponent.setInputs( inputs );
 
       final MasterReport report = reportComponent.getReport();
-      final StagingMode stagingMode = getStagingMode( inputs, report );
-      reportStagingHandler = AbstractStagingHandler.getStagingHandlerImpl( outputStream, this.userSession, stagingMode );
+      final StagingMode stagingMode = admitStagingMode( path, reportComponent, getStagingMode( inputs, report ) );
+      if ( isHybridStaging( inputs, report ) ) {
+        reportStagingHandler = AbstractStagingHandler
+          .getStagingHandlerImpl( outputStream, this.userSession, AbstractStagingHandler.HYBRID );
+      } else {
+        reportStagingHandler = AbstractStagingHandler.getStagingHandlerImpl( outputStream, this.userSession, stagingMode );
+      }
+      if ( reportStagingHandler instanceof TempFileStagingHandler
+        && StagingCompression.isEnabledFor( reportComponent.getMimeType() ) ) {
+        ( (TempFileStagingHandler) reportStagingHandler ).compress();
+      }
 
       if ( reportStagingHandler.isFullyBuffered() ) {
         // it is safe to disable the buffered writing for the report now that we have a
@@ -128,9 +143,14 @@ public class ExecuteReportContentHandler {
       }
 
       HttpServletResponse response = null;
+      String acceptEncoding = null;
       boolean streamToBrowser = false;
       final IParameterProvider pathProviders = contentGenerator.getParameterProviders().get( "path" );
       if ( pathProviders != null ) {
+        final Object httpRequest = pathProviders.getParameter( "httprequest" );
+        if ( httpRequest instanceof HttpServletRequest ) {
+          acceptEncoding = ( (HttpServletRequest) httpRequest ).getHeader( "Accept-Encoding" );
+        }
         final Object httpResponse = pathProviders.getParameter( "httpresponse" );
         if ( httpResponse instanceof HttpServletResponse ) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
           response = (HttpServletResponse) httpResponse; //$NON-NLS-1$ //$NON-NLS-2$
@@ -165,10 +185,15 @@ public class ExecuteReportContentHandler {
           response.setHeader( "Cache-Control", "private, max-age=0, must-revalidate" );
         }
         if ( reportComponent.execute() ) {
+          final TempFileStagingHandler encodedStaging = negotiateEncoding( reportStagingHandler, response,
+            acceptEncoding );
           if ( response != null ) {
-            if ( reportStagingHandler.canSendHeaders() ) {
+            if ( encodedStaging != null ) {
+              // compressed staging is sent as is
+              setContentLength( response, encodedStaging.getEncodedByteCount() );
+            } else if ( reportStagingHandler.canSendHeaders() ) {
               // we can set content lenght after execution - so we know exact response weight
-              response.setContentLength( reportStagingHandler.getWrittenByteCount() );
+              setContentLength( response, reportStagingHandler.getWrittenByteCount() );
             }
           }
           if ( logger.isDebugEnabled() ) {
@@ -176,7 +201,11 @@ public class ExecuteReportContentHandler {
                 "ReportPlugin.logEndGenerateContent",
                 String.valueOf( reportStagingHandler.getWrittenByteCount() ) ) ); //$NON-NLS-1$
           }
-          reportStagingHandler.complete(); // will copy bytes to final destination...
+          if ( encodedStaging != null ) {
+            encodedStaging.completeEncoded();
+          } else {
+            reportStagingHandler.complete(); // will copy bytes to final destination...
+          }
           result = MessageTypes.INSTANCE_END;
         } else { // failed execution
           sendErrorResponse( response, outputStream, reportStagingHandler );
@@ -232,6 +261,84 @@ public class ExecuteReportContentHandler {
     return mode;
   }
 
+  /**
+   * Sets the content coding headers of compressed staging. Caches must not serve the gzip response to clients that
+   * don't accept it, so the response varies with Accept-Encoding whether it is sent compressed or not.
+   *
+   * @return compressed staging to send as is, null to send the content decoded
+   */
+  // default visibility for testing purposes
+  static TempFileStagingHandler negotiateEncoding( final StagingHandler stagingHandler,
+                                                   final HttpServletResponse response,
+                                                   final String acceptEncoding ) {
+    if ( response == null || !( stagingHandler instanceof TempFileStagingHandler )
+      || !( (TempFileStagingHandler) stagingHandler ).isCompressed() ) {
+      return null;
+    }
+    response.setHeader( "Vary", "Accept-Encoding" );
+    if ( !StagingCompression.acceptsGzip( acceptEncoding ) ) {
+      return null;
+    }
+    response.setHeader( "Content-Encoding", StagingCompression.GZIP );
+    return (TempFileStagingHandler) stagingHandler;
+  }
+
+  /**
+   * Sets the Content-Length header, outputs beyond 2GB can't use the int based servlet method.
+   */
+  static void setContentLength( final HttpServletResponse response, final long length ) {
+    if ( length <= Integer.MAX_VALUE ) {
+      response.setContentLength( (int) length );
+    } else {
+      response.setHeader( "Content-Length", String.valueOf( length ) ); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * HYBRID is not a {@link StagingMode}, it is accepted by name from the request or the report-staging-mode system
+   * setting, with the same precedence as {@link #getStagingMode(Map, MasterReport)}.
+   */
+  // default visibility for testing purposes
+  boolean isHybridStaging( final Map<String, Object> inputs, final MasterReport report ) {
+    final Object o = inputs.get( "report-staging-mode" );
+    if ( o != null ) {
+      if ( AbstractStagingHandler.HYBRID.equalsIgnoreCase( String.valueOf( o ) ) ) {
+        return true;
+      }
+      try {
+        StagingMode.valueOf( String.valueOf( o ) );
+        return false;
+      } catch ( IllegalArgumentException ie ) {
+        // invalid, falls back to the report and the settings
+      }
+    }
+    if ( report.getAttribute( AttributeNames.Pentaho.NAMESPACE, AttributeNames.Pentaho.STAGING_MODE ) != null ) {
+      return false;
+    }
+    return AbstractStagingHandler.HYBRID.equalsIgnoreCase(
+      PentahoSystem.getSystemSetting( "report-staging-mode", null ) ); //$NON-NLS-1$
+  }
+
+  /**
+   * Falls back to file staging when the async admission controller reports memory pressure.
+   */
+  private StagingMode admitStagingMode( final String path, final SimpleReportingComponent reportComponent,
+                                        final StagingMode mode ) {
+    if ( mode != StagingMode.MEMORY ) {
+      return mode;
+    }
+    final IPentahoAsyncExecutor executor =
+        PentahoSystem.get( PentahoAsyncExecutor.class, PentahoAsyncExecutor.BEAN_NAME, null );
+    if ( !( executor instanceof PentahoAsyncExecutor ) ) {
+      return mode;
+    }
+    final AsyncAdmissionController controller = ( (PentahoAsyncExecutor<?>) executor ).getAdmissionController();
+    if ( controller == null ) {
+      return mode;
+    }
+    return controller.admitStagingMode( path, reportComponent.getMimeType(), mode );
+  }
+
   private void sendErrorResponse( final HttpServletResponse response, final OutputStream outputStream,
       final StagingHandler reportStagingHandler ) throws IOException {
     if ( response != null ) {
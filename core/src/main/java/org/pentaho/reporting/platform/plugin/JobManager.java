@@ -15,6 +15,8 @@ package org.pentaho.reporting.platform.plugin;
 
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,9 +36,12 @@ import org.pentaho.reporting.platform.plugin.async.IJobIdGenerator;
 import org.pentaho.reporting.platform.plugin.async.IPentahoAsyncExecutor;
 import org.pentaho.reporting.platform.plugin.async.ISchedulingDirectoryStrategy;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -50,7 +55,14 @@ import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Future;
 
@@ -70,6 +82,16 @@ public class JobManager {
   private static final String ERROR_GENERATING_REPORT = "Error generating report";
   private static final String UNABLE_TO_SERIALIZE_TO_JSON = "Unable to serialize to json : ";
   private static final String UNCKNOWN_MEDIA_TYPE = "Can't determine JAX-RS media type for: ";
+  private static final String UNABLE_TO_PARSE_JOB_IDS = "Unable to parse job ids list: ";
+  // ObjectMapper is thread-safe once configured, share one writer instead of building a mapper per call
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final ObjectWriter WRITER = MAPPER.writer();
+  // formats written sequentially, a partially written file is a valid prefix of the result
+  private static final Set<String> PROGRESSIVE_MIME_TYPES = new HashSet<>( Arrays.asList(
+    SimpleReportingComponent.MIME_TYPE_CSV, SimpleReportingComponent.MIME_TYPE_HTML,
+    SimpleReportingComponent.MIME_TYPE_TXT ) );
+  private static final long TAIL_POLL_MILLIS = 100;
+  private static final String BYTES_UNIT = "bytes";
   private final Config config;
 
   public JobManager() {
@@ -99,16 +121,58 @@ public class JobManager {
 
   @GET
   @Path( "{job_id}/content" )
-  public Response getPDFContent( @PathParam( "job_id" ) final String job_id ) throws IOException {
+  public Response getPDFContent( @PathParam( "job_id" ) final String job_id,
+                                 @DefaultValue( "false" ) @QueryParam( "progressive" ) final boolean progressive,
+                                 @HeaderParam( "Range" ) final String range,
+                                 @HeaderParam( "If-Range" ) final String ifRange,
+                                 @HeaderParam( "Accept-Encoding" ) final String acceptEncoding )
+    throws IOException {
     logger.debug( "Chrome pdf viewer workaround. See BACKLOG-7598 for details" );
 
-    return this.getContent( job_id );
+    return this.getContent( job_id, progressive, range, ifRange, acceptEncoding );
+  }
+
+  public Response getPDFContent( final String job_id, final boolean progressive, final String range,
+                                 final String ifRange ) throws IOException {
+    return this.getPDFContent( job_id, progressive, range, ifRange, null );
+  }
+
+  public Response getPDFContent( final String job_id ) throws IOException {
+    return this.getPDFContent( job_id, false, null, null );
+  }
+
+  public Response getContent( final String jobId ) throws IOException {
+    return this.getContent( jobId, false );
   }
 
+  public Response getContent( final String jobId, final boolean progressive ) throws IOException {
+    return this.getContent( jobId, progressive, null, null );
+  }
+
+  public Response getContent( final String jobId, final boolean progressive, final String range,
+                              final String ifRange ) throws IOException {
+    return this.getContent( jobId, progressive, range, ifRange, null );
+  }
+
+  /**
+   * Returns the content of a finished job. With progressive flag the content of a running job in a sequentially
+   * written format (csv, stream html, text) is streamed while the job writes it, the response ends when the job
+   * completes.
+   * <p>
+   * Content of a finished job supports a single byte range request, so interrupted downloads can be resumed. The strong
+   * ETag is built from the job id and content size; a range with a non-matching If-Range is answered with full content.
+   * <p>
+   * Content staged compressed is sent as is with gzip content coding to clients accepting it, range requests and other
+   * clients get it decompressed.
+   */
   @SuppressWarnings( "unchecked" )
   @POST
   @Path( "{job_id}/content" )
-  public Response getContent( @PathParam( "job_id" ) final String jobId )
+  public Response getContent( @PathParam( "job_id" ) final String jobId,
+                              @DefaultValue( "false" ) @QueryParam( "progressive" ) final boolean progressive,
+                              @HeaderParam( "Range" ) final String range,
+                              @HeaderParam( "If-Range" ) final String ifRange,
+                              @HeaderParam( "Accept-Encoding" ) final String acceptEncoding )
     throws IOException {
 
     try {
@@ -116,20 +180,51 @@ public class JobManager {
       final Future<IFixedSizeStreamingContent> future = context.getFuture();
       final IAsyncReportState state = context.getReportState();
 
-      if ( !AsyncExecutionStatus.FINISHED.equals( state.getStatus() ) ) {
-        return Response.status( Response.Status.ACCEPTED ).build();
-      }
-
-      final IFixedSizeStreamingContent input;
-      try {
-        input = future.get();
-      } catch ( final Exception e ) {
-        logger.error( ERROR_GENERATING_REPORT, e );
-        return Response.serverError().build();
+      final StreamingOutput stream;
+      ByteRange byteRange = null;
+      String eTag = null;
+      long size = 0;
+      long contentLength = -1;
+      String contentEncoding = null;
+      boolean compressed = false;
+      if ( AsyncExecutionStatus.FINISHED.equals( state.getStatus() ) ) {
+        final IFixedSizeStreamingContent input;
+        try {
+          input = future.get();
+        } catch ( final Exception e ) {
+          logger.error( ERROR_GENERATING_REPORT, e );
+          return Response.serverError().build();
+        }
+        size = input.getContentSize();
+        eTag = getETag( jobId, size );
+        if ( range != null && ( ifRange == null || eTag.equals( ifRange.trim() ) ) ) {
+          byteRange = ByteRange.parse( range, size );
+        }
+        if ( byteRange == ByteRange.UNSATISFIABLE ) {
+          return Response.status( Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE )
+            .header( "Content-Range", BYTES_UNIT + " */" + size ).build();
+        }
+        compressed = StagingCompression.GZIP.equals( input.getContentEncoding() );
+        if ( byteRange != null ) {
+          stream = new StreamingOutputWrapper( input, byteRange.start, byteRange.getLength() );
+        } else if ( compressed && StagingCompression.acceptsGzip( acceptEncoding ) ) {
+          stream = new StreamingOutputWrapper( input, true );
+          contentEncoding = StagingCompression.GZIP;
+          contentLength = input.getEncodedSize();
+          // another representation of the same content
+          eTag = getETag( jobId + "-" + StagingCompression.GZIP, size );
+        } else {
+          stream = new StreamingOutputWrapper( input );
+          contentLength = size;
+        }
+      } else {
+        final Path stagingPath = progressive ? getProgressiveStagingPath( context, state ) : null;
+        if ( stagingPath == null ) {
+          return Response.status( Response.Status.ACCEPTED ).build();
+        }
+        stream = new TailingStreamingOutput( context, future );
       }
 
-      final StreamingOutput stream = new StreamingOutputWrapper( input.getStream() );
-
       MediaType mediaType;
       Response.ResponseBuilder response;
 
@@ -141,7 +236,26 @@ public class JobManager {
         mediaType = MediaType.APPLICATION_OCTET_STREAM_TYPE;
       }
 
-      response = Response.ok( stream, mediaType );
+      if ( byteRange != null ) {
+        response = Response.status( Response.Status.PARTIAL_CONTENT ).entity( stream ).type( mediaType )
+          .header( "Content-Range", BYTES_UNIT + " " + byteRange.start + "-" + byteRange.end + "/" + size )
+          .header( "Content-Length", byteRange.getLength() );
+      } else {
+        response = Response.ok( stream, mediaType );
+        if ( contentLength >= 0 ) {
+          // long length, finished content may exceed 2GB
+          response.header( "Content-Length", contentLength );
+        }
+      }
+      if ( contentEncoding != null ) {
+        response.header( "Content-Encoding", contentEncoding );
+      }
+      if ( compressed ) {
+        response.header( "Vary", "Accept-Encoding" );
+      }
+      if ( eTag != null ) {
+        response.header( "Accept-Ranges", BYTES_UNIT ).header( "ETag", eTag );
+      }
 
       response = noCache( response );
       response = calculateContentDisposition( response, state );
@@ -161,16 +275,89 @@ public class JobManager {
       final ExecutionContext context = getContext( jobId );
       final IAsyncReportState responseJson = context.getReportState();
 
-      return getJson( responseJson );
+      return getJson( withEstimate( responseJson ) );
     } catch ( final ContextFailedException e ) {
       return get404();
     }
   }
 
+  /**
+   * Returns states of several jobs in one response, so pages with many embedded exports don't have to poll each job
+   * separately. Accepts a json array of job ids, ids of unknown or foreign jobs are skipped.
+   *
+   * @param jobIds json array of job ids
+   * @return json object, job id to job state
+   */
+  @POST
+  @Path( "status" )
+  @Consumes( APPLICATION_JSON )
+  @Produces( APPLICATION_JSON )
+  public Response getStatuses( final String jobIds ) {
+    final String[] ids;
+    try {
+      ids = MAPPER.readValue( jobIds, String[].class );
+    } catch ( final Exception e ) {
+      logger.debug( UNABLE_TO_PARSE_JOB_IDS + jobIds, e );
+      return Response.status( Response.Status.BAD_REQUEST ).build();
+    }
+
+    final Map<String, Object> states = new LinkedHashMap<>();
+    if ( ids != null ) {
+      for ( final String jobId : ids ) {
+        try {
+          states.put( jobId, withEstimate( getContext( jobId ).getReportState() ) );
+        } catch ( final ContextFailedException e ) {
+          logger.debug( "Skip status of job: " + jobId );
+        }
+      }
+    }
+    return getJson( states );
+  }
+
+  /**
+   * Adds the predicted duration and, for jobs in progress, the estimated remaining time (both ms) to the state when the
+   * executor has runtime history for the report.
+   */
+  private Object withEstimate( final IAsyncReportState state ) {
+    final IPentahoAsyncExecutor executor = getExecutor();
+    final long predicted = executor == null ? -1 : executor.predictDuration( state );
+    if ( predicted < 0 ) {
+      return state;
+    }
+    final ObjectNode node = MAPPER.valueToTree( state );
+    node.put( "predictedDuration", predicted );
+    final AsyncExecutionStatus status = state.getStatus();
+    if ( AsyncExecutionStatus.QUEUED.equals( status ) || AsyncExecutionStatus.WORKING.equals( status ) ) {
+      final int progress = Math.min( 100, Math.max( 0, state.getProgress() ) );
+      node.put( "estimatedTimeRemaining", predicted * ( 100 - progress ) / 100 );
+    }
+    return node;
+  }
+
+  private Path getProgressiveStagingPath( final ExecutionContext context, final IAsyncReportState state ) {
+    if ( !PROGRESSIVE_MIME_TYPES.contains( state.getMimeType() ) ) {
+      return null;
+    }
+    if ( StagingCompression.isEnabledFor( state.getMimeType() ) ) {
+      // compressed content can't be read before it is complete
+      return null;
+    }
+    final AsyncExecutionStatus status = state.getStatus();
+    if ( !AsyncExecutionStatus.QUEUED.equals( status ) && !AsyncExecutionStatus.WORKING.equals( status ) ) {
+      return null;
+    }
+    final Path stagingPath = context.getStagingPath();
+    return stagingPath != null && Files.exists( stagingPath ) ? stagingPath : null;
+  }
+
+  static String getETag( final String jobId, final long size ) {
+    // job content never changes once finished, id and size identify it
+    return "\"" + jobId + "-" + size + "\"";
+  }
+
   private Response getJson( final Object responseJson ) {
-    final ObjectMapper mapper = new ObjectMapper();
     try {
-      return Response.ok( mapper.writeValueAsString( responseJson ) ).build();
+      return Response.ok( WRITER.writeValueAsString( responseJson ) ).build();
     } catch ( final Exception e ) {
       logger.error( UNABLE_TO_SERIALIZE_TO_JSON + responseJson.toString() );
       return Response.serverError().build();
@@ -316,14 +503,50 @@ public class JobManager {
   protected static final class StreamingOutputWrapper implements StreamingOutput {
 
     private InputStream input;
+    private IFixedSizeStreamingContent content;
+    private long position;
+    private long length = -1;
+    private boolean encoded;
 
     public StreamingOutputWrapper( final InputStream readFrom ) {
       this.input = readFrom;
     }
 
+    /**
+     * Lets the content write itself, so staged files are transferred without an intermediate input stream.
+     */
+    public StreamingOutputWrapper( final IFixedSizeStreamingContent content ) {
+      this.content = content;
+    }
+
+    /**
+     * Writes only the given byte range of the content.
+     */
+    public StreamingOutputWrapper( final IFixedSizeStreamingContent content, final long position, final long length ) {
+      this.content = content;
+      this.position = position;
+      this.length = length;
+    }
+
+    /**
+     * @param encoded write the stored bytes without decoding them
+     */
+    public StreamingOutputWrapper( final IFixedSizeStreamingContent content, final boolean encoded ) {
+      this.content = content;
+      this.encoded = encoded;
+    }
+
     @Override public void write( final OutputStream outputStream ) throws IOException, WebApplicationException {
       try {
-        IOUtils.copy( input, outputStream );
+        if ( content != null && encoded ) {
+          content.writeEncodedTo( outputStream );
+        } else if ( content != null && length >= 0 ) {
+          content.writeTo( outputStream, position, length );
+        } else if ( content != null ) {
+          content.writeTo( outputStream );
+        } else {
+          IOUtils.copy( input, outputStream );
+        }
         outputStream.flush();
       } finally {
         IOUtils.closeQuietly( outputStream );
@@ -332,6 +555,124 @@ public class JobManager {
     }
   }
 
+  /**
+   * Follows the staging file of a running job like 'tail -f' does. Data is flushed to the client as soon as it is on
+   * disk, the response ends when the job is done. If the job fails or is canceled the response is aborted, so the client
+   * doesn't take a truncated download for a complete one.
+   */
+  protected static final class TailingStreamingOutput implements StreamingOutput {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExecutionContext context;
+    private final Future<?> future;
+
+    TailingStreamingOutput( final ExecutionContext context, final Future<?> future ) {
+      this.context = context;
+      this.future = future;
+    }
+
+    @Override public void write( final OutputStream outputStream ) throws IOException, WebApplicationException {
+      try ( InputStream input = context.openStagingStream() ) {
+        if ( input == null ) {
+          throw new IOException( "Staged content is not available" );
+        }
+        final byte[] buffer = new byte[ BUFFER_SIZE ];
+        boolean done;
+        do {
+          // the staging stream is closed before the future completes,
+          // so everything written is readable once the future is seen done
+          done = future.isDone();
+          int read;
+          while ( ( read = input.read( buffer ) ) > 0 ) {
+            outputStream.write( buffer, 0, read );
+          }
+          outputStream.flush();
+          if ( !done ) {
+            Thread.sleep( TAIL_POLL_MILLIS );
+          }
+        } while ( !done );
+
+        final AsyncExecutionStatus status = context.getReportState().getStatus();
+        if ( future.isCancelled() || !( AsyncExecutionStatus.FINISHED.equals( status )
+          || AsyncExecutionStatus.SCHEDULED.equals( status ) ) ) {
+          throw new IOException( "Job was not completed: " + status );
+        }
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new IOException( e );
+      } catch ( final ContextFailedException e ) {
+        throw new IOException( e );
+      } finally {
+        IOUtils.closeQuietly( outputStream );
+      }
+    }
+  }
+
+  /**
+   * Single byte range of a 'Range: bytes=...' header, bounds are inclusive. Multiple ranges are not supported, such
+   * requests are answered with the whole content as RFC 7233 allows.
+   */
+  static final class ByteRange {
+
+    static final ByteRange UNSATISFIABLE = new ByteRange( -1, -1 );
+
+    final long start;
+    final long end;
+
+    private ByteRange( final long start, final long end ) {
+      this.start = start;
+      this.end = end;
+    }
+
+    long getLength() {
+      return end - start + 1;
+    }
+
+    /**
+     * @return range clipped to the content size, {@link #UNSATISFIABLE} if it lies beyond the content, or null if the
+     * header is not a single valid byte range and should be ignored
+     */
+    static ByteRange parse( final String header, final long size ) {
+      final String value = header.trim();
+      final int eq = value.indexOf( '=' );
+      if ( eq < 0 || !BYTES_UNIT.equalsIgnoreCase( value.substring( 0, eq ).trim() ) ) {
+        return null;
+      }
+      final String spec = value.substring( eq + 1 ).trim();
+      final int dash = spec.indexOf( '-' );
+      if ( dash < 0 || spec.indexOf( ',' ) >= 0 ) {
+        return null;
+      }
+      try {
+        final String first = spec.substring( 0, dash ).trim();
+        final String last = spec.substring( dash + 1 ).trim();
+        if ( first.isEmpty() ) {
+          // suffix range, last n bytes
+          final long suffix = Long.parseLong( last );
+          if ( suffix < 0 ) {
+            return null;
+          }
+          if ( suffix == 0 || size == 0 ) {
+            return UNSATISFIABLE;
+          }
+          return new ByteRange( Math.max( 0, size - suffix ), size - 1 );
+        }
+        final long start = Long.parseLong( first );
+        final long end = last.isEmpty() ? size - 1 : Long.parseLong( last );
+        if ( start < 0 || end < start ) {
+          return null;
+        }
+        if ( start >= size ) {
+          return UNSATISFIABLE;
+        }
+        return new ByteRange( start, Math.min( end, size - 1 ) );
+      } catch ( final NumberFormatException e ) {
+        return null;
+      }
+    }
+  }
+
   protected static Response.ResponseBuilder noCache( final Response.ResponseBuilder response ) {
     // no cache
     final CacheControl cacheControl = new CacheControl();
@@ -484,6 +825,14 @@ public class JobManager {
       return future;
     }
 
+    public Path getStagingPath() {
+      return getReportExecutor().getStagingPath( uuid, session );
+    }
+
+    public InputStream openStagingStream() throws IOException {
+      return getReportExecutor().openStagingStream( uuid, session );
+    }
+
     public IAsyncReportState getReportState() throws ContextFailedException {
       final IAsyncReportState reportState = getReportExecutor().getReportState( uuid, session );
       if ( reportState == null ) {
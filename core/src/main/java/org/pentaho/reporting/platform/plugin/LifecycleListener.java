@@ -28,6 +28,7 @@ public class LifecycleListener implements IPluginLifecycleListener {
   }
 
   public void unLoaded() throws PluginLifecycleException {
+    DaemonThreadFactory.shutdownSharedPools();
   }
 
 }
@@ -52,6 +52,7 @@ import org.pentaho.reporting.platform.plugin.messages.Messages;
 import org.pentaho.reporting.platform.plugin.output.FastExportReportOutputHandlerFactory;
 import org.pentaho.reporting.platform.plugin.output.ReportOutputHandler;
 import org.pentaho.reporting.platform.plugin.output.ReportOutputHandlerFactory;
+import org.pentaho.reporting.platform.plugin.output.OutputUtils;
 import org.pentaho.reporting.platform.plugin.output.ReportOutputHandlerSelector;
 
 import javax.print.DocFlavor;
@@ -981,7 +982,7 @@ public class SimpleReportingComponent implements IStreamingPojo, IAcceptsRuntime
 
     final Object attribute =
       report.getAttribute( AttributeNames.Pentaho.NAMESPACE, AttributeNames.Pentaho.REPORT_CACHE );
-    final ReportCacheKey reportCacheKey = new ReportCacheKey( getViewerSessionId(), inputs );
+    final ReportCacheKey reportCacheKey = new ReportCacheKey( getCacheSlotId( outputType ), inputs );
     ReportCache cache;
     if ( Boolean.FALSE.equals( attribute ) ) {
       cache = new NullReportCache();
@@ -1065,6 +1066,16 @@ public class SimpleReportingComponent implements IStreamingPojo, IAcceptsRuntime
     return null;
   }
 
+  /**
+   * Returns the slot the output handler is cached in, see {@link OutputUtils#getCacheSlotId}.
+   *
+   * @param outputType the effective output target
+   * @return the cache slot, or null if the handler is not cached
+   */
+  protected String getCacheSlotId( final String outputType ) {
+    return OutputUtils.getCacheSlotId( getViewerSessionId(), outputType, reportDefinitionPath != null ? reportDefinitionPath : fileId, report );
+  }
+
   private class InternalOutputHandlerSelector implements ReportOutputHandlerSelector {
     private String outputType;
 
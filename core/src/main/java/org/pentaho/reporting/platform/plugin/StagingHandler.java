@@ -140,7 +140,7 @@ public class StagingHandler {
     }
   }
 
-  public int getWrittenByteCount() {
+  public long getWrittenByteCount() {
     assert stagingStream != null;
     return stagingStream.getTrackingSize();
   }
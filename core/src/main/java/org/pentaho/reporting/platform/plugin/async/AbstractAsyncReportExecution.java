@@ -13,9 +13,12 @@
 package org.pentaho.reporting.platform.plugin.async;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.NullInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,6 +32,7 @@ import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
 import org.pentaho.reporting.libraries.base.util.ArgumentNullException;
 import org.pentaho.reporting.platform.plugin.AuditWrapper;
 import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
+import org.pentaho.reporting.platform.plugin.connection.JobStatementRegistry;
 import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
@@ -45,6 +49,10 @@ public abstract class AbstractAsyncReportExecution<TReportState extends IAsyncRe
 
   private AsyncReportStatusListener listener;
 
+  private final Object runnerLock = new Object();
+  private Thread runner;
+  private volatile String abortReason;
+
   private static final Log log = LogFactory.getLog( AbstractAsyncReportExecution.class );
 
   private AuditWrapper audit;
@@ -139,6 +147,8 @@ public abstract class AbstractAsyncReportExecution<TReportState extends IAsyncRe
   protected void cancel() {
     String userName = safeSession == null ? "Unknown" : safeSession.getName();
     log.info( "Report execution canceled: " + url + " , requested by : " + userName );
+    // stop running queries, the report processor only checks for cancel between rows
+    JobStatementRegistry.cancel( this );
     closeFile();
     if ( listener != null ) {
       listener.cancel();
@@ -164,6 +174,50 @@ public abstract class AbstractAsyncReportExecution<TReportState extends IAsyncRe
     return this.url;
   }
 
+  @Override
+  public Path getStagingPath() {
+    return handler.getStagingPath();
+  }
+
+  @Override
+  public Map<String, Object> getInputs() {
+    return reportComponent.getInputs();
+  }
+
+  @Override
+  public void abort( final String reason ) {
+    abortReason = reason;
+    if ( listener != null ) {
+      listener.setErrorMessage( reason );
+    }
+    synchronized ( runnerLock ) {
+      if ( runner != null ) {
+        runner.interrupt();
+      }
+    }
+    JobStatementRegistry.cancel( this );
+  }
+
+  @Override
+  public void discard() {
+    IOUtils.closeQuietly( handler.getStagingOutputStream() );
+    closeFile();
+  }
+
+  protected String getAbortReason() {
+    return abortReason;
+  }
+
+  /**
+   * Remembers the thread executing the report, so {@link #abort} interrupts this execution and nothing else the pool
+   * thread runs later.
+   */
+  protected void setRunner( final Thread runner ) {
+    synchronized ( runnerLock ) {
+      this.runner = runner;
+    }
+  }
+
   @Override public synchronized boolean schedule() {
     synchronized( listener ) {
       if ( listener.isScheduled() ) {
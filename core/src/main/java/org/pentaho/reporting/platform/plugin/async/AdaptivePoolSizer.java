@@ -0,0 +1,207 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.platform.plugin.DaemonThreadFactory;
+import org.pentaho.reporting.platform.plugin.connection.JobStatementRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Grows and shrinks the async executor pool between configured bounds. The pool grows by one thread when tasks keep
+ * waiting in the queue longer than {@code growQueueWaitMillis} and neither the CPU nor the database connections of
+ * running jobs are saturated. It shrinks by one thread when threads stay idle with no waiting tasks, or when the CPU or
+ * the database connections are saturated. Jobs holding a thread while they wait for memory admission don't count as
+ * busy, and the pool doesn't grow while they wait, as more threads would only queue up behind the memory budget.
+ * <p>
+ * Both directions need a number of consecutive samples agreeing ({@code samplesToGrow}, {@code samplesToShrink}) and
+ * the grow and shrink wait thresholds are apart, so the pool doesn't flap around a single load level.
+ */
+public class AdaptivePoolSizer {
+
+  private static final Log log = LogFactory.getLog( AdaptivePoolSizer.class );
+
+  private int minThreads = 1;
+  private int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+  private long checkIntervalMillis = 5000;
+  private long growQueueWaitMillis = 2000;
+  private long shrinkQueueWaitMillis = 100;
+  private double maxCpuLoad = 0.9;
+  private int maxDbConnections = 0;
+  private double maxDbSaturation = 0.9;
+  private int samplesToGrow = 2;
+  private int samplesToShrink = 6;
+
+  private int growStreak;
+  private int shrinkStreak;
+  private AsyncThreadPoolExecutor pool;
+  private IntSupplier admissionWaiting;
+  private ScheduledExecutorService scheduler;
+
+  public void setMinThreads( final int minThreads ) {
+    this.minThreads = minThreads;
+  }
+
+  public void setMaxThreads( final int maxThreads ) {
+    this.maxThreads = maxThreads;
+  }
+
+  public void setCheckIntervalMillis( final long checkIntervalMillis ) {
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  public void setGrowQueueWaitMillis( final long growQueueWaitMillis ) {
+    this.growQueueWaitMillis = growQueueWaitMillis;
+  }
+
+  public void setShrinkQueueWaitMillis( final long shrinkQueueWaitMillis ) {
+    this.shrinkQueueWaitMillis = shrinkQueueWaitMillis;
+  }
+
+  /**
+   * @param maxCpuLoad system load average per processor above which the pool doesn't grow and shrinks
+   */
+  public void setMaxCpuLoad( final double maxCpuLoad ) {
+    this.maxCpuLoad = maxCpuLoad;
+  }
+
+  /**
+   * @param maxDbConnections database connections async jobs may hold, usually the size of the connection pools they
+   *                         use, 0 - don't watch database connections
+   */
+  public void setMaxDbConnections( final int maxDbConnections ) {
+    this.maxDbConnections = maxDbConnections;
+  }
+
+  public void setMaxDbSaturation( final double maxDbSaturation ) {
+    this.maxDbSaturation = maxDbSaturation;
+  }
+
+  public void setSamplesToGrow( final int samplesToGrow ) {
+    this.samplesToGrow = samplesToGrow;
+  }
+
+  public void setSamplesToShrink( final int samplesToShrink ) {
+    this.samplesToShrink = samplesToShrink;
+  }
+
+  /**
+   * @param pool             pool to resize
+   * @param admissionWaiting number of pool threads blocked waiting for memory admission
+   */
+  synchronized void start( final AsyncThreadPoolExecutor pool, final IntSupplier admissionWaiting ) {
+    if ( minThreads < 1 || maxThreads < minThreads ) {
+      throw new IllegalArgumentException( "Invalid pool bounds: " + minThreads + ".." + maxThreads );
+    }
+    this.pool = pool;
+    this.admissionWaiting = admissionWaiting;
+    final int size = pool.getCorePoolSize();
+    if ( size < minThreads || size > maxThreads ) {
+      pool.resize( Math.max( minThreads, Math.min( maxThreads, size ) ) );
+    }
+    if ( scheduler == null ) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(
+        new DaemonThreadFactory( "PentahoAsyncExecutor Pool Sizer" ) );
+      scheduler.scheduleWithFixedDelay( () -> {
+        try {
+          adjust();
+        } catch ( final RuntimeException e ) {
+          log.error( "Async pool sizing failed", e );
+        }
+      }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS );
+    }
+  }
+
+  public synchronized void shutdown() {
+    if ( scheduler != null ) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    pool = null;
+    admissionWaiting = null;
+  }
+
+  /**
+   * Samples the load and resizes the pool if needed.
+   */
+  synchronized void adjust() {
+    if ( pool == null ) {
+      return;
+    }
+    final int current = pool.getCorePoolSize();
+    final int size = decide( current, pool.getActiveCount(), admissionWaiting.getAsInt(), pool.takeMaxQueueWait(),
+      getCpuLoad(), getDbSaturation() );
+    if ( size != current ) {
+      log.info( "Resizing async execution thread pool from " + current + " to " + size );
+      pool.resize( size );
+    }
+  }
+
+  /**
+   * @param current    current pool size
+   * @param active     threads running a task
+   * @param waiting    threads among the active ones blocked waiting for memory admission
+   * @param queueWait  longest queue wait since the previous sample, ms
+   * @param cpuLoad    load average per processor, negative if unknown
+   * @param saturation part of the database connections in use, negative if not watched
+   * @return new pool size
+   */
+  synchronized int decide( final int current, final int active, final int waiting, final long queueWait,
+                           final double cpuLoad, final double saturation ) {
+    final boolean constrained = ( cpuLoad >= 0 && cpuLoad > maxCpuLoad )
+      || ( saturation >= 0 && saturation > maxDbSaturation );
+    final int busy = active - waiting;
+    final boolean grow = !constrained && waiting == 0 && queueWait >= growQueueWaitMillis && current < maxThreads;
+    final boolean shrink = current > minThreads
+      && ( constrained || ( busy < current && queueWait <= shrinkQueueWaitMillis ) );
+    if ( grow ) {
+      shrinkStreak = 0;
+      if ( ++growStreak >= samplesToGrow ) {
+        growStreak = 0;
+        return current + 1;
+      }
+    } else if ( shrink ) {
+      growStreak = 0;
+      if ( ++shrinkStreak >= samplesToShrink ) {
+        shrinkStreak = 0;
+        return current - 1;
+      }
+    } else {
+      growStreak = 0;
+      shrinkStreak = 0;
+    }
+    // keep bounds if they were changed at runtime
+    return Math.max( minThreads, Math.min( maxThreads, current ) );
+  }
+
+  protected double getCpuLoad() {
+    final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    final double load = os.getSystemLoadAverage();
+    return load < 0 ? -1 : load / os.getAvailableProcessors();
+  }
+
+  protected double getDbSaturation() {
+    if ( maxDbConnections <= 0 ) {
+      return -1;
+    }
+    return (double) JobStatementRegistry.getOpenConnectionCount() / maxDbConnections;
+  }
+}
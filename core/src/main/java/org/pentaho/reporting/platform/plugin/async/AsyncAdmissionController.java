@@ -0,0 +1,355 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Admits async jobs against a memory budget, a configurable fraction of the max heap. Each job reserves its estimated
+ * footprint before it starts and releases it when done; a job that does not fit waits until running jobs release
+ * enough memory. A single job is always admitted, so a job estimated above the whole budget still runs alone.
+ * <p>
+ * The footprint of a job is the larger of the configured estimate for its report path or output mime type and the peak
+ * heap growth observed on previous runs of the same report and mime type. Jobs staged in memory additionally hold
+ * their whole output, estimated from the staged size of previous runs. Under memory pressure {@link
+ * #admitStagingMode(String, String, StagingMode)} downgrades MEMORY staging to TMPFILE.
+ * <p>
+ * Heap is measured as live heap after the last garbage collection, so garbage not yet collected neither counts as
+ * pressure nor as footprint. Live heap is shared by all jobs, so the growth a job observes is capped by what its own
+ * thread allocated while it ran, which keeps a light job running next to a heavy one from being charged for it.
+ */
+public class AsyncAdmissionController {
+
+  private static final Log log = LogFactory.getLog( AsyncAdmissionController.class );
+
+  static final long MB = 1024 * 1024;
+  private static final double DECAY = 0.8;
+
+  private double heapFraction = 0.7;
+  private long defaultEstimate = 32 * MB;
+  private Map<String, Long> estimates = defaultEstimates();
+  private final Map<String, Footprint> observed;
+
+  private long reserved;
+  private int running;
+  private int waiting;
+
+  public AsyncAdmissionController() {
+    this( 1000 );
+  }
+
+  /**
+   * @param maxEntries maximum number of remembered report footprints
+   */
+  public AsyncAdmissionController( final int maxEntries ) {
+    this.observed = Collections.synchronizedMap( new LinkedHashMap<String, Footprint>( 16, 0.75f, true ) {
+      @Override protected boolean removeEldestEntry( final Map.Entry<String, Footprint> eldest ) {
+        return size() > maxEntries;
+      }
+    } );
+  }
+
+  private static Map<String, Long> defaultEstimates() {
+    final Map<String, Long> result = new ConcurrentHashMap<>();
+    result.put( SimpleReportingComponent.MIME_TYPE_XLSX, 256 * MB );
+    result.put( SimpleReportingComponent.MIME_TYPE_XLS, 128 * MB );
+    result.put( SimpleReportingComponent.MIME_TYPE_PDF, 64 * MB );
+    return result;
+  }
+
+  /**
+   * @param heapFraction part of the max heap async jobs may reserve, between 0 and 1
+   */
+  public void setHeapFraction( final double heapFraction ) {
+    if ( heapFraction <= 0 || heapFraction > 1 ) {
+      throw new IllegalArgumentException( "Heap fraction must be in (0, 1]: " + heapFraction );
+    }
+    this.heapFraction = heapFraction;
+  }
+
+  public void setDefaultEstimate( final long defaultEstimate ) {
+    this.defaultEstimate = defaultEstimate;
+  }
+
+  /**
+   * @param estimates report path or mime type to estimated footprint in bytes, replaces the built-in mime estimates
+   */
+  public void setEstimates( final Map<String, String> estimates ) {
+    final Map<String, Long> parsed = new ConcurrentHashMap<>();
+    for ( final Map.Entry<String, String> entry : estimates.entrySet() ) {
+      parsed.put( entry.getKey(), Long.parseLong( entry.getValue().trim() ) );
+    }
+    this.estimates = parsed;
+  }
+
+  /**
+   * Estimates the heap a job needs.
+   *
+   * @param reportPath  report path, can be null
+   * @param mimeType    output mime type, can be null
+   * @param stagingMode staging mode of the output, MEMORY keeps the whole output on heap
+   * @return estimated footprint in bytes
+   */
+  public long estimate( final String reportPath, final String mimeType, final StagingMode stagingMode ) {
+    Long configured = reportPath == null ? null : estimates.get( reportPath );
+    if ( configured == null && mimeType != null ) {
+      configured = estimates.get( mimeType );
+    }
+    long result = configured == null ? defaultEstimate : configured;
+    final Footprint footprint = observed.get( getKey( reportPath, mimeType ) );
+    if ( footprint != null ) {
+      result = Math.max( result, footprint.peakHeap );
+      if ( stagingMode == StagingMode.MEMORY ) {
+        result += footprint.outputBytes;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Records the footprint of a finished job, older observations decay so that a report that got lighter is admitted
+   * sooner again.
+   */
+  void record( final String reportPath, final String mimeType, final long peakHeap, final long outputBytes ) {
+    final String key = getKey( reportPath, mimeType );
+    synchronized ( observed ) {
+      final Footprint old = observed.get( key );
+      observed.put( key, old == null ? new Footprint( peakHeap, outputBytes )
+        : new Footprint( Math.max( peakHeap, (long) ( old.peakHeap * DECAY ) ),
+        Math.max( outputBytes, (long) ( old.outputBytes * DECAY ) ) ) );
+    }
+  }
+
+  private static String getKey( final String reportPath, final String mimeType ) {
+    return reportPath + "|" + mimeType;
+  }
+
+  /**
+   * Blocks until the estimated footprint fits into the budget.
+   *
+   * @throws InterruptedException if the job is canceled while waiting
+   */
+  synchronized void acquire( final long footprint ) throws InterruptedException {
+    waiting++;
+    try {
+      while ( running > 0 && reserved + footprint > getBudget() ) {
+        wait();
+      }
+    } finally {
+      waiting--;
+    }
+    running++;
+    reserved += footprint;
+  }
+
+  synchronized void release( final long footprint ) {
+    running--;
+    reserved -= footprint;
+    notifyAll();
+  }
+
+  synchronized long getReserved() {
+    return reserved;
+  }
+
+  /**
+   * @return jobs holding a pool thread while they wait for memory
+   */
+  synchronized int getWaiting() {
+    return waiting;
+  }
+
+  long getBudget() {
+    return (long) ( getMaxHeap() * heapFraction );
+  }
+
+  /**
+   * @return true if either reservations or actually used heap exceed the budget
+   */
+  public boolean isUnderPressure() {
+    final long budget = getBudget();
+    return getReserved() > budget || getUsedHeap() > budget;
+  }
+
+  /**
+   * Downgrades MEMORY staging to TMPFILE when the output would not fit into the budget.
+   *
+   * @return staging mode to use
+   */
+  public StagingMode admitStagingMode( final String reportPath, final String mimeType, final StagingMode mode ) {
+    if ( mode != StagingMode.MEMORY ) {
+      return mode;
+    }
+    final long needed = Math.max( getReserved(), getUsedHeap() ) + estimate( reportPath, mimeType, mode );
+    if ( needed > getBudget() ) {
+      log.debug( "Memory pressure, staging " + reportPath + " to a temporary file" );
+      return StagingMode.TMPFILE;
+    }
+    return mode;
+  }
+
+  protected long getMaxHeap() {
+    return Runtime.getRuntime().maxMemory();
+  }
+
+  /**
+   * @return heap in use after the last garbage collection, or the currently used heap before the first collection
+   */
+  protected long getUsedHeap() {
+    long result = 0;
+    for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+      final MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+      if ( usage != null ) {
+        result += usage.getUsed();
+      }
+    }
+    if ( result > 0 ) {
+      return result;
+    }
+    final Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * @param threadId thread running a job
+   * @return bytes the thread allocated so far, negative if the JVM doesn't measure it
+   */
+  protected long getAllocatedBytes( final long threadId ) {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if ( threads instanceof com.sun.management.ThreadMXBean ) {
+      final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+      if ( sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled() ) {
+        return sun.getThreadAllocatedBytes( threadId );
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return gate around the task, to be submitted instead of it and attached to it as progress listener
+   */
+  Admission admit( final IAsyncReportExecution<?> task ) {
+    return new Admission( task );
+  }
+
+  private static final class Footprint {
+    private final long peakHeap;
+    private final long outputBytes;
+
+    private Footprint( final long peakHeap, final long outputBytes ) {
+      this.peakHeap = peakHeap;
+      this.outputBytes = outputBytes;
+    }
+  }
+
+  /**
+   * Reserves the footprint of a job for the time it runs and samples heap growth while it processes.
+   */
+  final class Admission implements Callable<IFixedSizeStreamingContent>,
+    IListenableFutureDelegator<IFixedSizeStreamingContent>, ReportProgressListener {
+
+    private final IAsyncReportExecution<?> task;
+    private volatile long threadId;
+    private volatile long baseline;
+    private volatile long allocatedBaseline;
+    private volatile long peak;
+
+    private Admission( final IAsyncReportExecution<?> task ) {
+      this.task = task;
+    }
+
+    @Override public IFixedSizeStreamingContent call() throws Exception {
+      // async jobs always stage to a file
+      final long footprint = estimate( task.getReportPath(), task.getMimeType(), StagingMode.TMPFILE );
+      acquire( footprint );
+      try {
+        threadId = Thread.currentThread().getId();
+        baseline = getUsedHeap();
+        allocatedBaseline = getAllocatedBytes( threadId );
+        return task.call();
+      } finally {
+        release( footprint );
+        if ( peak > 0 ) {
+          record( task.getReportPath(), task.getMimeType(), peak, getStagedBytes() );
+        }
+      }
+    }
+
+    private long getStagedBytes() {
+      final Path stagingPath = task.getStagingPath();
+      try {
+        return stagingPath == null ? 0 : Files.size( stagingPath );
+      } catch ( final IOException e ) {
+        return 0;
+      }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Override public ListenableFuture<IFixedSizeStreamingContent> delegate(
+      final ListenableFuture<IFixedSizeStreamingContent> delegate ) {
+      if ( task instanceof IListenableFutureDelegator ) {
+        return ( (IListenableFutureDelegator<IFixedSizeStreamingContent>) task ).delegate( delegate );
+      }
+      return delegate;
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent reportProgressEvent ) {
+      sample();
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent reportProgressEvent ) {
+      sample();
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent reportProgressEvent ) {
+      sample();
+    }
+
+    private void sample() {
+      long growth = getUsedHeap() - baseline;
+      if ( allocatedBaseline >= 0 ) {
+        final long allocated = getAllocatedBytes( threadId );
+        if ( allocated >= 0 ) {
+          // the job can't have retained more than it allocated itself
+          growth = Math.min( growth, allocated - allocatedBaseline );
+        }
+      }
+      if ( growth > peak ) {
+        peak = growth;
+      }
+    }
+  }
+}
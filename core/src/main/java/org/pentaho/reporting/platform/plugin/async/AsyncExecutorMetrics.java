@@ -0,0 +1,268 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms of {@link PentahoAsyncExecutor}. Jobs report their lifecycle through a
+ * progress listener attached when they are queued and through the completion of their future.
+ */
+public class AsyncExecutorMetrics implements AsyncExecutorMetricsMXBean {
+
+  public static final String OBJECT_NAME = "org.pentaho.reporting.platform.plugin.async:type=PentahoAsyncExecutor";
+
+  private static final Log log = LogFactory.getLog( AsyncExecutorMetrics.class );
+  private static final long[] BOUNDS = { 100, 1000, 10000, 60000, 600000 };
+  private static final String UNKNOWN_TYPE = "unknown";
+
+  private final ThreadPoolExecutor pool;
+  private final LongSupplier stagedBytesInFlight;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong canceled = new AtomicLong();
+  private final AtomicLong scheduledWritten = new AtomicLong();
+  private final AtomicLong scheduledFailed = new AtomicLong();
+  private final Map<String, Integer> inFlightByUser = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLongArray> queueWait = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLongArray> runTime = new ConcurrentHashMap<>();
+
+  private ObjectName registeredName;
+
+  AsyncExecutorMetrics( final ThreadPoolExecutor pool, final LongSupplier stagedBytesInFlight ) {
+    this.pool = pool;
+    this.stagedBytesInFlight = stagedBytesInFlight;
+  }
+
+  /**
+   * Registers the metrics in the platform MBean server, failures are logged and ignored.
+   */
+  synchronized void register() {
+    if ( registeredName != null ) {
+      return;
+    }
+    try {
+      final ObjectName name = new ObjectName( OBJECT_NAME );
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if ( server.isRegistered( name ) ) {
+        server.unregisterMBean( name );
+      }
+      server.registerMBean( this, name );
+      registeredName = name;
+    } catch ( final JMException e ) {
+      log.warn( "Unable to register async executor metrics", e );
+    }
+  }
+
+  synchronized void unregister() {
+    if ( registeredName == null ) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean( registeredName );
+    } catch ( final JMException e ) {
+      log.debug( "Unable to unregister async executor metrics", e );
+    }
+    registeredName = null;
+  }
+
+  /**
+   * Starts tracking a queued job.
+   *
+   * @return listener to attach to the job, it marks the start of processing
+   */
+  JobMetrics submitted( final String user, final String mimeType ) {
+    submitted.incrementAndGet();
+    inFlightByUser.merge( String.valueOf( user ), 1, Integer::sum );
+    return new JobMetrics( user, mimeType == null ? UNKNOWN_TYPE : mimeType );
+  }
+
+  void scheduledWritten() {
+    scheduledWritten.incrementAndGet();
+  }
+
+  void scheduledFailed() {
+    scheduledFailed.incrementAndGet();
+  }
+
+  static int getBucket( final long millis ) {
+    for ( int i = 0; i < BOUNDS.length; i++ ) {
+      if ( millis <= BOUNDS[ i ] ) {
+        return i;
+      }
+    }
+    return BOUNDS.length;
+  }
+
+  private static void record( final Map<String, AtomicLongArray> histograms, final String type, final long millis ) {
+    histograms.computeIfAbsent( type, t -> new AtomicLongArray( BOUNDS.length + 1 ) )
+      .incrementAndGet( getBucket( millis ) );
+  }
+
+  private static Map<String, long[]> snapshot( final Map<String, AtomicLongArray> histograms ) {
+    final Map<String, long[]> result = new HashMap<>();
+    for ( final Map.Entry<String, AtomicLongArray> entry : histograms.entrySet() ) {
+      final AtomicLongArray counts = entry.getValue();
+      final long[] values = new long[ counts.length() ];
+      for ( int i = 0; i < values.length; i++ ) {
+        values[ i ] = counts.get( i );
+      }
+      result.put( entry.getKey(), values );
+    }
+    return result;
+  }
+
+  @Override public int getPoolSize() {
+    return pool.getCorePoolSize();
+  }
+
+  @Override public int getActiveCount() {
+    return pool.getActiveCount();
+  }
+
+  @Override public int getQueuedCount() {
+    return pool.getQueue().size();
+  }
+
+  @Override public long getSubmittedCount() {
+    return submitted.get();
+  }
+
+  @Override public long getCompletedCount() {
+    return completed.get();
+  }
+
+  @Override public long getFailedCount() {
+    return failed.get();
+  }
+
+  @Override public long getCanceledCount() {
+    return canceled.get();
+  }
+
+  @Override public long getScheduledWrittenCount() {
+    return scheduledWritten.get();
+  }
+
+  @Override public long getScheduledFailedCount() {
+    return scheduledFailed.get();
+  }
+
+  @Override public long getStagedBytesInFlight() {
+    return stagedBytesInFlight.getAsLong();
+  }
+
+  @Override public Map<String, Integer> getInFlightJobsByUser() {
+    return new HashMap<>( inFlightByUser );
+  }
+
+  @Override public long[] getHistogramBoundsMillis() {
+    return BOUNDS.clone();
+  }
+
+  @Override public Map<String, long[]> getQueueWaitHistograms() {
+    return snapshot( queueWait );
+  }
+
+  @Override public Map<String, long[]> getRunTimeHistograms() {
+    return snapshot( runTime );
+  }
+
+  @Override public void reset() {
+    submitted.set( 0 );
+    completed.set( 0 );
+    failed.set( 0 );
+    canceled.set( 0 );
+    scheduledWritten.set( 0 );
+    scheduledFailed.set( 0 );
+    queueWait.clear();
+    runTime.clear();
+  }
+
+  /**
+   * Lifecycle of a single job: queued on creation, started with the first progress event, done with its future.
+   */
+  final class JobMetrics implements ReportProgressListener {
+    private final String user;
+    private final String type;
+    private final long queued = System.currentTimeMillis();
+    private volatile long started;
+    private boolean done;
+
+    private JobMetrics( final String user, final String type ) {
+      this.user = user;
+      this.type = type;
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent reportProgressEvent ) {
+      markStarted();
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent reportProgressEvent ) {
+      markStarted();
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent reportProgressEvent ) {
+    }
+
+    private synchronized void markStarted() {
+      if ( started == 0 ) {
+        started = System.currentTimeMillis();
+        record( queueWait, type, started - queued );
+      }
+    }
+
+    /**
+     * @param state       final state of the job, can be null
+     * @param wasCanceled the future of the job was canceled
+     */
+    synchronized void done( final IAsyncReportState state, final boolean wasCanceled ) {
+      if ( done ) {
+        return;
+      }
+      done = true;
+      inFlightByUser.computeIfPresent( String.valueOf( user ), ( u, count ) -> count > 1 ? count - 1 : null );
+      final AsyncExecutionStatus status = state == null ? null : state.getStatus();
+      if ( wasCanceled || AsyncExecutionStatus.CANCELED.equals( status ) ) {
+        canceled.incrementAndGet();
+      } else if ( AsyncExecutionStatus.FINISHED.equals( status ) || AsyncExecutionStatus.SCHEDULED.equals( status ) ) {
+        completed.incrementAndGet();
+      } else {
+        failed.incrementAndGet();
+      }
+      if ( started > 0 ) {
+        record( runTime, type, System.currentTimeMillis() - started );
+      }
+    }
+  }
+}
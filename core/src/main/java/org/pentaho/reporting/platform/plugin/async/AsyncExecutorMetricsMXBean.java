@@ -0,0 +1,66 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import java.util.Map;
+
+/**
+ * Health of the async report executor, registered in the platform MBean server when enabled on the executor.
+ * Histograms count jobs per output mime type in the buckets given by {@link #getHistogramBoundsMillis()}, the last
+ * bucket counts everything above the last bound.
+ */
+public interface AsyncExecutorMetricsMXBean {
+
+  int getPoolSize();
+
+  int getActiveCount();
+
+  int getQueuedCount();
+
+  long getSubmittedCount();
+
+  long getCompletedCount();
+
+  long getFailedCount();
+
+  long getCanceledCount();
+
+  /**
+   * @return scheduled jobs whose content was written to the repository
+   */
+  long getScheduledWrittenCount();
+
+  /**
+   * @return scheduled jobs whose content could not be written to the repository
+   */
+  long getScheduledFailedCount();
+
+  /**
+   * @return bytes staged by jobs that are not done yet
+   */
+  long getStagedBytesInFlight();
+
+  /**
+   * @return user name to number of jobs not done yet
+   */
+  Map<String, Integer> getInFlightJobsByUser();
+
+  long[] getHistogramBoundsMillis();
+
+  Map<String, long[]> getQueueWaitHistograms();
+
+  Map<String, long[]> getRunTimeHistograms();
+
+  void reset();
+}
@@ -0,0 +1,557 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.libraries.base.util.ArgumentNullException;
+import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only local journal of async job submissions, state transitions and staged output locations.
+ * <p>
+ * Each line is a json record, records of the same job are merged on replay so the last known state wins. The executor
+ * replays the journal on startup to re-attach finished staged content and to re-queue interrupted jobs according to the
+ * recovery policy. The journal is compacted to the jobs that are still live after a number of appended records.
+ * <p>
+ * Inputs with names that look like credentials are never written, jobs submitted with such inputs are not resubmitted
+ * after restart.
+ */
+public class AsyncJobJournal {
+
+  public enum RecoveryPolicy {
+    /**
+     * Interrupted jobs are dropped, their partial staged content is removed.
+     */
+    DISCARD,
+    /**
+     * Interrupted jobs are re-queued under the same job id with the inputs they were submitted with.
+     */
+    RESUBMIT
+  }
+
+  public static final String DEFAULT_JOURNAL_DIR = "system/tmp/asyncjournal";
+  public static final String JOURNAL_FILE = "journal.log";
+  static final String REMOVED = "REMOVED";
+  static final int DEFAULT_COMPACT_THRESHOLD = 10000;
+  static final Pattern SENSITIVE_INPUT =
+    Pattern.compile( ".*(password|passwd|pwd|secret|token|credential|api[-_.]?key).*", Pattern.CASE_INSENSITIVE );
+
+  private static final Log log = LogFactory.getLog( AsyncJobJournal.class );
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final String journalDir;
+  private final RecoveryPolicy recoveryPolicy;
+  private final long retentionMillis;
+
+  private Writer writer;
+  private boolean closed;
+  private int compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+  private int appended;
+
+  public AsyncJobJournal() {
+    this( DEFAULT_JOURNAL_DIR, RecoveryPolicy.DISCARD.name(), 1440 );
+  }
+
+  /**
+   * @param journalDir       journal directory, relative paths are resolved against the solution path
+   * @param recoveryPolicy   what to do with interrupted jobs on startup, see {@link RecoveryPolicy}
+   * @param retentionMinutes how long finished staged content stays available after restart
+   */
+  public AsyncJobJournal( final String journalDir, final String recoveryPolicy, final long retentionMinutes ) {
+    ArgumentNullException.validate( "journalDir", journalDir );
+    ArgumentNullException.validate( "recoveryPolicy", recoveryPolicy );
+    this.journalDir = journalDir;
+    this.recoveryPolicy = RecoveryPolicy.valueOf( recoveryPolicy.toUpperCase() );
+    this.retentionMillis = retentionMinutes * 60 * 1000;
+  }
+
+  public RecoveryPolicy getRecoveryPolicy() {
+    return recoveryPolicy;
+  }
+
+  /**
+   * @param compactThreshold number of records appended at runtime after which the journal is compacted, 0 to compact
+   *                         on recovery only
+   */
+  public synchronized void setCompactThreshold( final int compactThreshold ) {
+    this.compactThreshold = compactThreshold;
+  }
+
+  Path getJournalFile() {
+    Path dir = Paths.get( journalDir );
+    if ( !dir.isAbsolute() ) {
+      final IApplicationContext context = PentahoSystem.getApplicationContext();
+      final String solutionDir = context == null ? null : context.getSolutionPath( journalDir );
+      if ( solutionDir != null ) {
+        dir = Paths.get( solutionDir );
+      }
+    }
+    return dir.resolve( JOURNAL_FILE );
+  }
+
+  public void submitted( final UUID id, final IPentahoSession session,
+                         final IAsyncReportExecution<?> task ) {
+    final JobRecord record = new JobRecord( id );
+    record.setSessionId( session.getId() );
+    record.setUser( session.getName() );
+    record.setPath( task.getReportPath() );
+    record.setMimeType( task.getMimeType() );
+    record.setStatus( AsyncExecutionStatus.QUEUED.name() );
+    final Path stagingPath = task.getStagingPath();
+    if ( stagingPath != null ) {
+      record.setStagingPath( stagingPath.toString() );
+    }
+    record.setInputs( toJournalInputs( task.getInputs() ) );
+    if ( hasSensitiveInputs( task.getInputs() ) ) {
+      record.setRedacted( Boolean.TRUE );
+    }
+    append( record );
+  }
+
+  public void statusChanged( final UUID id, final AsyncExecutionStatus status ) {
+    final JobRecord record = new JobRecord( id );
+    record.setStatus( status.name() );
+    append( record );
+  }
+
+  /**
+   * Records the outcome of a job together with the compression of its staged content, which is needed to serve it after
+   * restart.
+   */
+  public void finished( final UUID id, final AsyncExecutionStatus status, final IFixedSizeStreamingContent content ) {
+    final JobRecord record = new JobRecord( id );
+    record.setStatus( status.name() );
+    if ( StagingCompression.isCompressed( content ) ) {
+      record.setCompressed( Boolean.TRUE );
+      record.setContentSize( content.getContentSize() );
+    }
+    append( record );
+  }
+
+  public void scheduled( final UUID id ) {
+    final JobRecord record = new JobRecord( id );
+    record.setScheduled( Boolean.TRUE );
+    append( record );
+  }
+
+  public void removed( final UUID id ) {
+    final JobRecord record = new JobRecord( id );
+    record.setStatus( REMOVED );
+    append( record );
+  }
+
+  /**
+   * Reads the journal and merges records per job. Incomplete trailing lines, left by a crash in the middle of a write,
+   * are skipped.
+   *
+   * @return last known state of every journaled job, in submission order
+   */
+  public synchronized Map<UUID, JobRecord> replay() {
+    final Map<UUID, JobRecord> records = new LinkedHashMap<>();
+    final Path journalFile = getJournalFile();
+    if ( !Files.exists( journalFile ) ) {
+      return records;
+    }
+    try ( BufferedReader reader = Files.newBufferedReader( journalFile, StandardCharsets.UTF_8 ) ) {
+      String line;
+      while ( ( line = reader.readLine() ) != null ) {
+        if ( line.trim().isEmpty() ) {
+          continue;
+        }
+        try {
+          final JobRecord record = MAPPER.readValue( line, JobRecord.class );
+          final UUID id = UUID.fromString( record.getId() );
+          final JobRecord known = records.get( id );
+          if ( known == null ) {
+            records.put( id, record );
+          } else {
+            known.merge( record );
+          }
+        } catch ( final Exception e ) {
+          log.debug( "Skip malformed async job journal record: " + line );
+        }
+      }
+    } catch ( final IOException e ) {
+      log.warn( "Unable to read async job journal: " + journalFile, e );
+    }
+    return records;
+  }
+
+  /**
+   * Rewrites the journal so it contains only the given records. Called after recovery and periodically while
+   * journaling to keep the file bounded.
+   */
+  public synchronized void compact( final Collection<JobRecord> live ) {
+    appended = live.size();
+    final Path journalFile = getJournalFile();
+    IOUtils.closeQuietly( writer );
+    writer = null;
+    try {
+      Files.createDirectories( journalFile.getParent() );
+      final Path tmp = journalFile.resolveSibling( JOURNAL_FILE + ".tmp" );
+      try ( Writer out = Files.newBufferedWriter( tmp, StandardCharsets.UTF_8 ) ) {
+        for ( final JobRecord record : live ) {
+          out.write( MAPPER.writeValueAsString( record ) );
+          out.write( '\n' );
+        }
+      }
+      Files.move( tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    } catch ( final IOException e ) {
+      log.warn( "Unable to compact async job journal: " + journalFile, e );
+    }
+  }
+
+  public boolean isExpired( final JobRecord record ) {
+    return retentionMillis > 0 && System.currentTimeMillis() - record.getTimestamp() > retentionMillis;
+  }
+
+  /**
+   * Stops journaling. Jobs still running at this point stay in their last journaled state and are treated as
+   * interrupted on the next startup.
+   */
+  public synchronized void close() {
+    closed = true;
+    IOUtils.closeQuietly( writer );
+    writer = null;
+  }
+
+  private synchronized void append( final JobRecord record ) {
+    if ( closed ) {
+      return;
+    }
+    try {
+      if ( writer == null ) {
+        final Path journalFile = getJournalFile();
+        Files.createDirectories( journalFile.getParent() );
+        writer = new BufferedWriter( Files.newBufferedWriter( journalFile, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND ) );
+      }
+      writer.write( MAPPER.writeValueAsString( record ) );
+      writer.write( '\n' );
+      writer.flush();
+    } catch ( final IOException e ) {
+      log.warn( "Unable to write async job journal record for job: " + record.getId(), e );
+      return;
+    }
+    if ( compactThreshold > 0 && ++appended >= compactThreshold ) {
+      compactLive();
+    }
+  }
+
+  /**
+   * Drops the records of removed, failed and canceled jobs, everything else may still be recovered.
+   */
+  private void compactLive() {
+    final List<JobRecord> live = new ArrayList<>();
+    for ( final JobRecord record : replay().values() ) {
+      if ( !record.isFinal() ) {
+        live.add( record );
+      }
+    }
+    compact( live );
+    log.debug( "Async job journal compacted, live jobs: " + live.size() );
+  }
+
+  static boolean isSensitiveInput( final String name ) {
+    return name != null && SENSITIVE_INPUT.matcher( name ).matches();
+  }
+
+  static boolean hasSensitiveInputs( final Map<String, Object> inputs ) {
+    if ( inputs != null ) {
+      for ( final String name : inputs.keySet() ) {
+        if ( isSensitiveInput( name ) ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Only plain values survive a restart, everything else (streams, report definitions) is left out. Inputs that look
+   * like credentials are left out as well, see {@link #isSensitiveInput(String)}.
+   */
+  static Map<String, Object> toJournalInputs( final Map<String, Object> inputs ) {
+    final Map<String, Object> result = new HashMap<>();
+    if ( inputs == null ) {
+      return result;
+    }
+    for ( final Map.Entry<String, Object> entry : inputs.entrySet() ) {
+      if ( isSensitiveInput( entry.getKey() ) ) {
+        continue;
+      }
+      final Object value = entry.getValue();
+      if ( value instanceof String || value instanceof Number || value instanceof Boolean ) {
+        result.put( entry.getKey(), String.valueOf( value ) );
+      } else if ( value instanceof Object[] ) {
+        final List<String> values = new ArrayList<>();
+        for ( final Object o : (Object[]) value ) {
+          values.add( String.valueOf( o ) );
+        }
+        result.put( entry.getKey(), values );
+      }
+    }
+    return result;
+  }
+
+  static Map<String, Object> fromJournalInputs( final Map<String, Object> inputs ) {
+    final Map<String, Object> result = new HashMap<>();
+    if ( inputs == null ) {
+      return result;
+    }
+    for ( final Map.Entry<String, Object> entry : inputs.entrySet() ) {
+      final Object value = entry.getValue();
+      if ( value instanceof List ) {
+        final List<?> values = (List<?>) value;
+        final String[] array = new String[ values.size() ];
+        for ( int i = 0; i < array.length; i++ ) {
+          array[ i ] = String.valueOf( values.get( i ) );
+        }
+        result.put( entry.getKey(), array );
+      } else {
+        result.put( entry.getKey(), value );
+      }
+    }
+    return result;
+  }
+
+  @JsonInclude( JsonInclude.Include.NON_NULL )
+  @JsonIgnoreProperties( ignoreUnknown = true )
+  public static class JobRecord {
+    private String id;
+    private long timestamp;
+    private String sessionId;
+    private String user;
+    private String path;
+    private String mimeType;
+    private String status;
+    private String stagingPath;
+    private Boolean compressed;
+    private Long contentSize;
+    private Boolean scheduled;
+    private Boolean redacted;
+    private Map<String, Object> inputs;
+
+    public JobRecord() {
+    }
+
+    JobRecord( final UUID id ) {
+      this.id = id.toString();
+      this.timestamp = System.currentTimeMillis();
+    }
+
+    void merge( final JobRecord other ) {
+      timestamp = other.timestamp;
+      if ( other.sessionId != null ) {
+        sessionId = other.sessionId;
+      }
+      if ( other.user != null ) {
+        user = other.user;
+      }
+      if ( other.path != null ) {
+        path = other.path;
+      }
+      if ( other.mimeType != null ) {
+        mimeType = other.mimeType;
+      }
+      if ( other.status != null ) {
+        status = other.status;
+      }
+      if ( other.stagingPath != null ) {
+        stagingPath = other.stagingPath;
+      }
+      if ( other.compressed != null ) {
+        compressed = other.compressed;
+      }
+      if ( other.contentSize != null ) {
+        contentSize = other.contentSize;
+      }
+      if ( other.scheduled != null ) {
+        scheduled = other.scheduled;
+      }
+      if ( other.redacted != null ) {
+        redacted = other.redacted;
+      }
+      if ( other.inputs != null ) {
+        inputs = other.inputs;
+      }
+    }
+
+    @JsonIgnore
+    public boolean isFinal() {
+      return REMOVED.equals( status ) || AsyncExecutionStatus.FAILED.name().equals( status )
+        || AsyncExecutionStatus.CANCELED.name().equals( status );
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+      return AsyncExecutionStatus.FINISHED.name().equals( status );
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public void setId( final String id ) {
+      this.id = id;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public void setTimestamp( final long timestamp ) {
+      this.timestamp = timestamp;
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    public void setSessionId( final String sessionId ) {
+      this.sessionId = sessionId;
+    }
+
+    public String getUser() {
+      return user;
+    }
+
+    public void setUser( final String user ) {
+      this.user = user;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public void setPath( final String path ) {
+      this.path = path;
+    }
+
+    public String getMimeType() {
+      return mimeType;
+    }
+
+    public void setMimeType( final String mimeType ) {
+      this.mimeType = mimeType;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public void setStatus( final String status ) {
+      this.status = status;
+    }
+
+    public String getStagingPath() {
+      return stagingPath;
+    }
+
+    public void setStagingPath( final String stagingPath ) {
+      this.stagingPath = stagingPath;
+    }
+
+    /**
+     * @return true if the staged content is gzip compressed, see {@link StagingCompression}
+     */
+    public Boolean getCompressed() {
+      return compressed;
+    }
+
+    public void setCompressed( final Boolean compressed ) {
+      this.compressed = compressed;
+    }
+
+    /**
+     * @return uncompressed size of compressed staged content
+     */
+    public Long getContentSize() {
+      return contentSize;
+    }
+
+    public void setContentSize( final Long contentSize ) {
+      this.contentSize = contentSize;
+    }
+
+    /**
+     * @return staged content of the finished job, as recorded
+     */
+    @JsonIgnore
+    public IFixedSizeStreamingContent getStagingContent() {
+      final boolean gzip = Boolean.TRUE.equals( compressed ) && contentSize != null;
+      return new AsyncJobFileStagingHandler.FixedSizeStagingContent( new File( stagingPath ), gzip,
+        gzip ? contentSize : -1 );
+    }
+
+    public Boolean getScheduled() {
+      return scheduled;
+    }
+
+    public void setScheduled( final Boolean scheduled ) {
+      this.scheduled = scheduled;
+    }
+
+    /**
+     * @return true if sensitive inputs were left out, the job can't be re-created from the record then
+     */
+    public Boolean getRedacted() {
+      return redacted;
+    }
+
+    public void setRedacted( final Boolean redacted ) {
+      this.redacted = redacted;
+    }
+
+    public Map<String, Object> getInputs() {
+      return inputs;
+    }
+
+    public void setInputs( final Map<String, Object> inputs ) {
+      this.inputs = inputs;
+    }
+  }
+}
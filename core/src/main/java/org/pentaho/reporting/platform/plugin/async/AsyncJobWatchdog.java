@@ -0,0 +1,221 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.platform.plugin.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the lifetime of async jobs. Running jobs are checked periodically against a wall clock limit, a limit of
+ * staged bytes and a row limit; a job exceeding any of them is interrupted and fails with the reason as error message.
+ * <p>
+ * Default limits apply to all jobs, they can be overridden per report path or output mime type (report path wins) with
+ * entries of the form {@code maxMillis,maxStagedBytes,maxRows}. Zero means no limit.
+ */
+public class AsyncJobWatchdog {
+
+  private static final Log log = LogFactory.getLog( AsyncJobWatchdog.class );
+
+  private long checkIntervalMillis = 10000;
+  private Limits defaults = Limits.NONE;
+  private Map<String, Limits> limits = Collections.emptyMap();
+
+  private final Map<IAsyncReportExecution<?>, WatchedJob> watched = new ConcurrentHashMap<>();
+  private ScheduledExecutorService scheduler;
+
+  public void setCheckIntervalMillis( final long checkIntervalMillis ) {
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  public void setMaxMillis( final long maxMillis ) {
+    defaults = new Limits( maxMillis, defaults.maxStagedBytes, defaults.maxRows );
+  }
+
+  public void setMaxStagedBytes( final long maxStagedBytes ) {
+    defaults = new Limits( defaults.maxMillis, maxStagedBytes, defaults.maxRows );
+  }
+
+  public void setMaxRows( final long maxRows ) {
+    defaults = new Limits( defaults.maxMillis, defaults.maxStagedBytes, maxRows );
+  }
+
+  /**
+   * @param limits report path or mime type to {@code maxMillis,maxStagedBytes,maxRows}
+   */
+  public void setLimits( final Map<String, String> limits ) {
+    final Map<String, Limits> parsed = new ConcurrentHashMap<>();
+    for ( final Map.Entry<String, String> entry : limits.entrySet() ) {
+      parsed.put( entry.getKey(), Limits.parse( entry.getValue() ) );
+    }
+    this.limits = parsed;
+  }
+
+  /**
+   * Starts watching a job.
+   *
+   * @return listener to attach to the job, it tracks start time and row count
+   */
+  ReportProgressListener watch( final IAsyncReportExecution<?> task ) {
+    final WatchedJob job = new WatchedJob( task, getLimits( task.getReportPath(), task.getMimeType() ) );
+    if ( !job.limits.isUnlimited() ) {
+      watched.put( task, job );
+      ensureStarted();
+    }
+    return job;
+  }
+
+  void unwatch( final IAsyncReportExecution<?> task ) {
+    watched.remove( task );
+  }
+
+  Limits getLimits( final String reportPath, final String mimeType ) {
+    Limits result = reportPath == null ? null : limits.get( reportPath );
+    if ( result == null && mimeType != null ) {
+      result = limits.get( mimeType );
+    }
+    return result == null ? defaults : result;
+  }
+
+  /**
+   * Aborts jobs violating their limits.
+   */
+  void check() {
+    final long now = System.currentTimeMillis();
+    for ( final WatchedJob job : watched.values() ) {
+      final String reason = job.getViolation( now );
+      if ( reason != null ) {
+        watched.remove( job.task );
+        log.warn( "Aborting async report execution " + job.task.getReportPath() + ": " + reason );
+        job.task.abort( reason );
+      }
+    }
+  }
+
+  private synchronized void ensureStarted() {
+    if ( scheduler == null ) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(
+        new DaemonThreadFactory( "PentahoAsyncExecutor Watchdog" ) );
+      scheduler.scheduleWithFixedDelay( () -> {
+        try {
+          check();
+        } catch ( final RuntimeException e ) {
+          log.error( "Async job watchdog check failed", e );
+        }
+      }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS );
+    }
+  }
+
+  public synchronized void shutdown() {
+    if ( scheduler != null ) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    watched.clear();
+  }
+
+  static final class Limits {
+    static final Limits NONE = new Limits( 0, 0, 0 );
+
+    final long maxMillis;
+    final long maxStagedBytes;
+    final long maxRows;
+
+    Limits( final long maxMillis, final long maxStagedBytes, final long maxRows ) {
+      this.maxMillis = maxMillis;
+      this.maxStagedBytes = maxStagedBytes;
+      this.maxRows = maxRows;
+    }
+
+    boolean isUnlimited() {
+      return maxMillis <= 0 && maxStagedBytes <= 0 && maxRows <= 0;
+    }
+
+    static Limits parse( final String value ) {
+      final String[] parts = value.split( "," );
+      if ( parts.length != 3 ) {
+        throw new IllegalArgumentException( "Expected maxMillis,maxStagedBytes,maxRows but got: " + value );
+      }
+      return new Limits( Long.parseLong( parts[ 0 ].trim() ), Long.parseLong( parts[ 1 ].trim() ),
+        Long.parseLong( parts[ 2 ].trim() ) );
+    }
+  }
+
+  /**
+   * Progress of a watched job, updated by the report processing thread.
+   */
+  static final class WatchedJob implements ReportProgressListener {
+    private final IAsyncReportExecution<?> task;
+    private final Limits limits;
+    private volatile long started;
+    private volatile long rows;
+
+    WatchedJob( final IAsyncReportExecution<?> task, final Limits limits ) {
+      this.task = task;
+      this.limits = limits;
+    }
+
+    String getViolation( final long now ) {
+      if ( limits.maxMillis > 0 && started > 0 && now - started > limits.maxMillis ) {
+        return "Execution time limit of " + limits.maxMillis + " ms exceeded";
+      }
+      if ( limits.maxRows > 0 && rows > limits.maxRows ) {
+        return "Row limit of " + limits.maxRows + " exceeded: " + rows;
+      }
+      if ( limits.maxStagedBytes > 0 ) {
+        final Path stagingPath = task.getStagingPath();
+        try {
+          if ( stagingPath != null && Files.size( stagingPath ) > limits.maxStagedBytes ) {
+            return "Staged content limit of " + limits.maxStagedBytes + " bytes exceeded";
+          }
+        } catch ( final IOException e ) {
+          // staging file is gone, nothing to check
+        }
+      }
+      return null;
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent reportProgressEvent ) {
+      if ( started == 0 ) {
+        started = System.currentTimeMillis();
+      }
+      update( reportProgressEvent );
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent reportProgressEvent ) {
+      update( reportProgressEvent );
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent reportProgressEvent ) {
+    }
+
+    private void update( final ReportProgressEvent reportProgressEvent ) {
+      if ( reportProgressEvent != null && reportProgressEvent.getMaximumRow() > rows ) {
+        rows = reportProgressEvent.getMaximumRow();
+      }
+    }
+  }
+}
@@ -26,6 +26,9 @@ public class AsyncSystemListener implements IPentahoSystemListener {
   @Override public boolean startup( final IPentahoSession iPentahoSession ) {
     asyncExecutor = PentahoSystem.get( IPentahoAsyncExecutor.class );
     cache = PentahoSystem.get( IReportContentCache.class );
+    if ( null != asyncExecutor ) {
+      asyncExecutor.recover();
+    }
     return true;
   }
 
@@ -0,0 +1,90 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed size pool of the async executor that measures how long tasks wait in the queue, so its size can follow the
+ * load. The size can be changed while tasks run.
+ */
+class AsyncThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private final Object waitLock = new Object();
+  private long maxQueueWait;
+
+  AsyncThreadPoolExecutor( final int capacity, final ThreadFactory threadFactory ) {
+    super( capacity, capacity, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory );
+  }
+
+  @Override public void execute( final Runnable command ) {
+    super.execute( command instanceof QueuedTask ? command : new QueuedTask( command ) );
+  }
+
+  @Override protected void beforeExecute( final Thread t, final Runnable r ) {
+    super.beforeExecute( t, r );
+    if ( r instanceof QueuedTask ) {
+      recordWait( System.currentTimeMillis() - ( (QueuedTask) r ).enqueued );
+    }
+  }
+
+  private void recordWait( final long wait ) {
+    synchronized ( waitLock ) {
+      maxQueueWait = Math.max( maxQueueWait, wait );
+    }
+  }
+
+  /**
+   * @return longest time a task waited for a thread since the last call, including the task still waiting the longest
+   */
+  long takeMaxQueueWait() {
+    final long now = System.currentTimeMillis();
+    final Runnable head = getQueue().peek();
+    final long headWait = head instanceof QueuedTask ? now - ( (QueuedTask) head ).enqueued : 0;
+    synchronized ( waitLock ) {
+      final long result = Math.max( maxQueueWait, headWait );
+      maxQueueWait = 0;
+      return result;
+    }
+  }
+
+  /**
+   * Resizes the pool, idle threads above the new size terminate, busy ones once their task is done.
+   */
+  synchronized void resize( final int size ) {
+    if ( size > getMaximumPoolSize() ) {
+      setMaximumPoolSize( size );
+      setCorePoolSize( size );
+    } else {
+      setCorePoolSize( size );
+      setMaximumPoolSize( size );
+    }
+  }
+
+  private static final class QueuedTask implements Runnable {
+    private final Runnable delegate;
+    private final long enqueued = System.currentTimeMillis();
+
+    private QueuedTask( final Runnable delegate ) {
+      this.delegate = delegate;
+    }
+
+    @Override public void run() {
+      delegate.run();
+    }
+  }
+}
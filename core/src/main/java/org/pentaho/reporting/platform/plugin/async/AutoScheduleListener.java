@@ -26,6 +26,10 @@ class AutoScheduleListener implements ReportProgressListener {
   private UUID id;
   private IPentahoSession session;
   private IPentahoAsyncExecutor pentahoAsyncExecutor;
+  private ExecutionHistory history;
+  private long durationThreshold;
+  private String reportPath;
+  private String mimeType;
 
   protected AutoScheduleListener( final UUID id, final IPentahoSession session, final int threshold,
                                   final IPentahoAsyncExecutor pentahoAsyncExecutor ) {
@@ -36,9 +40,32 @@ class AutoScheduleListener implements ReportProgressListener {
     this.pentahoAsyncExecutor = pentahoAsyncExecutor;
   }
 
+  /**
+   * Also schedules reports which are predicted to run longer than the duration threshold.
+   *
+   * @param durationThreshold milliseconds, 0 - don't use predictions
+   */
+  protected AutoScheduleListener( final UUID id, final IPentahoSession session, final int threshold,
+                                  final IPentahoAsyncExecutor pentahoAsyncExecutor, final ExecutionHistory history,
+                                  final long durationThreshold, final String reportPath, final String mimeType ) {
+    this( id, session, threshold, pentahoAsyncExecutor );
+    this.history = history;
+    this.durationThreshold = durationThreshold;
+    this.reportPath = reportPath;
+    this.mimeType = mimeType;
+  }
+
+  private boolean isPredictedLong( final ReportProgressEvent reportProgressEvent ) {
+    if ( history == null || durationThreshold <= 0 || reportProgressEvent.getMaximumRow() <= 0 ) {
+      return false;
+    }
+    return history.predict( reportPath, mimeType, reportProgressEvent.getMaximumRow() ) > durationThreshold;
+  }
+
   private synchronized void autoSchedule( final ReportProgressEvent reportProgressEvent ) {
-    if ( !scheduled && threshold > 0 && reportProgressEvent != null
-      && reportProgressEvent.getMaximumRow() > threshold ) {
+    if ( !scheduled && reportProgressEvent != null
+      && ( threshold > 0 && reportProgressEvent.getMaximumRow() > threshold
+      || isPredictedLong( reportProgressEvent ) ) ) {
       //Auto scheduling always needs confirmation
       pentahoAsyncExecutor.preSchedule( id, session );
       scheduled = true;
@@ -0,0 +1,174 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Finished async results by canonical execution key: user, report path and version, output mime type and the inputs
+ * that affect the content, including the accepted page of paginated output. Lets a recalculation with unchanged inputs reuse staged content instead of executing the
+ * report again. Entries expire after a while and are dropped once their staged content is gone.
+ */
+class CompletedResultIndex {
+
+  // input that doesn't change the generated content
+  private static final String RESERVED_ID = "reservedId";
+
+  private final Map<String, Entry> entries;
+  private final long maxAgeMillis;
+
+  /**
+   * @param maxEntries   maximum number of remembered results
+   * @param maxAgeMillis time a finished result stays reusable
+   */
+  CompletedResultIndex( final int maxEntries, final long maxAgeMillis ) {
+    this.maxAgeMillis = maxAgeMillis;
+    this.entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true ) {
+      @Override protected boolean removeEldestEntry( final Map.Entry<String, Entry> eldest ) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @return canonical key or null if the execution can't be matched reliably
+   */
+  static String getKey( final String user, final String path, final String version, final String mimeType,
+                        final Map<String, Object> inputs ) {
+    if ( user == null || path == null || version == null || mimeType == null ) {
+      return null;
+    }
+    final StringBuilder key = new StringBuilder();
+    key.append( user ).append( '\n' ).append( path ).append( '\n' ).append( version ).append( '\n' )
+      .append( mimeType );
+    if ( inputs != null ) {
+      for ( final Map.Entry<String, Object> entry : new TreeMap<>( inputs ).entrySet() ) {
+        final String name = entry.getKey();
+        if ( RESERVED_ID.equals( name ) || name.startsWith( "::" ) ) {
+          continue;
+        }
+        final Object value = entry.getValue();
+        final String canonical;
+        if ( value == null || value instanceof String || value instanceof Number || value instanceof Boolean ) {
+          canonical = String.valueOf( value );
+        } else if ( value instanceof Object[] ) {
+          canonical = Arrays.deepToString( (Object[]) value );
+        } else {
+          // streams, report definitions and the like, can't tell whether they are equal
+          return null;
+        }
+        key.append( '\n' ).append( name ).append( '=' ).append( canonical );
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Remembers a finished result, unless its content is incomplete.
+   *
+   * @param id               job that produced the result
+   * @param compressed       true if the staged content is gzip compressed
+   * @param uncompressedSize size of compressed content once decompressed, ignored for plain content
+   * @return true if the result was indexed
+   */
+  synchronized boolean put( final String key, final UUID id, final IAsyncReportState state, final Path stagingPath,
+                            final boolean compressed, final long uncompressedSize ) {
+    if ( !isComplete( state ) ) {
+      return false;
+    }
+    entries.put( key, new Entry( id, state, stagingPath, compressed, uncompressedSize, System.currentTimeMillis() ) );
+    return true;
+  }
+
+  /**
+   * Results cut by the query limit are exactly what a recalculation is asked for to avoid. Results that only got as
+   * far as the first pages of a first page mode execution are not the whole report either.
+   */
+  static boolean isComplete( final IAsyncReportState state ) {
+    if ( state == null || !AsyncExecutionStatus.FINISHED.equals( state.getStatus() )
+      || state.getIsQueryLimitReached() ) {
+      return false;
+    }
+    final int generatedPage = state.getGeneratedPage();
+    return generatedPage <= 0 || generatedPage >= state.getTotalPages();
+  }
+
+  /**
+   * @param key        canonical key
+   * @param excludedId job that must not be answered with its own result, e.g. the one being recalculated
+   * @return reusable result or null
+   */
+  synchronized Entry find( final String key, final UUID excludedId ) {
+    final Entry entry = entries.get( key );
+    if ( entry == null ) {
+      return null;
+    }
+    if ( System.currentTimeMillis() - entry.finished > maxAgeMillis || !Files.isRegularFile( entry.stagingPath ) ) {
+      entries.remove( key );
+      return null;
+    }
+    if ( excludedId != null && excludedId.equals( entry.id ) ) {
+      return null;
+    }
+    return entry;
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  static final class Entry {
+    private final UUID id;
+    private final IAsyncReportState state;
+    private final Path stagingPath;
+    private final boolean compressed;
+    private final long uncompressedSize;
+    private final long finished;
+
+    private Entry( final UUID id, final IAsyncReportState state, final Path stagingPath, final boolean compressed,
+                   final long uncompressedSize, final long finished ) {
+      this.id = id;
+      this.state = state;
+      this.stagingPath = stagingPath;
+      this.compressed = compressed;
+      this.uncompressedSize = uncompressedSize;
+      this.finished = finished;
+    }
+
+    IAsyncReportState getState() {
+      return state;
+    }
+
+    Path getStagingPath() {
+      return stagingPath;
+    }
+
+    boolean isCompressed() {
+      return compressed;
+    }
+
+    long getUncompressedSize() {
+      return uncompressedSize;
+    }
+  }
+}
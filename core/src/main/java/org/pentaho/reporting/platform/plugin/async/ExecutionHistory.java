@@ -0,0 +1,289 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local model of past async job runtimes used to predict how long a job will take.
+ * <p>
+ * Runtimes are kept per report, output type and row count bucket (powers of two) as exponentially decayed sums for a
+ * least squares fit of duration over row count, so recent runs weigh more than old ones. A report level model over all
+ * buckets is used while a bucket has too few samples. The store is bounded, least recently used reports are dropped,
+ * and can be persisted to a json file between restarts.
+ * <p>
+ * Every model has its own lock, so runs of different reports are recorded and predicted without waiting for each other.
+ */
+public class ExecutionHistory {
+
+  public static final String DEFAULT_HISTORY_FILE = "system/tmp/asynchistory.json";
+
+  // weight of the existing samples when a new one is added
+  private static final double DECAY = 0.9;
+  private static final int MIN_SAMPLES = 2;
+  private static final int DEFAULT_MAX_ENTRIES = 1000;
+  private static final String ALL_BUCKETS = "*";
+  private static final char SEPARATOR = '\u0000';
+
+  private static final Log log = LogFactory.getLog( ExecutionHistory.class );
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final String historyFile;
+  private final int maxEntries;
+  private final Map<String, Model> models = new ConcurrentHashMap<>();
+  private volatile boolean loaded;
+
+  /**
+   * In-memory history, lost on restart.
+   */
+  public ExecutionHistory() {
+    this( null, DEFAULT_MAX_ENTRIES );
+  }
+
+  /**
+   * @param historyFile json file the history is kept in between restarts, relative paths are resolved against the
+   *                    solution path, null to keep it in memory only
+   * @param maxEntries  maximum number of models kept
+   */
+  public ExecutionHistory( final String historyFile, final int maxEntries ) {
+    this.historyFile = historyFile;
+    this.maxEntries = maxEntries;
+    this.loaded = historyFile == null;
+  }
+
+  /**
+   * Adds a finished run.
+   *
+   * @param reportPath report path
+   * @param mimeType   output type
+   * @param rows       rows processed
+   * @param millis     wall clock duration of the run
+   */
+  public void record( final String reportPath, final String mimeType, final long rows, final long millis ) {
+    if ( reportPath == null || millis < 0 ) {
+      return;
+    }
+    load();
+    getOrCreate( getKey( reportPath, mimeType, String.valueOf( getBucket( rows ) ) ) ).add( rows, millis );
+    getOrCreate( getKey( reportPath, mimeType, ALL_BUCKETS ) ).add( rows, millis );
+  }
+
+  /**
+   * @param rows rows the job processes, 0 if not known yet, e.g. while the job is queued
+   * @return predicted duration in milliseconds, -1 if there is no history for the report and output type
+   */
+  public long predict( final String reportPath, final String mimeType, final long rows ) {
+    if ( reportPath == null ) {
+      return -1;
+    }
+    load();
+    final Model all = get( getKey( reportPath, mimeType, ALL_BUCKETS ) );
+    if ( rows <= 0 ) {
+      // the fit is meaningless without a row count, the average run is the best guess
+      return all == null ? -1 : all.mean();
+    }
+    final Model bucket = get( getKey( reportPath, mimeType, String.valueOf( getBucket( rows ) ) ) );
+    if ( bucket != null && bucket.getSamples() >= MIN_SAMPLES ) {
+      return bucket.predict( rows );
+    }
+    if ( all != null && all.getSamples() >= MIN_SAMPLES ) {
+      return all.predict( rows );
+    }
+    if ( bucket != null ) {
+      return bucket.predict( rows );
+    }
+    return -1;
+  }
+
+  private Model get( final String key ) {
+    final Model model = models.get( key );
+    if ( model != null ) {
+      model.lastUsed = System.nanoTime();
+    }
+    return model;
+  }
+
+  private Model getOrCreate( final String key ) {
+    final Model existing = get( key );
+    if ( existing != null ) {
+      return existing;
+    }
+    final Model model = models.computeIfAbsent( key, k -> new Model() );
+    model.lastUsed = System.nanoTime();
+    if ( models.size() > maxEntries ) {
+      evict( key );
+    }
+    return model;
+  }
+
+  /**
+   * Drops least recently used models until the store is within bounds, only runs when a model is added.
+   */
+  private synchronized void evict( final String added ) {
+    while ( models.size() > maxEntries ) {
+      String eldest = null;
+      long eldestUse = Long.MAX_VALUE;
+      for ( final Map.Entry<String, Model> entry : models.entrySet() ) {
+        if ( !entry.getKey().equals( added ) && entry.getValue().lastUsed < eldestUse ) {
+          eldest = entry.getKey();
+          eldestUse = entry.getValue().lastUsed;
+        }
+      }
+      if ( eldest == null ) {
+        return;
+      }
+      models.remove( eldest );
+    }
+  }
+
+  /**
+   * Writes the history to the history file, if one is configured.
+   */
+  public synchronized void save() {
+    if ( historyFile == null || !loaded ) {
+      return;
+    }
+    try {
+      final Path file = getHistoryFile();
+      Files.createDirectories( file.getParent() );
+      final Path tmp = file.resolveSibling( file.getFileName() + ".tmp" );
+      final Map<String, Model> snapshot = new LinkedHashMap<>();
+      for ( final Map.Entry<String, Model> entry : models.entrySet() ) {
+        snapshot.put( entry.getKey(), entry.getValue().copy() );
+      }
+      MAPPER.writeValue( tmp.toFile(), snapshot );
+      Files.move( tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    } catch ( final IOException e ) {
+      log.warn( "Unable to save async execution history.", e );
+    }
+  }
+
+  private void load() {
+    if ( loaded ) {
+      return;
+    }
+    // solution path is not known before the platform starts, so load on first use
+    synchronized ( this ) {
+      if ( loaded ) {
+        return;
+      }
+      try {
+        final Path file = getHistoryFile();
+        if ( Files.exists( file ) ) {
+          final Map<String, Model> stored = MAPPER.readValue( file.toFile(), new TypeReference<Map<String, Model>>() {
+          } );
+          stored.forEach( models::putIfAbsent );
+        }
+      } catch ( final IOException e ) {
+        log.warn( "Unable to read async execution history, starting with an empty one.", e );
+      } finally {
+        loaded = true;
+      }
+    }
+  }
+
+  Path getHistoryFile() {
+    Path file = Paths.get( historyFile );
+    if ( !file.isAbsolute() ) {
+      final IApplicationContext context = PentahoSystem.getApplicationContext();
+      final String solutionFile = context == null ? null : context.getSolutionPath( historyFile );
+      if ( solutionFile != null ) {
+        file = Paths.get( solutionFile );
+      }
+    }
+    return file;
+  }
+
+  static int getBucket( final long rows ) {
+    return rows <= 0 ? 0 : 64 - Long.numberOfLeadingZeros( rows );
+  }
+
+  private static String getKey( final String reportPath, final String mimeType, final String bucket ) {
+    return reportPath + SEPARATOR + mimeType + SEPARATOR + bucket;
+  }
+
+  /**
+   * Decayed sums of a least squares fit of duration over rows, guarded by the model itself.
+   */
+  @JsonAutoDetect( fieldVisibility = JsonAutoDetect.Visibility.ANY, getterVisibility = JsonAutoDetect.Visibility.NONE,
+    isGetterVisibility = JsonAutoDetect.Visibility.NONE )
+  static final class Model {
+    int samples;
+    double weight;
+    double sumX;
+    double sumY;
+    double sumXX;
+    double sumXY;
+    // not persisted, a restored model counts as used when it is first looked up
+    transient volatile long lastUsed;
+
+    synchronized void add( final long rows, final long millis ) {
+      weight = weight * DECAY + 1;
+      sumX = sumX * DECAY + rows;
+      sumY = sumY * DECAY + millis;
+      sumXX = sumXX * DECAY + (double) rows * rows;
+      sumXY = sumXY * DECAY + (double) rows * millis;
+      samples++;
+    }
+
+    synchronized int getSamples() {
+      return samples;
+    }
+
+    synchronized long mean() {
+      return Math.round( sumY / weight );
+    }
+
+    synchronized Model copy() {
+      final Model copy = new Model();
+      copy.samples = samples;
+      copy.weight = weight;
+      copy.sumX = sumX;
+      copy.sumY = sumY;
+      copy.sumXX = sumXX;
+      copy.sumXY = sumXY;
+      return copy;
+    }
+
+    synchronized long predict( final long rows ) {
+      final double mean = sumY / weight;
+      final double denominator = weight * sumXX - sumX * sumX;
+      if ( samples < MIN_SAMPLES || Math.abs( denominator ) < 1e-9 ) {
+        return Math.round( mean );
+      }
+      final double slope = ( weight * sumXY - sumX * sumY ) / denominator;
+      if ( slope < 0 ) {
+        // noise, more rows never make a report faster
+        return Math.round( mean );
+      }
+      final double intercept = ( sumY - slope * sumX ) / weight;
+      return Math.max( 0, Math.round( intercept + slope * rows ) );
+    }
+  }
+}
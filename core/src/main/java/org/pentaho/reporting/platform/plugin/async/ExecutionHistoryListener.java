@@ -0,0 +1,59 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+
+/**
+ * Records the runtime of a finished report in the execution history.
+ */
+class ExecutionHistoryListener implements ReportProgressListener {
+
+  private final ExecutionHistory history;
+  private final String reportPath;
+  private final String mimeType;
+  private long start;
+  private long rows;
+
+  ExecutionHistoryListener( final ExecutionHistory history, final String reportPath, final String mimeType ) {
+    this.history = history;
+    this.reportPath = reportPath;
+    this.mimeType = mimeType;
+  }
+
+  @Override public synchronized void reportProcessingStarted( final ReportProgressEvent reportProgressEvent ) {
+    if ( start == 0 ) {
+      start = System.currentTimeMillis();
+    }
+    update( reportProgressEvent );
+  }
+
+  @Override public synchronized void reportProcessingUpdate( final ReportProgressEvent reportProgressEvent ) {
+    update( reportProgressEvent );
+  }
+
+  @Override public synchronized void reportProcessingFinished( final ReportProgressEvent reportProgressEvent ) {
+    update( reportProgressEvent );
+    if ( start > 0 ) {
+      history.record( reportPath, mimeType, rows, System.currentTimeMillis() - start );
+    }
+  }
+
+  private void update( final ReportProgressEvent reportProgressEvent ) {
+    if ( reportProgressEvent != null ) {
+      rows = Math.max( rows, reportProgressEvent.getMaximumRow() );
+    }
+  }
+}
@@ -17,7 +17,13 @@ import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
 import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
@@ -54,4 +60,47 @@ public interface IAsyncReportExecution<V extends IAsyncReportState> extends Call
   boolean schedule();
 
   boolean preSchedule();
+
+  /**
+   * Location of the staged content, if the execution stages it to a file.
+   *
+   * @return staging file path or null
+   */
+  default Path getStagingPath() {
+    return null;
+  }
+
+  /**
+   * Opens the staged content for reading while the execution is still running.
+   *
+   * @return stream of the staged content or null if the execution doesn't stage to a file
+   */
+  default InputStream openStagingStream() throws IOException {
+    final Path stagingPath = getStagingPath();
+    return stagingPath == null ? null : Files.newInputStream( stagingPath );
+  }
+
+  /**
+   * Inputs the execution was created with, used to re-create it after restart.
+   *
+   * @return execution inputs, never null
+   */
+  default Map<String, Object> getInputs() {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Interrupts a running execution, which then fails with the given reason as error message.
+   *
+   * @param reason error message
+   */
+  default void abort( final String reason ) {
+  }
+
+  /**
+   * Releases the staging resources of an execution that is not going to be run, because another node executes the
+   * job.
+   */
+  default void discard() {
+  }
 }
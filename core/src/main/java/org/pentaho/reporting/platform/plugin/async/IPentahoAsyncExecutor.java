@@ -18,7 +18,11 @@ import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.UUID;
 import java.util.concurrent.Future;
 
@@ -42,7 +46,51 @@ public interface IPentahoAsyncExecutor<TReportState extends IAsyncReportState> {
 
   UUID recalculate( UUID uuid, IPentahoSession session );
 
+  /**
+   * Whether jobs are journaled and their staged content has to survive the session and a restart.
+   *
+   * @return true if staging files must not be removed on logout or JVM exit
+   */
+  default boolean isJournaled() {
+    return false;
+  }
+
+  /**
+   * Location of the content a job is staging, can be read while the job is still running.
+   *
+   * @return staging file path or null if the job is unknown or doesn't stage to a file
+   */
+  default Path getStagingPath( final UUID uuid, final IPentahoSession session ) {
+    return null;
+  }
+
+  /**
+   * Opens the content a job is staging for reading while the job is still running.
+   *
+   * @return stream of the staged content or null if the job is unknown or doesn't stage to a file
+   */
+  default InputStream openStagingStream( final UUID uuid, final IPentahoSession session ) throws IOException {
+    final Path stagingPath = getStagingPath( uuid, session );
+    return stagingPath == null ? null : Files.newInputStream( stagingPath );
+  }
+
+  /**
+   * Predicted duration of a job based on the runtimes of earlier jobs of the same report and output type.
+   *
+   * @param state job state
+   * @return milliseconds or -1 if there is nothing to base a prediction on
+   */
+  default long predictDuration( final IAsyncReportState state ) {
+    return -1;
+  }
+
   void updateSchedulingLocation( UUID uuid, IPentahoSession session, Serializable folderId, String newName );
 
   void shutdown();
+
+  /**
+   * Restores jobs which were submitted before restart, if the implementation keeps track of them.
+   */
+  default void recover() {
+  }
 }
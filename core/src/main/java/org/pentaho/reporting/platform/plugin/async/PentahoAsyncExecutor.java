@@ -13,18 +13,27 @@
 
 package org.pentaho.reporting.platform.plugin.async;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-import java.util.Collections;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.ObjectUtils;
@@ -32,20 +41,31 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.ILogoutListener;
 import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.platform.engine.core.system.StandaloneSession;
 import org.pentaho.platform.engine.security.SecurityHelper;
 import org.pentaho.platform.util.StringUtil;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
 import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
 import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+import org.pentaho.reporting.engine.classic.core.modules.output.table.html.HtmlTableModule;
 import org.pentaho.reporting.libraries.base.util.ArgumentNullException;
 import org.pentaho.reporting.libraries.base.util.StringUtils;
+import org.pentaho.reporting.platform.plugin.AuditWrapper;
+import org.pentaho.reporting.platform.plugin.DaemonThreadFactory;
+import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
 import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
 
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   implements ILogoutListener, IPentahoAsyncExecutor<TReportState> {
@@ -53,34 +73,84 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   public static final String BEAN_NAME = "IPentahoAsyncExecutor";
 
   private static final Log log = LogFactory.getLog( PentahoAsyncExecutor.class );
+  private static final int COMPLETED_RESULTS_SIZE = 100;
+  private static final long DEFAULT_COMPLETED_RESULT_MAX_AGE = TimeUnit.MINUTES.toMillis( 5 );
 
   private Map<CompositeKey, ListenableFuture<IFixedSizeStreamingContent>> futures = new ConcurrentHashMap<>();
   private Map<CompositeKey, IAsyncReportExecution<TReportState>> tasks = new ConcurrentHashMap<>();
+  // scheduled jobs of ended sessions until their content is written; nobody polls them, but they still stage
+  private final Map<CompositeKey, IAsyncReportExecution<TReportState>> detachedTasks = new ConcurrentHashMap<>();
 
   private ListeningExecutorService executorService;
+  private final AsyncThreadPoolExecutor pool;
+  private volatile AdaptivePoolSizer poolSizer;
+  private final AsyncExecutorMetrics metrics;
+  private volatile SharedSpool spool;
+  private ScheduledExecutorService spoolPoller;
+  // jobs offered by this node to the spool until they are cleaned; they never run here and are not among the tasks
+  private final Map<CompositeKey, SpoolOffer> offers = new ConcurrentHashMap<>();
+  // spooled jobs this node executes, by job id
+  private final Map<String, Future<IFixedSizeStreamingContent>> spoolRuns = new ConcurrentHashMap<>();
 
   private final int autoSchedulerThreshold;
+  private final long autoSchedulerMillisThreshold;
+  private final ExecutionHistory history;
+  private volatile AsyncJobWatchdog watchdog;
+  private volatile StagingSpaceManager stagingSpaceManager;
+  private volatile AsyncAdmissionController admissionController;
+  private volatile CompletedResultIndex completedResults =
+    new CompletedResultIndex( COMPLETED_RESULTS_SIZE, DEFAULT_COMPLETED_RESULT_MAX_AGE );
   private final MemorizeSchedulingLocationListener schedulingLocationListener;
   private Map<CompositeKey, ISchedulingListener> writeToJcrListeners;
 
+  private final AsyncJobJournal journal;
+  // jobs restored from the journal belong to a session that no longer exists, they are matched by user name
+  private final Map<UUID, RecoveredKey> recoveredKeys = new ConcurrentHashMap<>();
+
   /**
    * @param capacity               thread pool capacity
    * @param autoSchedulerThreshold quantity of rows after which reports are automatically scheduled
    */
   public PentahoAsyncExecutor( final int capacity, final int autoSchedulerThreshold ) {
+    this( capacity, autoSchedulerThreshold, null );
+  }
+
+  /**
+   * @param capacity               thread pool capacity
+   * @param autoSchedulerThreshold quantity of rows after which reports are automatically scheduled
+   * @param journal                durable job journal used to recover jobs after restart, can be null
+   */
+  public PentahoAsyncExecutor( final int capacity, final int autoSchedulerThreshold, final AsyncJobJournal journal ) {
+    this( capacity, autoSchedulerThreshold, journal, new ExecutionHistory(), 0 );
+  }
+
+  /**
+   * @param capacity                     thread pool capacity
+   * @param autoSchedulerThreshold       quantity of rows after which reports are automatically scheduled
+   * @param journal                      durable job journal used to recover jobs after restart, can be null
+   * @param history                      runtimes of past jobs used to predict job duration
+   * @param autoSchedulerMillisThreshold predicted duration (ms) after which reports are automatically scheduled,
+   *                                     0 - don't use predictions
+   */
+  public PentahoAsyncExecutor( final int capacity, final int autoSchedulerThreshold, final AsyncJobJournal journal,
+                               final ExecutionHistory history, final long autoSchedulerMillisThreshold ) {
+    ArgumentNullException.validate( "history", history );
     this.autoSchedulerThreshold = autoSchedulerThreshold;
+    this.journal = journal;
+    this.history = history;
+    this.autoSchedulerMillisThreshold = autoSchedulerMillisThreshold;
     log.info( "Initialized reporting async execution fixed thread pool with capacity: " + capacity );
-    executorService =
-      new DelegatedListenableExecutor( new ThreadPoolExecutor( capacity, capacity, 0L, TimeUnit.MILLISECONDS,
-        new LinkedBlockingQueue<>(), new ThreadFactory() {
-          @Override
-          public Thread newThread( Runnable r ) {
-            Thread thread = Executors.defaultThreadFactory().newThread( r );
-            thread.setDaemon( true );
-            thread.setName( "PentahoAsyncExecutor Thread Pool" );
-            return thread;
-          }
-        } ) );
+    pool = new AsyncThreadPoolExecutor( capacity, new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable r ) {
+        Thread thread = Executors.defaultThreadFactory().newThread( r );
+        thread.setDaemon( true );
+        thread.setName( "PentahoAsyncExecutor Thread Pool" );
+        return thread;
+      }
+    } );
+    executorService = new DelegatedListenableExecutor( pool );
+    metrics = new AsyncExecutorMetrics( pool, this::getStagedBytesInFlight );
     PentahoSystem.addLogoutListener( this );
     this.writeToJcrListeners = new ConcurrentHashMap<>();
     this.schedulingLocationListener = new MemorizeSchedulingLocationListener();
@@ -101,11 +171,14 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
 
     private String sessionId;
     private String uuid;
+    // owner of the job, not part of the identity
+    private String user;
 
     // default visibility for testing purpose
     CompositeKey( final IPentahoSession session, final UUID id ) {
       this.uuid = id.toString();
       this.sessionId = session.getId();
+      this.user = session.getName();
     }
 
     public boolean isSameSession( final String sessionId ) {
@@ -116,6 +189,14 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
       return sessionId;
     }
 
+    private String getUuid() {
+      return uuid;
+    }
+
+    private String getUser() {
+      return user;
+    }
+
     @Override public boolean equals( final Object o ) {
       if ( this == o ) {
         return true;
@@ -132,6 +213,32 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     }
   }
 
+  private static final class RecoveredKey {
+    private final String user;
+    private final CompositeKey key;
+
+    private RecoveredKey( final String user, final CompositeKey key ) {
+      this.user = user;
+      this.key = key;
+    }
+  }
+
+  /**
+   * Resolves the key of a job for the given session. Jobs recovered from the journal are owned by the user, not by the
+   * session that submitted them before restart.
+   */
+  protected CompositeKey getKey( final IPentahoSession session, final UUID id ) {
+    final CompositeKey key = new CompositeKey( session, id );
+    if ( recoveredKeys.isEmpty() || tasks.containsKey( key ) ) {
+      return key;
+    }
+    final RecoveredKey recoveredKey = recoveredKeys.get( id );
+    if ( recoveredKey != null && StringUtils.equals( recoveredKey.user, session.getName() ) ) {
+      return recoveredKey.key;
+    }
+    return key;
+  }
+
   @Override public UUID addTask( final IAsyncReportExecution<TReportState> task, final IPentahoSession session ) {
     return addTask( task, session, UUID.randomUUID() );
   }
@@ -140,31 +247,436 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   public UUID addTask( final IAsyncReportExecution<TReportState> task, final IPentahoSession session, final UUID id ) {
     final CompositeKey key = new CompositeKey( session, id );
 
-    task.notifyTaskQueued( id,
-      Collections.singletonList( new AutoScheduleListener( id, session, autoSchedulerThreshold, this ) ) );
+    final SharedSpool sharedSpool = spool;
+    if ( sharedSpool != null && task instanceof PentahoAsyncReportExecution && getIdleThreads() <= 0
+      && !AsyncJobJournal.hasSensitiveInputs( task.getInputs() ) && offer( sharedSpool, task, session, id ) ) {
+      return id;
+    }
 
     log.debug( "register async execution for task: " + task.toString() );
 
-    final ListenableFuture<IFixedSizeStreamingContent> result = executorService.submit( task );
+    final ListenableFuture<IFixedSizeStreamingContent> result = submitTracked( task, session.getName(), id,
+      new AutoScheduleListener( id, session, autoSchedulerThreshold, this, history, autoSchedulerMillisThreshold,
+        task.getReportPath(), task.getMimeType() ) );
     futures.put( key, result );
     tasks.put( key, task );
+
+    final CompletedResultIndex index = completedResults;
+    if ( index != null ) {
+      final String resultKey = getResultKey( task, session );
+      if ( resultKey != null ) {
+        Futures.addCallback( result, new FutureCallback<IFixedSizeStreamingContent>() {
+          @Override public void onSuccess( final IFixedSizeStreamingContent content ) {
+            indexResult( index, resultKey, id, task, content );
+          }
+
+          @Override public void onFailure( final Throwable t ) {
+            // nothing to reuse
+          }
+        }, MoreExecutors.directExecutor() );
+      }
+    }
+
+    if ( journal != null ) {
+      journal.submitted( id, session, task );
+      Futures.addCallback( result, new JournalStatusHandler( id, task ), MoreExecutors.directExecutor() );
+    }
     return id;
   }
 
+  /**
+   * Queues a task with the tracking every job executed here gets, wherever it was submitted: execution history,
+   * watchdog limits, metrics and memory admission.
+   *
+   * @param user      name of the job owner
+   * @param listeners listeners of the caller, notified before the tracking ones
+   * @return future of the task
+   */
+  private ListenableFuture<IFixedSizeStreamingContent> submitTracked( final IAsyncReportExecution<TReportState> task,
+                                                                      final String user, final UUID id,
+                                                                      final ReportProgressListener... listeners ) {
+    final List<ReportProgressListener> all = new ArrayList<>( Arrays.asList( listeners ) );
+    all.add( new ExecutionHistoryListener( history, task.getReportPath(), task.getMimeType() ) );
+    final AsyncJobWatchdog jobWatchdog = watchdog;
+    if ( jobWatchdog != null ) {
+      all.add( jobWatchdog.watch( task ) );
+    }
+    final AsyncExecutorMetrics.JobMetrics jobMetrics = metrics.submitted( user, task.getMimeType() );
+    all.add( jobMetrics );
+    Callable<IFixedSizeStreamingContent> callable = task;
+    final AsyncAdmissionController controller = admissionController;
+    if ( controller != null ) {
+      final AsyncAdmissionController.Admission admission = controller.admit( task );
+      all.add( admission );
+      callable = admission;
+    }
+    task.notifyTaskQueued( id, all );
+
+    final ListenableFuture<IFixedSizeStreamingContent> result = executorService.submit( callable );
+    result.addListener( () -> jobMetrics.done( task.getState(), result.isCancelled() ),
+      MoreExecutors.directExecutor() );
+    if ( jobWatchdog != null ) {
+      result.addListener( () -> jobWatchdog.unwatch( task ), MoreExecutors.directExecutor() );
+    }
+    return result;
+  }
+
+  /**
+   * @param watchdog enforces time, staged bytes and row limits on running jobs, null to run jobs unbounded
+   */
+  public void setWatchdog( final AsyncJobWatchdog watchdog ) {
+    this.watchdog = watchdog;
+  }
+
+  /**
+   * @param stagingSpaceManager enforces staging quotas on the jobs of this executor and sweeps orphaned staging files,
+   *                            null to leave staging space unbounded
+   */
+  public void setStagingSpaceManager( final StagingSpaceManager stagingSpaceManager ) {
+    this.stagingSpaceManager = stagingSpaceManager;
+    if ( stagingSpaceManager != null ) {
+      stagingSpaceManager.start( this::getStagingOwners );
+    }
+  }
+
+  /**
+   * @return current jobs, including scheduled ones that outlived their session, mapped to the name of their owner
+   */
+  Map<IAsyncReportExecution<?>, String> getStagingOwners() {
+    final Map<IAsyncReportExecution<?>, String> result = new IdentityHashMap<>();
+    for ( final Map.Entry<CompositeKey, IAsyncReportExecution<TReportState>> entry : tasks.entrySet() ) {
+      result.put( entry.getValue(), entry.getKey().getUser() );
+    }
+    for ( final Map.Entry<CompositeKey, IAsyncReportExecution<TReportState>> entry : detachedTasks.entrySet() ) {
+      result.put( entry.getValue(), entry.getKey().getUser() );
+    }
+    return result;
+  }
+
+  /**
+   * @param admissionController holds jobs back until their estimated memory footprint fits into the heap budget,
+   *                            null to admit jobs by thread count only
+   */
+  public void setAdmissionController( final AsyncAdmissionController admissionController ) {
+    this.admissionController = admissionController;
+  }
+
+  public AsyncAdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
+  private int getAdmissionWaiting() {
+    final AsyncAdmissionController controller = admissionController;
+    return controller == null ? 0 : controller.getWaiting();
+  }
+
+  /**
+   * @param spool directory shared with other nodes; jobs submitted while all threads are busy are offered there and
+   *              jobs offered by any node are executed when threads are idle, as the user named in the offer. Anyone
+   *              able to write to the directory can run reports as any user, it must be trusted as much as the server.
+   *              Jobs with inputs that look like credentials are always executed locally, the offer would leave them
+   *              out. Null to execute everything locally
+   */
+  public synchronized void setSharedSpool( final SharedSpool spool ) {
+    if ( spoolPoller != null ) {
+      spoolPoller.shutdownNow();
+      spoolPoller = null;
+    }
+    this.spool = spool;
+    if ( spool != null ) {
+      spoolPoller = Executors.newSingleThreadScheduledExecutor(
+        new DaemonThreadFactory( "PentahoAsyncExecutor Spool " + spool.getNodeId() ) );
+      spoolPoller.scheduleWithFixedDelay( () -> {
+        try {
+          pollSpool();
+        } catch ( final Exception e ) {
+          log.error( "Shared spool poll failed", e );
+        }
+      }, spool.getPollMillis(), spool.getPollMillis(), TimeUnit.MILLISECONDS );
+    }
+  }
+
+  private int getIdleThreads() {
+    return pool.getCorePoolSize() - pool.getActiveCount() - pool.getQueue().size();
+  }
+
+  /**
+   * Offers a job to the spool instead of queuing it here. The submitted task is discarded, whichever node claims the
+   * job re-creates it from its descriptor.
+   *
+   * @return false if the job could not be spooled and has to run here
+   */
+  private boolean offer( final SharedSpool sharedSpool, final IAsyncReportExecution<TReportState> task,
+                         final IPentahoSession session, final UUID id ) {
+    final AsyncJobJournal.JobRecord record = new AsyncJobJournal.JobRecord( id );
+    record.setSessionId( session.getId() );
+    record.setUser( session.getName() );
+    record.setPath( task.getReportPath() );
+    record.setMimeType( task.getMimeType() );
+    record.setStatus( AsyncExecutionStatus.QUEUED.name() );
+    record.setInputs( AsyncJobJournal.toJournalInputs( task.getInputs() ) );
+    try {
+      sharedSpool.offer( record );
+    } catch ( final IOException e ) {
+      log.warn( "Unable to offer job to the shared spool, executing it locally", e );
+      return false;
+    }
+    task.discard();
+
+    final SpooledReportExecution standIn = new SpooledReportExecution( id, record.getPath(), record.getMimeType() );
+    final SettableFuture<IFixedSizeStreamingContent> result = SettableFuture.create();
+    final AsyncExecutorMetrics.JobMetrics jobMetrics = metrics.submitted( session.getName(), record.getMimeType() );
+    final CompositeKey key = new CompositeKey( session, id );
+    result.addListener( () -> {
+      if ( result.isCancelled() ) {
+        standIn.canceled();
+        offers.remove( key );
+        sharedSpool.remove( id.toString() );
+      }
+      jobMetrics.done( standIn.getState(), result.isCancelled() );
+    }, MoreExecutors.directExecutor() );
+
+    offers.put( key, new SpoolOffer( standIn, result ) );
+    futures.put( key, result );
+    log.debug( "Offered async execution to the shared spool: " + task.getReportPath() );
+    return true;
+  }
+
+  /**
+   * Collects results of offered jobs, keeps the leases of jobs running here alive and claims offered jobs while
+   * threads are idle.
+   */
+  void pollSpool() throws IOException {
+    final SharedSpool sharedSpool = spool;
+    if ( sharedSpool == null ) {
+      return;
+    }
+    for ( final Map.Entry<CompositeKey, SpoolOffer> entry : offers.entrySet() ) {
+      final SpoolOffer offer = entry.getValue();
+      if ( offer.future.isDone() ) {
+        continue;
+      }
+      final String id = entry.getKey().getUuid();
+      final SharedSpool.Result result = sharedSpool.getResult( id );
+      if ( result == null ) {
+        continue;
+      }
+      if ( result.isFinished() ) {
+        final Path content = sharedSpool.getResultContent( id );
+        offer.task.finished( content );
+        offer.future.set( result.getContent( content ) );
+      } else {
+        offer.task.failed( result.getErrorMessage() );
+        offer.future.set( AbstractAsyncReportExecution.NULL );
+      }
+      sharedSpool.acknowledge( id );
+    }
+
+    for ( final Map.Entry<String, Future<IFixedSizeStreamingContent>> entry : spoolRuns.entrySet() ) {
+      if ( !sharedSpool.renew( entry.getKey() ) ) {
+        log.debug( "Spooled job was withdrawn, canceling: " + entry.getKey() );
+        spoolRuns.remove( entry.getKey() );
+        entry.getValue().cancel( true );
+      }
+    }
+
+    for ( int idle = getIdleThreads(); idle > 0; idle-- ) {
+      final AsyncJobJournal.JobRecord record = sharedSpool.claimNext();
+      if ( record == null ) {
+        break;
+      }
+      runSpooled( sharedSpool, record );
+    }
+  }
+
+  private void runSpooled( final SharedSpool sharedSpool, final AsyncJobJournal.JobRecord record ) throws IOException {
+    final String id = record.getId();
+    final IPentahoSession session = new StandaloneSession( record.getUser() );
+    try {
+      final IAsyncReportExecution<TReportState> task = SecurityHelper.getInstance().runAsUser( record.getUser(),
+        () -> createRecoveredTask( record, session ) );
+      final ListenableFuture<IFixedSizeStreamingContent> future =
+        submitTracked( task, record.getUser(), UUID.fromString( id ) );
+      spoolRuns.put( id, future );
+      Futures.addCallback( future, new SpoolResultHandler( sharedSpool, id, task, session ),
+        MoreExecutors.directExecutor() );
+      log.debug( "Executing spooled job: " + record.getPath() );
+    } catch ( final Exception e ) {
+      log.error( "Can't execute spooled job: " + record.getPath(), e );
+      sharedSpool.fail( id, e.getMessage() );
+    }
+  }
+
+  public AsyncExecutorMetricsMXBean getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @param jmxEnabled register executor metrics in the platform MBean server as {@link
+   *                   AsyncExecutorMetrics#OBJECT_NAME}
+   */
+  public void setJmxEnabled( final boolean jmxEnabled ) {
+    if ( jmxEnabled ) {
+      metrics.register();
+    } else {
+      metrics.unregister();
+    }
+  }
+
+  /**
+   * @return bytes staged so far by jobs that are not done yet
+   */
+  long getStagedBytesInFlight() {
+    long result = 0;
+    for ( final Map.Entry<CompositeKey, ListenableFuture<IFixedSizeStreamingContent>> entry : futures.entrySet() ) {
+      if ( entry.getValue().isDone() ) {
+        continue;
+      }
+      final IAsyncReportExecution<TReportState> task = tasks.get( entry.getKey() );
+      final Path stagingPath = task == null ? null : task.getStagingPath();
+      if ( stagingPath != null ) {
+        final File stagingFile = stagingPath.toFile();
+        // length is 0 for a file that is gone already
+        result += stagingFile.length();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param poolSizer grows and shrinks the thread pool with the load, null to keep the pool at its capacity
+   */
+  public void setPoolSizer( final AdaptivePoolSizer poolSizer ) {
+    final AdaptivePoolSizer old = this.poolSizer;
+    if ( old != null ) {
+      old.shutdown();
+    }
+    this.poolSizer = poolSizer;
+    if ( poolSizer != null ) {
+      poolSizer.start( pool, this::getAdmissionWaiting );
+    }
+  }
+
+  /**
+   * @param maxAgeMillis time a finished result can be reused by a recalculation with unchanged inputs, 0 - always
+   *                     execute the report again
+   */
+  public void setCompletedResultMaxAge( final long maxAgeMillis ) {
+    this.completedResults = maxAgeMillis > 0 ? new CompletedResultIndex( COMPLETED_RESULTS_SIZE, maxAgeMillis ) : null;
+  }
+
+  private String getResultKey( final IAsyncReportExecution<?> task, final IPentahoSession session ) {
+    final String path = task.getReportPath();
+    return path == null ? null : CompletedResultIndex.getKey( session.getName(), path, getReportVersion( path ),
+      task.getMimeType(), task.getInputs() );
+  }
+
+  /**
+   * Version of the report definition a result was generated from, so results of a changed report are not reused.
+   *
+   * @return version or null if unknown
+   */
+  protected String getReportVersion( final String path ) {
+    try {
+      final IUnifiedRepository repository = PentahoSystem.get( IUnifiedRepository.class );
+      final RepositoryFile file = repository == null ? null : repository.getFile( path );
+      if ( file == null ) {
+        return null;
+      }
+      final Date lastModified = file.getLastModifiedDate();
+      return file.getVersionId() + "@" + ( lastModified == null ? "" : lastModified.getTime() );
+    } catch ( final RuntimeException e ) {
+      log.debug( "Unable to resolve report version: " + path, e );
+      return null;
+    }
+  }
+
+  private void indexResult( final CompletedResultIndex index, final String resultKey, final UUID id,
+                            final IAsyncReportExecution<?> task, final IFixedSizeStreamingContent content ) {
+    final Path stagingPath = task.getStagingPath();
+    if ( stagingPath != null && stagingPath.toFile().isFile() ) {
+      final boolean compressed = StagingCompression.isCompressed( content );
+      index.put( resultKey, id, task.getState(), stagingPath, compressed,
+        compressed ? content.getContentSize() : -1 );
+    }
+  }
+
+  /**
+   * Answers a recalculation with a copy of another finished result with the same canonical key.
+   *
+   * @return id of the copy or null if there is nothing to reuse
+   */
+  @SuppressWarnings( "unchecked" )
+  private UUID reuseCompletedResult( final UUID runningId, final IAsyncReportExecution<?> runningTask,
+                                     final IPentahoSession session ) {
+    final CompletedResultIndex index = completedResults;
+    final String resultKey = index == null ? null : getResultKey( runningTask, session );
+    final CompletedResultIndex.Entry entry = resultKey == null ? null : index.find( resultKey, runningId );
+    if ( entry == null ) {
+      return null;
+    }
+    try {
+      final UUID id = UUID.randomUUID();
+      final AsyncJobFileStagingHandler handler = createStagingHandler( session );
+      handler.stageCopyOf( entry.getStagingPath() );
+      final ReusedReportExecution task = new ReusedReportExecution( id, entry.getState(), handler.getStagingPath(),
+        entry.isCompressed(), entry.getUncompressedSize() );
+      final CompositeKey key = new CompositeKey( session, id );
+      futures.put( key, Futures.immediateFuture( task.call() ) );
+      tasks.put( key, (IAsyncReportExecution<TReportState>) (IAsyncReportExecution) task );
+      if ( journal != null ) {
+        journal.submitted( id, session, task );
+        journal.statusChanged( id, AsyncExecutionStatus.FINISHED );
+      }
+      log.debug( "Recalculation of " + runningTask.getReportPath() + " answered with a finished result" );
+      return id;
+    } catch ( final IOException e ) {
+      log.debug( "Unable to reuse finished result, executing the report again", e );
+      return null;
+    }
+  }
+
+  @Override public long predictDuration( final IAsyncReportState state ) {
+    if ( state == null ) {
+      return -1;
+    }
+    return history.predict( state.getPath(), state.getMimeType(), state.getTotalRows() );
+  }
+
   @Override public Future<IFixedSizeStreamingContent> getFuture( final UUID id, final IPentahoSession session ) {
     validateParams( id, session );
-    return futures.get( new CompositeKey( session, id ) );
+    return futures.get( getKey( session, id ) );
   }
 
   @Override public void cleanFuture( final UUID id, final IPentahoSession session ) {
-    final CompositeKey key = new CompositeKey( session, id );
+    final CompositeKey key = getKey( session, id );
     futures.remove( key );
-    tasks.remove( key );
+    final IAsyncReportExecution<TReportState> task = tasks.remove( key );
+    withdrawOffer( key );
+    if ( recoveredKeys.remove( id ) != null && task instanceof RecoveredReportExecution ) {
+      final File stagingFile = task.getStagingPath().toFile();
+      if ( !stagingFile.delete() ) {
+        log.debug( "Unable to delete recovered staging file: " + stagingFile );
+      }
+    }
+    if ( journal != null ) {
+      journal.removed( id );
+    }
+  }
+
+  /**
+   * Drops a job offered to the spool, along with its result if there is one already.
+   */
+  private void withdrawOffer( final CompositeKey key ) {
+    final SharedSpool sharedSpool = spool;
+    if ( offers.remove( key ) != null && sharedSpool != null ) {
+      sharedSpool.remove( key.getUuid() );
+    }
   }
 
   @Override public void requestPage( final UUID id, final IPentahoSession session, final int page ) {
     validateParams( id, session );
-    final IAsyncReportExecution<TReportState> runningTask = tasks.get( new CompositeKey( session, id ) );
+    final IAsyncReportExecution<TReportState> runningTask = tasks.get( getKey( session, id ) );
     if ( runningTask != null ) {
       runningTask.requestPage( page );
     }
@@ -172,7 +684,7 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
 
   @Override public boolean preSchedule( final UUID uuid, final IPentahoSession session ) {
     validateParams( uuid, session );
-    final CompositeKey compositeKey = new CompositeKey( session, uuid );
+    final CompositeKey compositeKey = getKey( session, uuid );
     final IAsyncReportExecution<? extends TReportState> runningTask = tasks.get( compositeKey );
     if ( runningTask != null ) {
       return runningTask.preSchedule();
@@ -180,20 +692,37 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     return false;
   }
 
+  @Override public boolean isJournaled() {
+    return journal != null;
+  }
+
+  private AsyncJobFileStagingHandler createStagingHandler( final IPentahoSession session ) throws IOException {
+    return new AsyncJobFileStagingHandler( session, isJournaled() );
+  }
+
   @SuppressWarnings( "unchecked" )
   @Override public UUID recalculate( final UUID uuid, final IPentahoSession session ) {
     validateParams( uuid, session );
-    final CompositeKey compositeKey = new CompositeKey( session, uuid );
+    final CompositeKey compositeKey = getKey( session, uuid );
     final IAsyncReportExecution<? extends TReportState> runningTask = tasks.get( compositeKey );
 
     if ( runningTask == null ) {
+      if ( offers.containsKey( compositeKey ) ) {
+        // executed by whichever node claims it
+        return null;
+      }
       throw new IllegalStateException( "We must have a task at this point." );
     }
 
+    final UUID reused = reuseCompletedResult( uuid, runningTask, session );
+    if ( reused != null ) {
+      return reused;
+    }
+
     try {
       final IAsyncReportExecution<TReportState> recalcTask =
         (IAsyncReportExecution<TReportState>) new PentahoAsyncReportExecution( (PentahoAsyncReportExecution) runningTask,
-          new AsyncJobFileStagingHandler( session ) );
+          createStagingHandler( session ) );
 
       return addTask( recalcTask, session );
 
@@ -208,10 +737,14 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   @Override
   public boolean schedule( final UUID id, final IPentahoSession session ) {
     validateParams( id, session );
-    final CompositeKey compositeKey = new CompositeKey( session, id );
+    final CompositeKey compositeKey = getKey( session, id );
     final IAsyncReportExecution<TReportState> runningTask = tasks.get( compositeKey );
     final ListenableFuture<IFixedSizeStreamingContent> future = futures.get( compositeKey );
 
+    if ( runningTask == null && offers.containsKey( compositeKey ) ) {
+      // output of a spooled job is not written by this node
+      return false;
+    }
     if ( runningTask == null || future == null ) {
       // As long as we have a task, we should have a future-object, but checking both does not hurt.
       throw new IllegalStateException( "We must have a task and a future at this point." );
@@ -222,6 +755,9 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
 
     if ( !StringUtils.isEmpty( userId ) ) {
       if ( runningTask.schedule() ) {
+        if ( journal != null ) {
+          journal.scheduled( id );
+        }
         Futures.addCallback( future,
           new TriggerScheduledContentWritingHandler( userId, sessionId, runningTask, compositeKey ), executorService );
         return true;
@@ -234,7 +770,7 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   public void updateSchedulingLocation( final UUID id, final IPentahoSession session, final Serializable folderId,
                                         final String newName ) {
     validateParams( id, session );
-    final CompositeKey key = new CompositeKey( session, id );
+    final CompositeKey key = getKey( session, id );
 
     final IAsyncReportExecution<TReportState> runningTask = tasks.get( key );
 
@@ -269,11 +805,38 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     return new UpdateSchedulingLocationListener( folderId, newName );
   }
 
+  @Override public Path getStagingPath( final UUID id, final IPentahoSession session ) {
+    validateParams( id, session );
+    final CompositeKey key = getKey( session, id );
+    final IAsyncReportExecution<TReportState> runningTask = tasks.get( key );
+    if ( runningTask != null ) {
+      return runningTask.getStagingPath();
+    }
+    final SpoolOffer offer = offers.get( key );
+    return offer == null ? null : offer.task.getStagingPath();
+  }
+
+  @Override public InputStream openStagingStream( final UUID id, final IPentahoSession session ) throws IOException {
+    validateParams( id, session );
+    final IAsyncReportExecution<TReportState> runningTask = tasks.get( getKey( session, id ) );
+    if ( runningTask != null ) {
+      return runningTask.openStagingStream();
+    }
+    final Path stagingPath = getStagingPath( id, session );
+    return stagingPath == null ? null : Files.newInputStream( stagingPath );
+  }
+
+  @SuppressWarnings( "unchecked" )
   @Override public TReportState getReportState( final UUID id, final IPentahoSession session ) {
     validateParams( id, session );
     // link to running task
-    final IAsyncReportExecution<TReportState> runningTask = tasks.get( new CompositeKey( session, id ) );
-    return runningTask == null ? null : runningTask.getState();
+    final CompositeKey key = getKey( session, id );
+    final IAsyncReportExecution<TReportState> runningTask = tasks.get( key );
+    if ( runningTask != null ) {
+      return runningTask.getState();
+    }
+    final SpoolOffer offer = offers.get( key );
+    return offer == null ? null : (TReportState) offer.task.getState();
   }
 
   protected void validateParams( final UUID id, final IPentahoSession session ) {
@@ -298,8 +861,8 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
         if ( task != null && task.getState() != null && AsyncExecutionStatus.SCHEDULED
           .equals( task.getState().getStatus() ) ) {
           //After the session end nobody can poll status, we can remove task
-          //Keep future to have content in place
-          tasks.remove( entry.getKey() );
+          //Keep future to have content in place and the task to keep its staging file from the sweeper
+          detachedTasks.put( entry.getKey(), tasks.remove( entry.getKey() ) );
           continue;
         }
 
@@ -309,6 +872,10 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
         // remove all links to release GC
         futures.remove( entry.getKey() );
         tasks.remove( entry.getKey() );
+        withdrawOffer( entry.getKey() );
+        if ( journal != null ) {
+          journal.removed( UUID.fromString( entry.getKey().getUuid() ) );
+        }
       }
     }
 
@@ -327,6 +894,18 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
 
   @Override
   public void shutdown() {
+    synchronized ( this ) {
+      if ( spoolPoller != null ) {
+        // jobs running here for other nodes are claimed again once their leases expire
+        spoolPoller.shutdownNow();
+        spoolPoller = null;
+      }
+    }
+    spoolRuns.clear();
+    if ( journal != null ) {
+      // running jobs stay in their last journaled state and will be recovered on the next startup
+      journal.close();
+    }
     // attempt to stop all
     for ( final Future<IFixedSizeStreamingContent> entry : futures.values() ) {
       entry.cancel( true );
@@ -334,7 +913,14 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     // forget all
     this.futures.clear();
     this.tasks.clear();
+    this.detachedTasks.clear();
     this.writeToJcrListeners.clear();
+    this.recoveredKeys.clear();
+    this.offers.clear();
+    final CompletedResultIndex index = completedResults;
+    if ( index != null ) {
+      index.clear();
+    }
     this.executorService.shutdown();
     try {
       this.schedulingLocationListener.lock();
@@ -343,7 +929,122 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
       this.schedulingLocationListener.unlock();
     }
 
-    AsyncJobFileStagingHandler.cleanStagingDir();
+    if ( journal == null ) {
+      AsyncJobFileStagingHandler.cleanStagingDir();
+    }
+    history.save();
+    if ( poolSizer != null ) {
+      poolSizer.shutdown();
+    }
+    metrics.unregister();
+    if ( watchdog != null ) {
+      watchdog.shutdown();
+    }
+    if ( stagingSpaceManager != null ) {
+      stagingSpaceManager.shutdown();
+    }
+  }
+
+  /**
+   * Replays the job journal: finished jobs with staged content available are re-attached, interrupted jobs are
+   * re-queued or dropped according to the journal recovery policy. Should be called once on startup.
+   */
+  @Override
+  public void recover() {
+    if ( journal == null ) {
+      return;
+    }
+    final Map<UUID, AsyncJobJournal.JobRecord> records = journal.replay();
+    final List<AsyncJobJournal.JobRecord> live = new ArrayList<>();
+    final List<AsyncJobJournal.JobRecord> interrupted = new ArrayList<>();
+    for ( final Map.Entry<UUID, AsyncJobJournal.JobRecord> entry : records.entrySet() ) {
+      final AsyncJobJournal.JobRecord record = entry.getValue();
+      if ( record.isFinal() || journal.isExpired( record ) || StringUtil.isEmpty( record.getUser() ) ) {
+        discard( record );
+      } else if ( record.isFinished() && !Boolean.TRUE.equals( record.getScheduled() ) && hasStagedContent( record ) ) {
+        reattach( entry.getKey(), record );
+        live.add( record );
+      } else if ( AsyncJobJournal.RecoveryPolicy.RESUBMIT.equals( journal.getRecoveryPolicy() )
+        && !Boolean.TRUE.equals( record.getRedacted() ) ) {
+        discard( record );
+        interrupted.add( record );
+      } else {
+        discard( record );
+      }
+    }
+    journal.compact( live );
+    log.info( "Async job journal replayed, re-attached jobs: " + live.size() + ", resubmitted jobs: "
+      + interrupted.size() );
+
+    for ( final AsyncJobJournal.JobRecord record : interrupted ) {
+      resubmit( record );
+    }
+  }
+
+  private boolean hasStagedContent( final AsyncJobJournal.JobRecord record ) {
+    return record.getStagingPath() != null && new File( record.getStagingPath() ).isFile();
+  }
+
+  private void discard( final AsyncJobJournal.JobRecord record ) {
+    if ( record.getStagingPath() != null ) {
+      final File stagingFile = new File( record.getStagingPath() );
+      if ( stagingFile.exists() && !stagingFile.delete() ) {
+        log.debug( "Unable to delete staging file of discarded job: " + stagingFile );
+      }
+    }
+    if ( record.getSessionId() != null ) {
+      AsyncJobFileStagingHandler.cleanSession( record.getSessionId() );
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private void reattach( final UUID id, final AsyncJobJournal.JobRecord record ) {
+    final IPentahoSession session = new StandaloneSession( record.getUser(), record.getSessionId() );
+    final CompositeKey key = new CompositeKey( session, id );
+    final RecoveredReportExecution task = new RecoveredReportExecution( id, record );
+    futures.put( key, Futures.immediateFuture( task.call() ) );
+    tasks.put( key, (IAsyncReportExecution<TReportState>) (IAsyncReportExecution) task );
+    recoveredKeys.put( id, new RecoveredKey( record.getUser(), key ) );
+  }
+
+  private void resubmit( final AsyncJobJournal.JobRecord record ) {
+    final UUID id = UUID.fromString( record.getId() );
+    final IPentahoSession session = new StandaloneSession( record.getUser() );
+    try {
+      SecurityHelper.getInstance().runAsUser( record.getUser(), () -> {
+        addTask( createRecoveredTask( record, session ), session, id );
+        if ( Boolean.TRUE.equals( record.getScheduled() ) ) {
+          schedule( id, session );
+        }
+        return null;
+      } );
+      recoveredKeys.put( id, new RecoveredKey( record.getUser(), new CompositeKey( session, id ) ) );
+    } catch ( final Exception e ) {
+      log.error( "Can't resubmit interrupted job: " + record.getPath(), e );
+    }
+  }
+
+  /**
+   * Re-creates an execution for a job interrupted by restart, same way as it is created for a background job request.
+   */
+  @SuppressWarnings( "unchecked" )
+  protected IAsyncReportExecution<TReportState> createRecoveredTask( final AsyncJobJournal.JobRecord record,
+                                                                     final IPentahoSession session )
+    throws Exception {
+    final SimpleReportingComponent reportComponent = new SimpleReportingComponent();
+    reportComponent.setReportDefinitionPath( record.getPath() );
+    reportComponent.setPaginateOutput( true );
+    reportComponent.setForceDefaultOutputTarget( false );
+    reportComponent.setDefaultOutputTarget( HtmlTableModule.TABLE_HTML_PAGE_EXPORT_TYPE );
+    if ( record.getPath().endsWith( ".prpti" ) ) {
+      reportComponent.setForceUnlockPreferredOutput( true );
+    }
+    reportComponent.setInputs( AsyncJobJournal.fromJournalInputs( record.getInputs() ) );
+
+    final AsyncJobFileStagingHandler handler = createStagingHandler( session );
+    reportComponent.setOutputStream( handler.getStagingOutputStream() );
+    return (IAsyncReportExecution<TReportState>) new PentahoAsyncReportExecution( record.getPath(), reportComponent,
+      handler, session, record.getId(), new AuditWrapper() );
   }
 
   protected Callable<Serializable> getWriteToJcrTask( final IFixedSizeStreamingContent result,
@@ -352,6 +1053,89 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     return new WriteToJcrTask( runningTask, result.getStream() );
   }
 
+  private static final class SpoolOffer {
+    private final SpooledReportExecution task;
+    private final SettableFuture<IFixedSizeStreamingContent> future;
+
+    private SpoolOffer( final SpooledReportExecution task, final SettableFuture<IFixedSizeStreamingContent> future ) {
+      this.task = task;
+      this.future = future;
+    }
+  }
+
+  /**
+   * Publishes the outcome of a spooled job executed here to the spool.
+   */
+  private class SpoolResultHandler implements FutureCallback<IFixedSizeStreamingContent> {
+    private final SharedSpool sharedSpool;
+    private final String id;
+    private final IAsyncReportExecution<TReportState> task;
+    private final IPentahoSession session;
+
+    private SpoolResultHandler( final SharedSpool sharedSpool, final String id,
+                                final IAsyncReportExecution<TReportState> task, final IPentahoSession session ) {
+      this.sharedSpool = sharedSpool;
+      this.id = id;
+      this.task = task;
+      this.session = session;
+    }
+
+    @Override public void onSuccess( final IFixedSizeStreamingContent result ) {
+      spoolRuns.remove( id );
+      final IAsyncReportState state = task.getState();
+      final Path stagingPath = task.getStagingPath();
+      try {
+        if ( result != AbstractAsyncReportExecution.NULL && state != null
+          && AsyncExecutionStatus.FINISHED.equals( state.getStatus() ) && stagingPath != null ) {
+          final boolean compressed = StagingCompression.isCompressed( result );
+          sharedSpool.complete( id, stagingPath, compressed, compressed ? result.getContentSize() : -1 );
+        } else {
+          sharedSpool.fail( id, state == null ? null : state.getErrorMessage() );
+        }
+      } catch ( final IOException e ) {
+        log.error( "Unable to publish spooled job result: " + id, e );
+      }
+      AsyncJobFileStagingHandler.cleanSession( session );
+    }
+
+    @Override public void onFailure( final Throwable t ) {
+      spoolRuns.remove( id );
+      if ( !( t instanceof CancellationException ) ) {
+        try {
+          sharedSpool.fail( id, t.getMessage() );
+        } catch ( final IOException e ) {
+          log.error( "Unable to publish spooled job failure: " + id, e );
+        }
+      }
+      AsyncJobFileStagingHandler.cleanSession( session );
+    }
+  }
+
+  /**
+   * Journals the final state of a job.
+   */
+  private class JournalStatusHandler implements FutureCallback<IFixedSizeStreamingContent> {
+    private final UUID id;
+    private final IAsyncReportExecution<TReportState> task;
+
+    private JournalStatusHandler( final UUID id, final IAsyncReportExecution<TReportState> task ) {
+      this.id = id;
+      this.task = task;
+    }
+
+    @Override public void onSuccess( final IFixedSizeStreamingContent result ) {
+      final AsyncExecutionStatus status = task.getState().getStatus();
+      // scheduled jobs keep SCHEDULED status, content is there anyway
+      journal.finished( id, AsyncExecutionStatus.SCHEDULED.equals( status ) ? AsyncExecutionStatus.FINISHED
+        : status, result );
+    }
+
+    @Override public void onFailure( final Throwable t ) {
+      journal.statusChanged( id, t instanceof CancellationException ? AsyncExecutionStatus.CANCELED
+        : AsyncExecutionStatus.FAILED );
+    }
+  }
+
   /**
    * This class is responsible for writing the content first to a pre-computed location (as specified by the
    * ISchedulingDirectoryStrategy implementation, and then optionally moves the content to a location specified by the
@@ -375,9 +1159,11 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     protected IFixedSizeStreamingContent notifyListeners( final IFixedSizeStreamingContent result ) throws Exception {
       final Serializable writtenTo = getWriteToJcrTask( result, runningTask ).call();
       if ( writtenTo == null ) {
+        metrics.scheduledFailed();
         log.debug( "Unable to move scheduled content, due to error while creating content in default location." );
         return null;
       }
+      metrics.scheduledWritten();
       try {
         PentahoAsyncExecutor.this.schedulingLocationListener.lock();
         PentahoAsyncExecutor.this.schedulingLocationListener.recordOutputFile( compositeKey, writtenTo );
@@ -406,20 +1192,26 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
           SecurityHelper.getInstance().runAsUser( user, () -> notifyListeners( result ) );
         }
       } catch ( final Exception e ) {
+        metrics.scheduledFailed();
         log.error( "Can't execute callback. : ", e );
       } finally {
         //Time to remove future - nobody will ask for content at this moment
         //We need to keep task because status polling may still occur ( or it already has been removed on logout )
         //Also we can try to remove directory
         futures.remove( compositeKey );
+        detachedTasks.remove( compositeKey );
         result.cleanContent();
         AsyncJobFileStagingHandler.cleanSession( sessionId );
+        if ( journal != null ) {
+          journal.removed( UUID.fromString( compositeKey.getUuid() ) );
+        }
       }
     }
 
     @Override public void onFailure( final Throwable t ) {
       log.error( "Can't execute callback. Parent task failed: ", t );
       futures.remove( compositeKey );
+      detachedTasks.remove( compositeKey );
       AsyncJobFileStagingHandler.cleanSession( sessionId );
     }
   }
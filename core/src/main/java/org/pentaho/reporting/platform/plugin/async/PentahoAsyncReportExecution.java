@@ -33,8 +33,10 @@ import org.pentaho.reporting.libraries.resourceloader.ResourceException;
 import org.pentaho.reporting.platform.plugin.AuditWrapper;
 import org.pentaho.reporting.platform.plugin.ReportCreator;
 import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
+import org.pentaho.reporting.platform.plugin.connection.JobStatementRegistry;
 import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
 
 public class PentahoAsyncReportExecution extends AbstractAsyncReportExecution<IAsyncReportState> {
 
@@ -87,6 +89,8 @@ public class PentahoAsyncReportExecution extends AbstractAsyncReportExecution<IA
 
     return SecurityHelper.getInstance().runAsUser( safeSession.getName(), new Callable<IFixedSizeStreamingContent>() {
       @Override public IFixedSizeStreamingContent call() throws Exception {
+        setRunner( Thread.currentThread() );
+        JobStatementRegistry.bind( PentahoAsyncReportExecution.this );
         try {
           listener.setStatus( AsyncExecutionStatus.WORKING );
 
@@ -99,7 +103,11 @@ public class PentahoAsyncReportExecution extends AbstractAsyncReportExecution<IA
           getAudit().audit( safeSession.getId(), safeSession.getName(), url, getClass().getName(), getClass().getName(),
             MessageTypes.INSTANCE_START, auditId, "", 0, null );
 
-          if ( reportComponent.execute() ) {
+          if ( StagingCompression.isEnabledFor( getMimeType() ) ) {
+            handler.compress();
+          }
+
+          if ( reportComponent.execute() && getAbortReason() == null ) {
 
             final long end = System.currentTimeMillis();
 
@@ -125,7 +133,9 @@ public class PentahoAsyncReportExecution extends AbstractAsyncReportExecution<IA
           // We have to avoid to hang on working status.
           log.error( "fail to execute report in async mode: " + ee );
 
-          if ( ee.getMessage() != null ) {
+          if ( getAbortReason() != null ) {
+            listener.setErrorMessage( getAbortReason() );
+          } else if ( ee.getMessage() != null ) {
             String errorMessage = "";
             Throwable throwable = ee;
 
@@ -139,6 +149,12 @@ public class PentahoAsyncReportExecution extends AbstractAsyncReportExecution<IA
           fail();
           return NULL;
         } finally {
+          setRunner( null );
+          JobStatementRegistry.unbind();
+          if ( getAbortReason() != null ) {
+            // don't leave the pool thread interrupted
+            Thread.interrupted();
+          }
           // in case report processor not going to close it
           OutputStream out = handler.getStagingOutputStream();
           IOUtils.closeQuietly( out );
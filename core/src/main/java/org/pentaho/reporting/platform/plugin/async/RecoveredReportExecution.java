@@ -0,0 +1,80 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncReportState;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stands in for an execution that finished before restart and whose staged content was found by the job journal.
+ * Nothing is executed, the staged content is served as is.
+ */
+class RecoveredReportExecution implements IAsyncReportExecution<IAsyncReportState> {
+
+  private final IAsyncReportState state;
+  private final File stagingFile;
+  private final AsyncJobJournal.JobRecord record;
+
+  RecoveredReportExecution( final UUID id, final AsyncJobJournal.JobRecord record ) {
+    this.record = record;
+    this.stagingFile = new File( record.getStagingPath() );
+    this.state = new AsyncReportState( id, record.getPath(), AsyncExecutionStatus.FINISHED, 0, 0, 0, 0, 0, 0, "",
+      record.getMimeType(), "", false );
+  }
+
+  @Override public IFixedSizeStreamingContent call() {
+    return record.getStagingContent();
+  }
+
+  @Override
+  public void notifyTaskQueued( final UUID id, final List<? extends ReportProgressListener> callbackListeners ) {
+    // already finished
+  }
+
+  @Override public IAsyncReportState getState() {
+    return state;
+  }
+
+  @Override public String getReportPath() {
+    return state.getPath();
+  }
+
+  @Override public String getMimeType() {
+    return state.getMimeType();
+  }
+
+  @Override public void requestPage( final int page ) {
+    // all pages are already there
+  }
+
+  @Override public boolean schedule() {
+    return false;
+  }
+
+  @Override public boolean preSchedule() {
+    return false;
+  }
+
+  @Override public Path getStagingPath() {
+    return stagingFile.toPath();
+  }
+}
@@ -0,0 +1,79 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Hands out unique file names in repository folders. A name is held from the moment it is found free until the file
+ * is created, so concurrent writers never pick the same name and don't need a global lock around the repository I/O.
+ * Reservations are local to this JVM: servers sharing a repository can still pick the same name for files created at
+ * the same time.
+ */
+final class RepositoryNameReservation {
+
+  private static final String FORMAT = "%s(%d)%s";
+  private static final Set<String> RESERVED = ConcurrentHashMap.newKeySet();
+
+  private RepositoryNameReservation() {
+  }
+
+  /**
+   * Reserves the first free name of 'name.ext', 'name(1).ext', 'name(2).ext'... The caller must {@link #release} it
+   * once the file exists or the attempt to create it failed.
+   *
+   * @param folderPath repository folder
+   * @param name       file name without extension
+   * @param extension  extension including the dot
+   * @param exists     checks whether a file name is taken in the folder
+   * @return reserved file name
+   */
+  static String reserve( final String folderPath, final String name, final String extension,
+                         final Predicate<String> exists ) {
+    String candidate = name + extension;
+    int copy = 1;
+    while ( true ) {
+      final String key = getKey( folderPath, candidate );
+      if ( RESERVED.add( key ) ) {
+        final boolean taken;
+        try {
+          taken = exists.test( candidate );
+        } catch ( final RuntimeException e ) {
+          RESERVED.remove( key );
+          throw e;
+        }
+        if ( !taken ) {
+          return candidate;
+        }
+        RESERVED.remove( key );
+      }
+      candidate = String.format( FORMAT, name, copy, extension );
+      copy++;
+    }
+  }
+
+  static void release( final String folderPath, final String fileName ) {
+    RESERVED.remove( getKey( folderPath, fileName ) );
+  }
+
+  static boolean isReserved( final String folderPath, final String fileName ) {
+    return RESERVED.contains( getKey( folderPath, fileName ) );
+  }
+
+  private static String getKey( final String folderPath, final String fileName ) {
+    return folderPath + "/" + fileName;
+  }
+}
@@ -0,0 +1,95 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncReportState;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stands in for a recalculation answered from a finished execution with the same canonical key. Nothing is executed,
+ * the state is a copy of the finished one and the content is a copy of its staged output. Unlike a recovered job it can
+ * be scheduled, that is what recalculation is requested for.
+ */
+class ReusedReportExecution implements IAsyncReportExecution<IAsyncReportState> {
+
+  private final Path stagingPath;
+  private final boolean compressed;
+  private final long uncompressedSize;
+  private volatile IAsyncReportState state;
+
+  ReusedReportExecution( final UUID id, final IAsyncReportState finished, final Path stagingPath,
+                         final boolean compressed, final long uncompressedSize ) {
+    this.stagingPath = stagingPath;
+    this.compressed = compressed;
+    this.uncompressedSize = uncompressedSize;
+    this.state = copyState( id, finished, AsyncExecutionStatus.FINISHED );
+  }
+
+  private static IAsyncReportState copyState( final UUID id, final IAsyncReportState source,
+                                              final AsyncExecutionStatus status ) {
+    return new AsyncReportState( id, source.getPath(), status, source.getProgress(), source.getRow(),
+      source.getTotalRows(), source.getPage(), source.getTotalPages(), source.getGeneratedPage(), source.getActivity(),
+      source.getMimeType(), source.getErrorMessage(), source.getIsQueryLimitReached() );
+  }
+
+  @Override public IFixedSizeStreamingContent call() {
+    return new AsyncJobFileStagingHandler.FixedSizeStagingContent( stagingPath.toFile(), compressed,
+      uncompressedSize );
+  }
+
+  @Override
+  public void notifyTaskQueued( final UUID id, final List<? extends ReportProgressListener> callbackListeners ) {
+    // already finished
+  }
+
+  @Override public IAsyncReportState getState() {
+    return state;
+  }
+
+  @Override public String getReportPath() {
+    return state.getPath();
+  }
+
+  @Override public String getMimeType() {
+    return state.getMimeType();
+  }
+
+  @Override public void requestPage( final int page ) {
+    // all pages are already there
+  }
+
+  @Override public synchronized boolean schedule() {
+    if ( AsyncExecutionStatus.SCHEDULED.equals( state.getStatus() ) ) {
+      return false;
+    }
+    state = copyState( state.getUuid(), state, AsyncExecutionStatus.SCHEDULED );
+    return true;
+  }
+
+  @Override public boolean preSchedule() {
+    return false;
+  }
+
+  @Override public Path getStagingPath() {
+    return stagingPath;
+  }
+}
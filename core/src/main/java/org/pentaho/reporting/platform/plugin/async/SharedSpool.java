@@ -0,0 +1,401 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.libraries.base.util.ArgumentNullException;
+import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Spool directory shared by the nodes of a cluster to balance async jobs without a broker. A saturated node offers
+ * job descriptors to the spool, idle nodes claim them by creating a lease file, execute them and stage the result back
+ * in the spool where the offering node serves it.
+ * <p>
+ * Leases are kept alive by touching them, a lease not touched for the lease time belongs to a dead node and the job can
+ * be claimed again. All state is plain files written atomically, so several nodes (or several executors in one JVM)
+ * can share a directory on a network file system.
+ * <p>
+ * Offered jobs are executed as the user named in their descriptor, so the spool directory has to be trusted as much
+ * as the server itself: only the servers sharing it may be able to write there.
+ * <pre>
+ *   jobs/&lt;id&gt;.json      offered job descriptor
+ *   leases/&lt;id&gt;.lease   claim of the executing node
+ *   results/&lt;id&gt;.json   outcome, written last
+ *   results/&lt;id&gt;.content staged output of a finished job
+ * </pre>
+ */
+public class SharedSpool {
+
+  public static final String DEFAULT_SPOOL_DIR = "system/tmp/asyncspool";
+
+  private static final Log log = LogFactory.getLog( SharedSpool.class );
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String JOBS = "jobs";
+  private static final String LEASES = "leases";
+  private static final String RESULTS = "results";
+  private static final String JSON = ".json";
+  private static final String LEASE = ".lease";
+  private static final String CONTENT = ".content";
+
+  private final String spoolDir;
+  private final String nodeId;
+  private final long leaseMillis;
+  private final long pollMillis;
+
+  public SharedSpool() {
+    this( DEFAULT_SPOOL_DIR, "", 60, 2000 );
+  }
+
+  /**
+   * @param spoolDir     shared directory, relative paths are resolved against the solution path
+   * @param nodeId       unique name of this node, empty to use the process name
+   * @param leaseSeconds time after which the claim of a node that stopped renewing it expires
+   * @param pollMillis   how often the spool is checked for offered jobs and results
+   */
+  public SharedSpool( final String spoolDir, final String nodeId, final long leaseSeconds, final long pollMillis ) {
+    ArgumentNullException.validate( "spoolDir", spoolDir );
+    this.spoolDir = spoolDir;
+    this.nodeId = nodeId == null || nodeId.isEmpty() ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+    this.leaseMillis = leaseSeconds * 1000;
+    this.pollMillis = pollMillis;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public long getPollMillis() {
+    return pollMillis;
+  }
+
+  Path getDir( final String name ) throws IOException {
+    Path dir = Paths.get( spoolDir );
+    if ( !dir.isAbsolute() ) {
+      final IApplicationContext context = PentahoSystem.getApplicationContext();
+      final String solutionDir = context == null ? null : context.getSolutionPath( spoolDir );
+      if ( solutionDir != null ) {
+        dir = Paths.get( solutionDir );
+      }
+    }
+    return Files.createDirectories( dir.resolve( name ) );
+  }
+
+  /**
+   * Offers a job to any node.
+   */
+  public void offer( final AsyncJobJournal.JobRecord record ) throws IOException {
+    write( getDir( JOBS ).resolve( record.getId() + JSON ), MAPPER.writeValueAsBytes( record ) );
+  }
+
+  /**
+   * Claims the oldest offered job that no live node holds.
+   *
+   * @return claimed job or null
+   */
+  public AsyncJobJournal.JobRecord claimNext() throws IOException {
+    final List<Path> offered = new ArrayList<>();
+    try ( DirectoryStream<Path> stream = Files.newDirectoryStream( getDir( JOBS ), "*" + JSON ) ) {
+      for ( final Path path : stream ) {
+        offered.add( path );
+      }
+    }
+    offered.sort( Comparator.comparingLong( SharedSpool::lastModified ) );
+    for ( final Path path : offered ) {
+      final String fileName = path.getFileName().toString();
+      final String id = fileName.substring( 0, fileName.length() - JSON.length() );
+      if ( !claim( id ) ) {
+        continue;
+      }
+      try {
+        return MAPPER.readValue( Files.readAllBytes( path ), AsyncJobJournal.JobRecord.class );
+      } catch ( final NoSuchFileException e ) {
+        // withdrawn meanwhile
+        release( id );
+      } catch ( final IOException e ) {
+        log.warn( "Dropping unreadable spooled job: " + path, e );
+        remove( id );
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Claims a job, a lease that was not renewed in time is taken over.
+   *
+   * @return true if this node holds the lease now
+   */
+  public boolean claim( final String id ) throws IOException {
+    final Path lease = getDir( LEASES ).resolve( id + LEASE );
+    if ( tryCreateLease( lease ) ) {
+      return true;
+    }
+    final long modified = lastModified( lease );
+    if ( modified == 0 || System.currentTimeMillis() - modified <= leaseMillis ) {
+      return false;
+    }
+    final String owner = readOwner( lease );
+    // only one node manages to move the expired lease away
+    final Path stale = lease.resolveSibling( id + "." + System.nanoTime() + ".stale" );
+    try {
+      Files.move( lease, stale, StandardCopyOption.ATOMIC_MOVE );
+    } catch ( final NoSuchFileException e ) {
+      return false;
+    }
+    // another node may have taken the lease over or its owner renewed it between the check and the move
+    if ( System.currentTimeMillis() - lastModified( stale ) <= leaseMillis || !Objects.equals( owner,
+      readOwner( stale ) ) ) {
+      giveBack( lease, stale );
+      return false;
+    }
+    Files.deleteIfExists( stale );
+    log.info( "Taking over expired lease of spooled job " + id );
+    return tryCreateLease( lease );
+  }
+
+  private static void giveBack( final Path lease, final Path moved ) throws IOException {
+    try {
+      Files.move( moved, lease );
+    } catch ( final FileAlreadyExistsException e ) {
+      // claimed by a third node meanwhile, the previous owner finds out on its next renewal
+      Files.deleteIfExists( moved );
+    }
+  }
+
+  private static String readOwner( final Path lease ) throws IOException {
+    try {
+      return new String( Files.readAllBytes( lease ), StandardCharsets.UTF_8 );
+    } catch ( final NoSuchFileException e ) {
+      return null;
+    }
+  }
+
+  private boolean tryCreateLease( final Path lease ) throws IOException {
+    try {
+      Files.write( lease, nodeId.getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE );
+      return true;
+    } catch ( final FileAlreadyExistsException e ) {
+      return false;
+    }
+  }
+
+  /**
+   * Keeps the lease of a running job alive.
+   *
+   * @return false if the job was withdrawn or its lease was taken over and it should be stopped
+   */
+  public boolean renew( final String id ) throws IOException {
+    if ( !Files.exists( getDir( JOBS ).resolve( id + JSON ) ) ) {
+      return false;
+    }
+    final Path lease = getDir( LEASES ).resolve( id + LEASE );
+    if ( !nodeId.equals( readOwner( lease ) ) ) {
+      return false;
+    }
+    try {
+      Files.setLastModifiedTime( lease, FileTime.fromMillis( System.currentTimeMillis() ) );
+      return true;
+    } catch ( final NoSuchFileException e ) {
+      return false;
+    }
+  }
+
+  void release( final String id ) throws IOException {
+    Files.deleteIfExists( getDir( LEASES ).resolve( id + LEASE ) );
+  }
+
+  /**
+   * Publishes the staged output of a finished job, the staged file is moved into the spool.
+   */
+  public void complete( final String id, final Path stagedContent ) throws IOException {
+    complete( id, stagedContent, false, -1 );
+  }
+
+  /**
+   * Publishes the staged output of a finished job, the staged file is moved into the spool.
+   *
+   * @param compressed       true if the staged content is gzip compressed
+   * @param uncompressedSize size of compressed content once decompressed, ignored for plain content
+   */
+  public void complete( final String id, final Path stagedContent, final boolean compressed,
+                        final long uncompressedSize ) throws IOException {
+    final Path content = getDir( RESULTS ).resolve( id + CONTENT );
+    try {
+      Files.move( stagedContent, content, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    } catch ( final AtomicMoveNotSupportedException e ) {
+      // staging dir is on another file system
+      final Path tmp = content.resolveSibling( id + CONTENT + ".tmp" );
+      Files.copy( stagedContent, tmp, StandardCopyOption.REPLACE_EXISTING );
+      Files.move( tmp, content, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      Files.deleteIfExists( stagedContent );
+    }
+    final Result result = new Result( AsyncExecutionStatus.FINISHED.name(), null );
+    if ( compressed ) {
+      result.setCompressed( Boolean.TRUE );
+      result.setContentSize( uncompressedSize );
+    }
+    finish( id, result );
+  }
+
+  public void fail( final String id, final String errorMessage ) throws IOException {
+    finish( id, new Result( AsyncExecutionStatus.FAILED.name(), errorMessage ) );
+  }
+
+  private void finish( final String id, final Result result ) throws IOException {
+    write( getDir( RESULTS ).resolve( id + JSON ), MAPPER.writeValueAsBytes( result ) );
+    Files.deleteIfExists( getDir( JOBS ).resolve( id + JSON ) );
+    release( id );
+  }
+
+  /**
+   * @return outcome of a job or null if it is not done yet
+   */
+  public Result getResult( final String id ) throws IOException {
+    final Path path = getDir( RESULTS ).resolve( id + JSON );
+    try {
+      return MAPPER.readValue( Files.readAllBytes( path ), Result.class );
+    } catch ( final NoSuchFileException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Drops the outcome of a job once the offering node took it over, the content stays until it is served.
+   */
+  public void acknowledge( final String id ) throws IOException {
+    Files.deleteIfExists( getDir( RESULTS ).resolve( id + JSON ) );
+  }
+
+  public Path getResultContent( final String id ) throws IOException {
+    return getDir( RESULTS ).resolve( id + CONTENT );
+  }
+
+  /**
+   * Withdraws a job and drops its result, a node executing it stops on its next lease renewal.
+   */
+  public void remove( final String id ) {
+    try {
+      Files.deleteIfExists( getDir( JOBS ).resolve( id + JSON ) );
+      release( id );
+      Files.deleteIfExists( getDir( RESULTS ).resolve( id + JSON ) );
+      Files.deleteIfExists( getDir( RESULTS ).resolve( id + CONTENT ) );
+    } catch ( final IOException e ) {
+      log.debug( "Unable to remove spooled job " + id, e );
+    }
+  }
+
+  private static void write( final Path target, final byte[] content ) throws IOException {
+    final Path tmp = target.resolveSibling( target.getFileName() + ".tmp" );
+    Files.write( tmp, content );
+    Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+  }
+
+  private static long lastModified( final Path path ) {
+    try {
+      return Files.getLastModifiedTime( path ).toMillis();
+    } catch ( final IOException e ) {
+      return 0;
+    }
+  }
+
+  @JsonInclude( JsonInclude.Include.NON_NULL )
+  @JsonIgnoreProperties( ignoreUnknown = true )
+  public static class Result {
+    private String status;
+    private String errorMessage;
+    private Boolean compressed;
+    private Long contentSize;
+
+    public Result() {
+    }
+
+    Result( final String status, final String errorMessage ) {
+      this.status = status;
+      this.errorMessage = errorMessage;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public void setStatus( final String status ) {
+      this.status = status;
+    }
+
+    public String getErrorMessage() {
+      return errorMessage;
+    }
+
+    public void setErrorMessage( final String errorMessage ) {
+      this.errorMessage = errorMessage;
+    }
+
+    public Boolean getCompressed() {
+      return compressed;
+    }
+
+    public void setCompressed( final Boolean compressed ) {
+      this.compressed = compressed;
+    }
+
+    public Long getContentSize() {
+      return contentSize;
+    }
+
+    public void setContentSize( final Long contentSize ) {
+      this.contentSize = contentSize;
+    }
+
+    /**
+     * @param file published content of the job
+     * @return the content as it was staged
+     */
+    @JsonIgnore
+    IFixedSizeStreamingContent getContent( final Path file ) {
+      final boolean gzip = Boolean.TRUE.equals( compressed ) && contentSize != null;
+      return new AsyncJobFileStagingHandler.FixedSizeStagingContent( file.toFile(), gzip, gzip ? contentSize : -1 );
+    }
+
+    boolean isFinished() {
+      return AsyncExecutionStatus.FINISHED.name().equals( status );
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncReportState;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Stands in for a job offered to the shared spool, it may be executed by any node. The state stays QUEUED until the
+ * result shows up in the spool. Nothing is executed here, so it is tracked apart from the executor's tasks.
+ */
+class SpooledReportExecution {
+
+  private final UUID id;
+  private final String path;
+  private final String mimeType;
+  private volatile IAsyncReportState state;
+  private volatile Path resultPath;
+
+  SpooledReportExecution( final UUID id, final String path, final String mimeType ) {
+    this.id = id;
+    this.path = path;
+    this.mimeType = mimeType;
+    this.state = createState( AsyncExecutionStatus.QUEUED, "" );
+  }
+
+  private IAsyncReportState createState( final AsyncExecutionStatus status, final String errorMessage ) {
+    final int progress = AsyncExecutionStatus.FINISHED.equals( status ) ? 100 : 0;
+    return new AsyncReportState( id, path, status, progress, 0, 0, 0, 0, 0, "", mimeType, errorMessage, false );
+  }
+
+  void finished( final Path resultPath ) {
+    this.resultPath = resultPath;
+    this.state = createState( AsyncExecutionStatus.FINISHED, "" );
+  }
+
+  void failed( final String errorMessage ) {
+    this.state = createState( AsyncExecutionStatus.FAILED, errorMessage == null ? "" : errorMessage );
+  }
+
+  void canceled() {
+    this.state = createState( AsyncExecutionStatus.CANCELED, "" );
+  }
+
+  IAsyncReportState getState() {
+    return state;
+  }
+
+  /**
+   * @return result content in the spool once the job finished, otherwise null
+   */
+  Path getStagingPath() {
+    return resultPath;
+  }
+}
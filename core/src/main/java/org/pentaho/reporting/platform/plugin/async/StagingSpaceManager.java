@@ -0,0 +1,244 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+import org.pentaho.reporting.platform.plugin.DaemonThreadFactory;
+import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the disk space used by async staging. Staged content of the jobs known to the executor is summed up
+ * periodically, globally and per user; while a quota is exceeded the largest working jobs are interrupted and fail
+ * with the quota as error message. Finished content counts against the quota until it is cleaned up, but is never
+ * removed here.
+ * <p>
+ * The same check sweeps the async staging directory: files no known job refers to are deleted once they were not
+ * modified for the orphan age, so content of crashed sessions and abandoned jobs does not pile up. Zero disables a
+ * quota or the sweeper.
+ */
+public class StagingSpaceManager {
+
+  private static final Log log = LogFactory.getLog( StagingSpaceManager.class );
+
+  private long checkIntervalMillis = 60000;
+  private long maxTotalBytes;
+  private long maxUserBytes;
+  private long maxOrphanAgeMillis = TimeUnit.HOURS.toMillis( 6 );
+
+  private volatile Supplier<Map<IAsyncReportExecution<?>, String>> jobs;
+  private ScheduledExecutorService scheduler;
+
+  public void setCheckIntervalMillis( final long checkIntervalMillis ) {
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  /**
+   * @param maxTotalBytes bytes all jobs together may stage
+   */
+  public void setMaxTotalBytes( final long maxTotalBytes ) {
+    this.maxTotalBytes = maxTotalBytes;
+  }
+
+  /**
+   * @param maxUserBytes bytes the jobs of a single user may stage
+   */
+  public void setMaxUserBytes( final long maxUserBytes ) {
+    this.maxUserBytes = maxUserBytes;
+  }
+
+  /**
+   * @param maxOrphanAgeMillis time since the last modification after which a staging file no job refers to is deleted
+   */
+  public void setMaxOrphanAgeMillis( final long maxOrphanAgeMillis ) {
+    this.maxOrphanAgeMillis = maxOrphanAgeMillis;
+  }
+
+  /**
+   * Starts the periodic check.
+   *
+   * @param jobs current jobs of the executor mapped to the name of their owner
+   */
+  synchronized void start( final Supplier<Map<IAsyncReportExecution<?>, String>> jobs ) {
+    this.jobs = jobs;
+    if ( scheduler == null ) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(
+        new DaemonThreadFactory( "PentahoAsyncExecutor Staging Space" ) );
+      scheduler.scheduleWithFixedDelay( () -> {
+        try {
+          check();
+        } catch ( final RuntimeException e ) {
+          log.error( "Async staging space check failed", e );
+        }
+      }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS );
+    }
+  }
+
+  /**
+   * Enforces the quotas, then sweeps orphaned staging files.
+   */
+  void check() {
+    final Supplier<Map<IAsyncReportExecution<?>, String>> source = jobs;
+    final Map<IAsyncReportExecution<?>, String> current = source == null
+      ? Collections.<IAsyncReportExecution<?>, String>emptyMap() : source.get();
+
+    final Set<Path> inUse = new HashSet<>();
+    final List<StagedJob> staged = new ArrayList<>();
+    for ( final Map.Entry<IAsyncReportExecution<?>, String> entry : current.entrySet() ) {
+      final Path stagingPath = entry.getKey().getStagingPath();
+      if ( stagingPath != null ) {
+        inUse.add( stagingPath.toAbsolutePath().normalize() );
+        staged.add( new StagedJob( entry.getKey(), entry.getValue(), sizeOf( stagingPath ) ) );
+      }
+    }
+    enforce( staged );
+
+    if ( maxOrphanAgeMillis > 0 ) {
+      final Path stagingDir = AsyncJobFileStagingHandler.getStagingDirPath();
+      if ( stagingDir != null ) {
+        sweep( stagingDir, inUse, System.currentTimeMillis() - maxOrphanAgeMillis );
+      }
+    }
+  }
+
+  /**
+   * Aborts working jobs, largest first, until usage fits the user quotas and the global quota.
+   */
+  void enforce( final List<StagedJob> staged ) {
+    if ( maxTotalBytes <= 0 && maxUserBytes <= 0 ) {
+      return;
+    }
+    long total = 0;
+    final Map<String, Long> perUser = new HashMap<>();
+    final List<StagedJob> working = new ArrayList<>();
+    for ( final StagedJob job : staged ) {
+      total += job.size;
+      perUser.merge( String.valueOf( job.user ), job.size, Long::sum );
+      if ( job.isWorking() ) {
+        working.add( job );
+      }
+    }
+    working.sort( ( a, b ) -> Long.compare( b.size, a.size ) );
+
+    if ( maxUserBytes > 0 ) {
+      for ( final StagedJob job : new ArrayList<>( working ) ) {
+        final String user = String.valueOf( job.user );
+        final long used = perUser.get( user );
+        if ( used > maxUserBytes ) {
+          abort( job, "Async staging quota of " + maxUserBytes + " bytes per user exceeded: " + used );
+          working.remove( job );
+          perUser.put( user, used - job.size );
+          total -= job.size;
+        }
+      }
+    }
+    if ( maxTotalBytes > 0 ) {
+      for ( final StagedJob job : new ArrayList<>( working ) ) {
+        if ( total <= maxTotalBytes ) {
+          break;
+        }
+        abort( job, "Global async staging quota of " + maxTotalBytes + " bytes exceeded: " + total );
+        total -= job.size;
+      }
+    }
+  }
+
+  /**
+   * Deletes staging files not referenced by a job and not modified since the given time, then empty session
+   * directories not modified since then.
+   */
+  void sweep( final Path stagingDir, final Set<Path> inUse, final long modifiedBefore ) {
+    final File[] sessionDirs = stagingDir.toFile().listFiles();
+    if ( sessionDirs == null ) {
+      return;
+    }
+    for ( final File sessionDir : sessionDirs ) {
+      final File[] files = sessionDir.listFiles();
+      if ( files == null ) {
+        continue;
+      }
+      for ( final File file : files ) {
+        if ( file.isFile() && file.lastModified() < modifiedBefore
+          && !inUse.contains( file.toPath().toAbsolutePath().normalize() ) ) {
+          if ( file.delete() ) {
+            log.debug( "Deleted orphaned async staging file: " + file );
+          } else {
+            log.debug( "Unable to delete orphaned async staging file: " + file );
+          }
+        }
+      }
+      final String[] left = sessionDir.list();
+      if ( left != null && left.length == 0 && sessionDir.lastModified() < modifiedBefore && !sessionDir.delete() ) {
+        log.debug( "Unable to delete empty async staging directory: " + sessionDir );
+      }
+    }
+  }
+
+  private static void abort( final StagedJob job, final String reason ) {
+    log.warn( "Aborting async report execution " + job.task.getReportPath() + " of " + job.user + ": " + reason );
+    job.task.abort( reason );
+  }
+
+  private static long sizeOf( final Path path ) {
+    try {
+      return Files.size( path );
+    } catch ( final IOException e ) {
+      // staging file is gone, nothing staged
+      return 0;
+    }
+  }
+
+  public synchronized void shutdown() {
+    if ( scheduler != null ) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    jobs = null;
+  }
+
+  static final class StagedJob {
+    private final IAsyncReportExecution<?> task;
+    private final String user;
+    private final long size;
+
+    StagedJob( final IAsyncReportExecution<?> task, final String user, final long size ) {
+      this.task = task;
+      this.user = user;
+      this.size = size;
+    }
+
+    boolean isWorking() {
+      final IAsyncReportState state = task.getState();
+      return state != null && AsyncExecutionStatus.WORKING.equals( state.getStatus() );
+    }
+  }
+}
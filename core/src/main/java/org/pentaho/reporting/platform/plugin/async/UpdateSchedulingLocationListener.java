@@ -34,7 +34,6 @@ class UpdateSchedulingLocationListener implements ISchedulingListener {
   private static final String ERROR_MSG = "Can't move report to selected location: ";
   private static final String NEW_NAME = "newName";
   private static Log log = LogFactory.getLog( UpdateSchedulingLocationListener.class );
-  private static final String FORMAT = "%s(%d)%s";
 
 
   private final Serializable targetfolderId;
@@ -65,27 +64,25 @@ class UpdateSchedulingLocationListener implements ISchedulingListener {
 
         //InteliJ inspection states that we don't need StringBuilder here
         final String fileExtension = utils.getFileExtension( savedFile.getName() );
-        final String folderPath = outputFolder.getPath() + "/";
-        String newPath = folderPath + newName + fileExtension;
-
-        int count = 1;
-
-        synchronized ( FORMAT ) {
-          /* Let's move file to temp location to handle situation
-          when the name is not changed */
-          String uuidAsString = getUuidAsString();
-          while ( null != repo.getFile( newPath + uuidAsString ) ) {
-            uuidAsString = getUuidAsString();
-          }
-
-          repo.moveFile( savedFile.getId(), newPath + uuidAsString, MOVE_MSG );
-
-          while ( null != repo.getFile( newPath ) ) {
-            newPath = String
-              .format( FORMAT, folderPath + newName, count, fileExtension );
-            count++;
-          }
-          repo.moveFile( savedFile.getId(), newPath, MOVE_MSG );
+        final String folder = outputFolder.getPath();
+        final String folderPath = folder + "/";
+        final String newPath = folderPath + newName + fileExtension;
+
+        /* Let's move file to temp location to handle situation
+        when the name is not changed */
+        String uuidAsString = getUuidAsString();
+        while ( null != repo.getFile( newPath + uuidAsString ) ) {
+          uuidAsString = getUuidAsString();
+        }
+
+        repo.moveFile( savedFile.getId(), newPath + uuidAsString, MOVE_MSG );
+
+        final String targetName = RepositoryNameReservation
+          .reserve( folder, newName, fileExtension, name -> null != repo.getFile( folderPath + name ) );
+        try {
+          repo.moveFile( savedFile.getId(), folderPath + targetName, MOVE_MSG );
+        } finally {
+          RepositoryNameReservation.release( folder, targetName );
         }
 
 
@@ -21,6 +21,7 @@ import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.util.StringUtil;
 import org.pentaho.platform.util.web.MimeHelper;
 import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+import org.pentaho.reporting.libraries.repository.ContentItem;
 import org.pentaho.reporting.libraries.repository.ContentLocation;
 import org.pentaho.reporting.platform.plugin.repository.ReportContentRepository;
 import java.io.IOException;
@@ -33,8 +34,6 @@ public class WriteToJcrTask implements Callable<Serializable> {
   private static final String CANT_CREATE_FILE_IN_JCR = "Can't create file in JCR";
   private static Log log = LogFactory.getLog( WriteToJcrTask.class );
 
-
-  private static final String FORMAT = "%s(%d)%s";
   private static final String TXT = ".txt";
   private static final String DEFAULT_NAME = "content";
   private static final String CANT_PERSIST_MSG = "Cant't persist report: ";
@@ -80,25 +79,24 @@ public class WriteToJcrTask implements Callable<Serializable> {
         cleanFileName = DEFAULT_NAME;
       }
 
-      String targetName = cleanFileName + targetExt;
-
-      int copy = 1;
-
-      final OutputStream outputStream;
-
-      synchronized ( FORMAT ) {
-        while ( dataLocation.exists( targetName ) ) {
-          targetName = String.format( FORMAT, cleanFileName, copy, targetExt );
-          copy++;
-        }
-        outputStream = dataLocation.createItem( targetName ).getOutputStream();
+      final String folderPath = outputFolder.getPath();
+      // the reservation only keeps writers of this server apart, createItem opens an existing file instead of failing
+      final String targetName =
+        RepositoryNameReservation.reserve( folderPath, cleanFileName, targetExt, dataLocation::exists );
+      final ContentItem item;
+      try {
+        item = dataLocation.createItem( targetName );
+      } finally {
+        // once created the file itself holds the name
+        RepositoryNameReservation.release( folderPath, targetName );
       }
 
+      final OutputStream outputStream = item.getOutputStream();
       if ( outputStream != null ) {
         try {
           IOUtils.copy( inputStream, outputStream );
           outputStream.flush();
-          final RepositoryFile targetFile = repo.getFile( outputFolder.getPath() + "/" + targetName );
+          final RepositoryFile targetFile = repo.getFile( folderPath + "/" + targetName );
           return targetFile.getId();
         } finally {
           IOUtils.closeQuietly( outputStream );
@@ -0,0 +1,191 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.connection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the JDBC statements a report job has in flight, so canceling the job cancels its running queries on the
+ * database instead of waiting for them to complete.
+ * <p>
+ * The executing thread binds itself to a job, connections created by the plugin connection providers on that thread
+ * are tracked and every statement they create is registered until it is closed. Connections created outside of a
+ * bound thread are returned as is.
+ */
+public final class JobStatementRegistry {
+
+  private static final Log logger = LogFactory.getLog( JobStatementRegistry.class );
+
+  private static final ThreadLocal<Object> CURRENT_JOB = new ThreadLocal<>();
+  private static final Map<Object, Job> JOBS = new ConcurrentHashMap<>();
+  private static final AtomicInteger OPEN_CONNECTIONS = new AtomicInteger();
+
+  private JobStatementRegistry() {
+  }
+
+  /**
+   * Binds the current thread to a job until {@link #unbind()}.
+   *
+   * @param jobKey job identity
+   */
+  public static void bind( final Object jobKey ) {
+    CURRENT_JOB.set( jobKey );
+    JOBS.put( jobKey, new Job() );
+  }
+
+  public static void unbind() {
+    final Object jobKey = CURRENT_JOB.get();
+    CURRENT_JOB.remove();
+    if ( jobKey != null ) {
+      JOBS.remove( jobKey );
+    }
+  }
+
+  /**
+   * Cancels all running statements of the job, statements created afterwards fail.
+   *
+   * @param jobKey job identity
+   */
+  public static void cancel( final Object jobKey ) {
+    final Job job = JOBS.get( jobKey );
+    if ( job == null ) {
+      return;
+    }
+    job.canceled = true;
+    for ( final Statement statement : job.statements ) {
+      try {
+        statement.cancel();
+      } catch ( final SQLException | RuntimeException e ) {
+        logger.debug( "Unable to cancel statement", e );
+      }
+    }
+  }
+
+  static int getStatementCount( final Object jobKey ) {
+    final Job job = JOBS.get( jobKey );
+    return job == null ? 0 : job.statements.size();
+  }
+
+  /**
+   * @return number of tracked connections of jobs currently open
+   */
+  public static int getOpenConnectionCount() {
+    return OPEN_CONNECTIONS.get();
+  }
+
+  /**
+   * Wraps a connection of the current job so its statements can be canceled.
+   *
+   * @return tracked connection, or the connection itself if the thread is not bound to a job
+   */
+  public static Connection track( final Connection connection ) {
+    final Object jobKey = CURRENT_JOB.get();
+    if ( connection == null || jobKey == null || isTracked( connection ) ) {
+      return connection;
+    }
+    OPEN_CONNECTIONS.incrementAndGet();
+    return (Connection) Proxy.newProxyInstance( JobStatementRegistry.class.getClassLoader(),
+      new Class<?>[] { Connection.class }, new ConnectionHandler( connection, jobKey ) );
+  }
+
+  /**
+   * Other proxies, such as pooled connections of some data sources, are tracked like any connection.
+   */
+  private static boolean isTracked( final Connection connection ) {
+    return Proxy.isProxyClass( connection.getClass() )
+      && Proxy.getInvocationHandler( connection ) instanceof ConnectionHandler;
+  }
+
+  private static Object invoke( final Object target, final Method method, final Object[] args ) throws Throwable {
+    try {
+      return method.invoke( target, args );
+    } catch ( final InvocationTargetException e ) {
+      throw e.getCause();
+    }
+  }
+
+  private static final class Job {
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean canceled;
+  }
+
+  private static final class ConnectionHandler implements InvocationHandler {
+    private final Connection connection;
+    private final Object jobKey;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ConnectionHandler( final Connection connection, final Object jobKey ) {
+      this.connection = connection;
+      this.jobKey = jobKey;
+    }
+
+    @Override public Object invoke( final Object proxy, final Method method, final Object[] args ) throws Throwable {
+      if ( "close".equals( method.getName() ) && method.getParameterCount() == 0 && closed.compareAndSet( false,
+        true ) ) {
+        OPEN_CONNECTIONS.decrementAndGet();
+      }
+      final Object result = JobStatementRegistry.invoke( connection, method, args );
+      if ( !( result instanceof Statement ) ) {
+        return result;
+      }
+      final Statement statement = (Statement) result;
+      final Job job = JOBS.get( jobKey );
+      if ( job == null ) {
+        return statement;
+      }
+      if ( job.canceled ) {
+        statement.close();
+        throw new SQLException( "Report execution was canceled" );
+      }
+      job.statements.add( statement );
+      final Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+        : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+      return Proxy.newProxyInstance( JobStatementRegistry.class.getClassLoader(), new Class<?>[] { type },
+        new StatementHandler( statement, job ) );
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    private final Statement statement;
+    private final Job job;
+
+    private StatementHandler( final Statement statement, final Job job ) {
+      this.statement = statement;
+      this.job = job;
+    }
+
+    @Override public Object invoke( final Object proxy, final Method method, final Object[] args ) throws Throwable {
+      if ( "close".equals( method.getName() ) && method.getParameterCount() == 0 ) {
+        job.statements.remove( statement );
+      }
+      return JobStatementRegistry.invoke( statement, method, args );
+    }
+  }
+}
@@ -47,6 +47,10 @@ public class PentahoJndiDatasourceConnectionProvider implements ConnectionProvid
    * @throws java.sql.SQLException
    */
   public Connection createConnection( final String user, final String password ) throws SQLException {
+    return JobStatementRegistry.track( openConnection( user, password ) );
+  }
+
+  private Connection openConnection( final String user, final String password ) throws SQLException {
     try {
       final IDBDatasourceService datasourceService =
           PentahoSystem.getObjectFactory().get( IDBDatasourceService.class, null );
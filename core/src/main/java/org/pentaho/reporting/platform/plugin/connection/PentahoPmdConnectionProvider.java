@@ -81,6 +81,7 @@ public class PentahoPmdConnectionProvider extends PmdConnectionProvider {
           Messages.getInstance().getString( "ReportPlugin.unableToCreateConnection" ), e ); //$NON-NLS-1$
     }
 
-    return super.createConnection( databaseMeta, username, password );
+    // jndi and pool connections are tracked by their providers
+    return JobStatementRegistry.track( super.createConnection( databaseMeta, username, password ) );
   }
 }
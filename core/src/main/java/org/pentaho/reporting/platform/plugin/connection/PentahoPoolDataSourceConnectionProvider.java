@@ -36,6 +36,10 @@ public class PentahoPoolDataSourceConnectionProvider implements ConnectionProvid
 
   @Override
   public Connection createConnection( final String user, final String password ) throws SQLException {
+    return JobStatementRegistry.track( openConnection( user, password ) );
+  }
+
+  private Connection openConnection( final String user, final String password ) throws SQLException {
     try {
       final IDBDatasourceService datasourceService =
           PentahoSystem.getObjectFactory().get( IDBDatasourceService.class, null );
@@ -44,10 +44,7 @@ import org.pentaho.reporting.libraries.base.util.PerformanceLoggingStopWatch;
 import org.pentaho.reporting.libraries.repository.ContentIOException;
 import org.pentaho.reporting.libraries.repository.ContentLocation;
 import org.pentaho.reporting.libraries.repository.Repository;
-import org.pentaho.reporting.libraries.resourceloader.ResourceData;
 import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
-import org.pentaho.reporting.libraries.resourceloader.ResourceLoadingException;
-import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
 import org.pentaho.reporting.libraries.xmlns.parser.Base64;
 import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
 import org.pentaho.reporting.platform.plugin.cache.IReportContent;
@@ -390,7 +387,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     return metaData;
   }
 
-  private Serializable computeCacheKey( final MasterReport report ) throws BeanException {
+  private static ArrayList<Object> computeCacheKey( final MasterReport report ) throws BeanException {
     final ResourceKey definitionSource = report.getDefinitionSource();
 
     //We need a parent because ZipRepository always has the same values
@@ -421,40 +418,21 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     return key;
   }
 
-  private List<String> computeDefSourceKey( final MasterReport report, final ResourceKey definitionSource ) {
+  private static List<String> computeDefSourceKey( final MasterReport report, final ResourceKey definitionSource ) {
     final ArrayList<String> sourceKey = new ArrayList<>();
     if ( definitionSource.getIdentifierAsString() != null ) {
       sourceKey.add( String.valueOf( definitionSource.getSchema() ) );
       sourceKey.add( definitionSource.getIdentifierAsString() );
     }
     //Check if report was replaced in repository
-    final String rawDataVersion = getRawDataVersion( report, definitionSource );
+    final String rawDataVersion = OutputUtils.getRawDataVersion( report, definitionSource );
     if ( null != rawDataVersion ) {
       sourceKey.add( rawDataVersion );
     }
     return sourceKey;
   }
 
-  private String getRawDataVersion( final MasterReport report, final ResourceKey definitionSource ) {
-    String result = null;
-    ResourceManager resourceManager = report.getResourceManager();
-    if ( resourceManager == null ) {
-      resourceManager = new ResourceManager();
-    }
-    final ResourceData resourceData;
-    try {
-      resourceData = resourceManager.loadRawData( definitionSource );
-      final long version = resourceData.getVersion( resourceManager );
-      if ( version != -1 ) {
-        result = String.valueOf( version );
-      }
-    } catch ( final ResourceLoadingException e ) {
-      logger.warn( "Can't load resource data for cache key computation: ", e );
-    }
-    return result;
-  }
-
-  private byte[] keyToBytes( final Serializable s ) throws IOException {
+  private static byte[] keyToBytes( final Serializable s ) throws IOException {
     final ByteArrayOutputStream bout = new ByteArrayOutputStream();
     final ObjectOutputStream oout = new ObjectOutputStream( bout );
     oout.writeObject( s );
@@ -466,8 +444,20 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
   // will be 43 characters long. Good enough for a directory name, even on Windows.
   public String createKey( final MasterReport report )
     throws CacheKeyException {
+    return createKey( report, null );
+  }
+
+  /**
+   * Computes the content cache key of a report, made of report version, parameter values and locale.
+   *
+   * @param variant distinguishes other content of the same report, null for the pageable HTML pages
+   */
+  static String createKey( final MasterReport report, final Serializable variant ) throws CacheKeyException {
     try {
-      final Serializable keyRaw = computeCacheKey( report );
+      final ArrayList<Object> keyRaw = computeCacheKey( report );
+      if ( variant != null ) {
+        keyRaw.add( variant );
+      }
       final byte[] text = keyToBytes( keyRaw );
       final MessageDigest md = MessageDigest.getInstance( "SHA-256" );
       md.update( text ); // Change this to "UTF-16" if needed
@@ -478,7 +468,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     }
   }
 
-  private static class CacheKeyException extends Exception {
+  static class CacheKeyException extends Exception {
     private CacheKeyException( final Throwable cause ) {
       super( cause );
     }
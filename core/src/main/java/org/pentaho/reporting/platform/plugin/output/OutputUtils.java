@@ -13,11 +13,28 @@ package org.pentaho.reporting.platform.plugin.output;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.platform.engine.security.SecurityHelper;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.event.async.ReportListenerThreadHolder;
+import org.pentaho.reporting.engine.classic.core.modules.output.table.html.HtmlTableModule;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+import org.pentaho.reporting.libraries.resourceloader.ResourceData;
+import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
+import org.pentaho.reporting.libraries.resourceloader.ResourceLoadingException;
+import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
+import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
+
+import java.util.concurrent.Callable;
 
 public final class OutputUtils {
 
+  public static final String CACHE_PAGINATED_HANDLERS =
+    "org.pentaho.reporting.platform.plugin.output.CachePaginatedHandlers";
+
   private OutputUtils() {
   }
 
@@ -43,4 +60,87 @@ public final class OutputUtils {
       return settingsLimit;
     }
   }
+
+  /**
+   * Version of the file the report was loaded from, changes when the report is replaced in the repository.
+   *
+   * @return version or null if unknown
+   */
+  public static String getReportVersion( final MasterReport report ) {
+    final ResourceKey definitionSource = report.getDefinitionSource();
+    if ( definitionSource == null ) {
+      return null;
+    }
+    // entries of a zip repository don't have versions of their own
+    final ResourceKey parent = definitionSource.getParent();
+    return getRawDataVersion( report, parent != null ? parent : definitionSource );
+  }
+
+  /**
+   * Returns the slot the output handler of a request is cached in. Paginated outputs keep the paginated report
+   * processor, which holds the page states of the report, so requests for any other page resume from the stored state
+   * instead of processing the report again. Without a viewer session the handler of a synchronous paginated request is
+   * cached per report version and output type in the user's session when {@link #CACHE_PAGINATED_HANDLERS} is enabled.
+   *
+   * @param viewerSessionId viewer session of the request, or null
+   * @param outputType      the effective output target
+   * @param reportId        repository path of the report, its file id if only that is known, or null
+   * @param report          the report, or null if it is not loaded
+   * @return the cache slot, or null if the handler is not cached
+   */
+  public static String getCacheSlotId( final String viewerSessionId, final String outputType, final Object reportId,
+                                       final MasterReport report ) {
+    final boolean paginated = SimpleReportingComponent.PNG_EXPORT_TYPE.equals( outputType )
+      || HtmlTableModule.TABLE_HTML_PAGE_EXPORT_TYPE.equals( outputType );
+    if ( viewerSessionId != null || !paginated || ReportListenerThreadHolder.getListener() != null
+      || !isCachePaginatedHandlers( report ) ) {
+      return viewerSessionId;
+    }
+    // a replaced report gets a slot of its own, handlers of reports of unknown version are not kept
+    final String version = reportId == null || report == null ? null : getReportVersion( report );
+    return version == null ? null : outputType + ":" + reportId + "@" + version; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  private static boolean isCachePaginatedHandlers( final MasterReport report ) {
+    final Configuration configuration =
+      report != null ? report.getConfiguration() : ClassicEngineBoot.getInstance().getGlobalConfig();
+    return "true".equals( configuration.getConfigProperty( CACHE_PAGINATED_HANDLERS ) ); //$NON-NLS-1$
+  }
+
+  static String getRawDataVersion( final MasterReport report, final ResourceKey definitionSource ) {
+    String result = null;
+    ResourceManager resourceManager = report.getResourceManager();
+    if ( resourceManager == null ) {
+      resourceManager = new ResourceManager();
+    }
+    final ResourceData resourceData;
+    try {
+      resourceData = resourceManager.loadRawData( definitionSource );
+      final long version = resourceData.getVersion( resourceManager );
+      if ( version != -1 ) {
+        result = String.valueOf( version );
+      }
+    } catch ( final ResourceLoadingException e ) {
+      log.warn( "Can't load resource data for cache key computation: ", e );
+    }
+    return result;
+  }
+
+  /**
+   * Background work for a request runs as the user of the calling thread, data sources may depend on the session.
+   */
+  static <T> Callable<T> inSessionContext( final Callable<T> task ) {
+    final IPentahoSession session = PentahoSessionHolder.getSession();
+    if ( session == null ) {
+      return task;
+    }
+    return () -> SecurityHelper.getInstance().runAsUser( session.getName(), () -> {
+      PentahoSessionHolder.setSession( session );
+      try {
+        return task.call();
+      } finally {
+        PentahoSessionHolder.removeSession();
+      }
+    } );
+  }
 }
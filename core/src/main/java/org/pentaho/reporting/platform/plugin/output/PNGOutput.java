@@ -13,22 +13,48 @@
 
 package org.pentaho.reporting.platform.plugin.output;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.reporting.engine.classic.core.MasterReport;
 import org.pentaho.reporting.engine.classic.core.ReportProcessingException;
 import org.pentaho.reporting.engine.classic.core.modules.output.pageable.graphics.PageDrawable;
 import org.pentaho.reporting.engine.classic.core.modules.output.pageable.graphics.PrintReportProcessor;
+import org.pentaho.reporting.libraries.base.config.Configuration;
 import org.pentaho.reporting.libraries.base.util.PngEncoder;
 import org.pentaho.reporting.libraries.repository.ContentIOException;
+import org.pentaho.reporting.platform.plugin.DaemonThreadFactory;
+import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
+import org.pentaho.reporting.platform.plugin.cache.IReportContent;
+import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+import org.pentaho.reporting.platform.plugin.cache.ReportContentImpl;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.print.PageFormat;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
 
 public class PNGOutput implements ReportOutputHandler {
+  public static final String CACHE_CONFIG = "org.pentaho.reporting.platform.plugin.output.CachePngContent";
+  public static final String COMPRESSION_CONFIG = "org.pentaho.reporting.platform.plugin.output.PngCompressionLevel";
+  public static final String SCALE_CONFIG = "org.pentaho.reporting.platform.plugin.output.PngScale";
+  public static final String ENCODE_PAGES_CONFIG = "org.pentaho.reporting.platform.plugin.output.PngEncodePages";
+
+  private static final Log logger = LogFactory.getLog( PNGOutput.class );
+  private static final int DEFAULT_COMPRESSION = 9;
+  /**
+   * Upper bound of PngEncodePages, every page encoded ahead holds a full size image until its encoder runs.
+   */
+  static final int MAX_ENCODE_PAGES = 4;
+
   private transient PrintReportProcessor proc;
 
   public PNGOutput() {
@@ -53,9 +79,30 @@ public class PNGOutput implements ReportOutputHandler {
     return 0;
   }
 
+  /**
+   * Writes the requested page as PNG. With the CachePngContent configuration encoded pages are kept in the content
+   * cache, keyed by report version, parameters, page, scale and compression level. With PngEncodePages the pages
+   * following the requested one are rendered once it is written and encoded into the cache in the background.
+   */
   public int generate( final MasterReport report, final int acceptedPage, final OutputStream outputStream,
                        final int yieldRate ) throws ReportProcessingException, IOException, ContentIOException {
     OutputUtils.enforceQueryLimit( report );
+    final Configuration configuration = report.getConfiguration();
+    final int compressionLevel = Math.max( 0, Math.min( 9,
+      getIntProperty( configuration, COMPRESSION_CONFIG, DEFAULT_COMPRESSION ) ) );
+    final double scale = getScale( configuration );
+
+    final IReportContentCache cache = "true".equals( configuration.getConfigProperty( CACHE_CONFIG ) ) //$NON-NLS-1$
+      ? getCache() : null;
+    final String key = cache == null ? null : getCacheKey( report, scale, compressionLevel );
+    if ( key != null ) {
+      final byte[] cached = getCachedPage( cache, key, acceptedPage );
+      if ( cached != null ) {
+        write( outputStream, cached );
+        return 0;
+      }
+    }
+
     //TODO listener for async mode
     if ( proc == null ) {
       proc = create( report, yieldRate );
@@ -70,7 +117,49 @@ public class PNGOutput implements ReportOutputHandler {
       return -1;
     }
 
-    final BufferedImage image = createImage( proc.getPageFormat( acceptedPage ) );
+    final byte[] data = encode( draw( acceptedPage, scale ), compressionLevel );
+    if ( key != null ) {
+      cache.put( key + "-" + acceptedPage, new ReportContentImpl( pageCount,
+        Collections.singletonMap( acceptedPage, data ) ) );
+    }
+    write( outputStream, data );
+
+    if ( key != null ) {
+      encodeAhead( cache, key, acceptedPage + 1, Math.min( pageCount, acceptedPage + getEncodePages( configuration ) ),
+        pageCount, scale, compressionLevel );
+    }
+    return 0;
+  }
+
+  /**
+   * Renders the given pages and hands them to the encoder pool without waiting for it. Drawing uses the processor and
+   * stays on the calling thread.
+   */
+  private void encodeAhead( final IReportContentCache cache, final String key, final int startPage, final int endPage,
+                            final int pageCount, final double scale, final int compressionLevel ) {
+    for ( int page = startPage; page < endPage; page++ ) {
+      if ( getCachedPage( cache, key, page ) != null ) {
+        continue;
+      }
+      final int encodedPage = page;
+      try {
+        final BufferedImage image = draw( page, scale );
+        getEncoders().execute( () -> cache.put( key + "-" + encodedPage, new ReportContentImpl( pageCount,
+          Collections.singletonMap( encodedPage, encode( image, compressionLevel ) ) ) ) );
+      } catch ( final RuntimeException e ) {
+        // the requested page is written already
+        logger.debug( "Unable to encode PNG page ahead: " + page, e );
+        return;
+      }
+    }
+  }
+
+  static int getEncodePages( final Configuration configuration ) {
+    return Math.max( 1, Math.min( MAX_ENCODE_PAGES, getIntProperty( configuration, ENCODE_PAGES_CONFIG, 1 ) ) );
+  }
+
+  private BufferedImage draw( final int page, final double scale ) {
+    final BufferedImage image = createImage( proc.getPageFormat( page ), scale );
 
     final Rectangle rect = new Rectangle( 0, 0, image.getWidth(), image.getHeight() );
     // prepare the image by filling it ...
@@ -78,19 +167,27 @@ public class PNGOutput implements ReportOutputHandler {
     g2.setPaint( Color.white );
     g2.fill( rect );
 
-
-    final PageDrawable pageDrawable = proc.getPageDrawable( acceptedPage );
-    pageDrawable.draw( g2, rect );
+    final PageDrawable pageDrawable = proc.getPageDrawable( page );
+    if ( scale == 1 ) {
+      pageDrawable.draw( g2, rect );
+    } else {
+      g2.scale( scale, scale );
+      pageDrawable.draw( g2, new Rectangle2D.Double( 0, 0, image.getWidth() / scale, image.getHeight() / scale ) );
+    }
     g2.dispose();
+    return image;
+  }
 
+  private static byte[] encode( final BufferedImage image, final int compressionLevel ) {
     // convert to PNG ...
-    final PngEncoder encoder = new PngEncoder( image, true, 0, 9 );
-    final byte[] data = encoder.pngEncode();
+    final PngEncoder encoder = new PngEncoder( image, true, 0, compressionLevel );
+    return encoder.pngEncode();
+  }
 
+  private static void write( final OutputStream outputStream, final byte[] data ) throws IOException {
     outputStream.write( data );
     outputStream.flush();
     outputStream.close();
-    return 0;
   }
 
   private PrintReportProcessor create( final MasterReport report, final int yieldRate )
@@ -102,16 +199,69 @@ public class PNGOutput implements ReportOutputHandler {
     return proc;
   }
 
+  private static IReportContentCache getCache() {
+    final IPluginCacheManager cacheManager = PentahoSystem.get( IPluginCacheManager.class );
+    return cacheManager == null ? null : cacheManager.getCache();
+  }
+
+  private static String getCacheKey( final MasterReport report, final double scale, final int compressionLevel ) {
+    try {
+      return CachingPageableHTMLOutput.createKey( report,
+        new ArrayList<>( Arrays.asList( "png", String.valueOf( scale ), String.valueOf( compressionLevel ) ) ) );
+    } catch ( final CachingPageableHTMLOutput.CacheKeyException e ) {
+      logger.debug( "Can't compute PNG cache key, rendering without cache", e );
+      return null;
+    }
+  }
+
+  private static byte[] getCachedPage( final IReportContentCache cache, final String key, final int page ) {
+    final IReportContent content = cache.get( key + "-" + page );
+    return content == null ? null : content.getPageData( page );
+  }
+
+  private static double getScale( final Configuration configuration ) {
+    final String value = configuration.getConfigProperty( SCALE_CONFIG );
+    if ( value != null ) {
+      try {
+        final double scale = Double.parseDouble( value.trim() );
+        if ( scale > 0 ) {
+          return scale;
+        }
+      } catch ( final NumberFormatException e ) {
+        logger.debug( "Invalid " + SCALE_CONFIG + ": " + value );
+      }
+    }
+    return 1;
+  }
+
+  private static int getIntProperty( final Configuration configuration, final String name, final int defaultValue ) {
+    final String value = configuration.getConfigProperty( name );
+    if ( value != null ) {
+      try {
+        return Integer.parseInt( value.trim() );
+      } catch ( final NumberFormatException e ) {
+        logger.debug( "Invalid " + name + ": " + value );
+      }
+    }
+    return defaultValue;
+  }
+
+  private static ExecutorService getEncoders() {
+    return DaemonThreadFactory.getSharedPool( "PentahoReporting PNG Encoder", Runtime.getRuntime().availableProcessors(),
+      Thread.NORM_PRIORITY );
+  }
+
   /**
    * Create the empty image for the given page size.
    *
    * @return the generated image.
    */
-  private static BufferedImage createImage( final PageFormat pf ) {
+  private static BufferedImage createImage( final PageFormat pf, final double scale ) {
     // in this simple case we know, that all pages have the same size..
-    final double width = pf.getWidth();
-    final double height = pf.getHeight();
+    final double width = pf.getWidth() * scale;
+    final double height = pf.getHeight() * scale;
     // write the report to the temp file
-    return new BufferedImage( (int) width, (int) height, BufferedImage.TYPE_BYTE_INDEXED );
+    return new BufferedImage( Math.max( 1, (int) width ), Math.max( 1, (int) height ),
+      BufferedImage.TYPE_BYTE_INDEXED );
   }
 }
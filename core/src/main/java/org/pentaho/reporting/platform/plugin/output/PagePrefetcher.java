@@ -0,0 +1,153 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+import org.pentaho.reporting.platform.plugin.DaemonThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Renders the pages following the one a user is viewing in the background, so paging forward through a pageable
+ * HTML report is served from memory. Pages are rendered one at a time while holding the report lock on a low priority
+ * pool. A prefetch stops after the page in progress when a request for the report comes in, and a new window drops
+ * the pages outside of it, so at most the configured number of pages is kept per report instance.
+ */
+class PagePrefetcher {
+  static final String PREFETCH_PAGES_CONFIG = "org.pentaho.reporting.platform.plugin.output.PrefetchHtmlPages";
+
+  private static final Log logger = LogFactory.getLog( PagePrefetcher.class );
+
+
+  interface PageRenderer {
+    /**
+     * Renders a single page, called while holding the report lock.
+     *
+     * @param page zero based page
+     * @return page content or null if the report can't be rendered anymore
+     */
+    byte[] render( int page ) throws Exception;
+  }
+
+  private final Object reportLock;
+  private final PageRenderer renderer;
+  private final Map<Integer, byte[]> pages = new HashMap<>();
+  private Task task;
+
+  PagePrefetcher( final Object reportLock, final PageRenderer renderer ) {
+    this.reportLock = reportLock;
+    this.renderer = renderer;
+  }
+
+  static int getPrefetchPages( final Configuration configuration ) {
+    final String value = configuration.getConfigProperty( PREFETCH_PAGES_CONFIG );
+    if ( value != null ) {
+      try {
+        return Math.max( 0, Integer.parseInt( value.trim() ) );
+      } catch ( final NumberFormatException e ) {
+        logger.debug( "Invalid " + PREFETCH_PAGES_CONFIG + ": " + value );
+      }
+    }
+    return 0;
+  }
+
+  synchronized byte[] getPage( final int page ) {
+    return pages.get( page );
+  }
+
+  /**
+   * Prefetches the pages from firstPage (inclusive) to endPage (exclusive). Pages of the range that are already
+   * rendered are kept, all others are dropped.
+   */
+  synchronized void prefetch( final int firstPage, final int endPage ) {
+    stop();
+    pages.keySet().removeIf( page -> page < firstPage || page >= endPage );
+    if ( firstPage >= endPage ) {
+      task = null;
+      return;
+    }
+    task = new Task( firstPage, endPage );
+    task.future = getPool().submit( OutputUtils.inSessionContext( task ) );
+  }
+
+  /**
+   * Stops the prefetch after the page in progress, the pages rendered so far are kept.
+   */
+  synchronized void stop() {
+    if ( task != null ) {
+      task.stopped = true;
+      task.future.cancel( false );
+    }
+  }
+
+  synchronized void clear() {
+    stop();
+    task = null;
+    pages.clear();
+  }
+
+  private synchronized boolean isPending( final Task owner, final int page ) {
+    return task == owner && !owner.stopped && !pages.containsKey( page );
+  }
+
+  private synchronized void store( final Task owner, final int page, final byte[] data ) {
+    // a newer window or clear() makes the page obsolete
+    if ( task == owner ) {
+      pages.put( page, data );
+    }
+  }
+
+  private class Task implements Callable<Void> {
+    private final int firstPage;
+    private final int endPage;
+    private volatile boolean stopped;
+    private Future<?> future;
+
+    private Task( final int firstPage, final int endPage ) {
+      this.firstPage = firstPage;
+      this.endPage = endPage;
+    }
+
+    public Void call() {
+      try {
+        for ( int page = firstPage; page < endPage && !stopped; page++ ) {
+          synchronized ( reportLock ) {
+            if ( !isPending( this, page ) ) {
+              continue;
+            }
+            final byte[] data = renderer.render( page );
+            if ( data == null ) {
+              return null;
+            }
+            store( this, page, data );
+          }
+        }
+      } catch ( final Exception e ) {
+        logger.debug( "Prefetching pages " + firstPage + " to " + endPage + " failed", e );
+      }
+      return null;
+    }
+  }
+
+  private static ExecutorService getPool() {
+    return DaemonThreadFactory.getSharedPool( "PentahoReporting HTML Prefetch",
+      Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ), Thread.MIN_PRIORITY );
+  }
+}
@@ -44,6 +44,7 @@ import org.pentaho.reporting.platform.plugin.messages.Messages;
 import org.pentaho.reporting.platform.plugin.repository.PentahoNameGenerator;
 import org.pentaho.reporting.platform.plugin.repository.PentahoURLRewriter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -56,11 +57,16 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
   private ProxyOutputStream proxyOutputStream;
   private PageableReportProcessor proc;
   private AllItemsHtmlPrinter printer;
+  private PagePrefetcher prefetcher;
 
   public PageableHTMLOutput() {
   }
 
   public Object getReportLock() {
+    // a request for the report must not wait for the pages prefetched in the background
+    if ( prefetcher != null ) {
+      prefetcher.stop();
+    }
     return this;
   }
 
@@ -189,6 +195,15 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
       proc.addReportProgressListener( listener );
     }
 
+    if ( singlePageRequested && !asyncMode && prefetcher != null ) {
+      final byte[] pageData = prefetcher.getPage( acceptedPage );
+      if ( pageData != null ) {
+        outputStream.write( pageData );
+        outputStream.flush();
+        return completePage( report, acceptedPage, listener );
+      }
+    }
+
     final PageableHtmlOutputProcessor outputProcessor = (PageableHtmlOutputProcessor) proc.getOutputProcessor();
 
     //Async mode also needs all pages
@@ -204,10 +219,7 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
         proxyOutputStream.setParent( outputStream );
         reinitOutputTarget();
         proc.processReport();
-        if ( listener != null ) {
-          listener.setIsQueryLimitReached( proc.isQueryLimitReached() );
-        }
-        return proc.getLogicalPageCount();
+        return completePage( report, acceptedPage, listener );
       } else {
         final Repository repository = reinitOutputTargetRepo();
         proc.processReport();
@@ -243,6 +255,56 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
     }
   }
 
+  /**
+   * Finishes a request served by the processor, whether the page was rendered now or taken from the prefetched pages.
+   */
+  private int completePage( final MasterReport report, final int acceptedPage, final IAsyncReportListener listener ) {
+    if ( listener != null ) {
+      listener.setIsQueryLimitReached( proc.isQueryLimitReached() );
+    }
+    if ( acceptedPage >= 0 ) {
+      prefetch( report, acceptedPage );
+    }
+    return proc.getLogicalPageCount();
+  }
+
+  /**
+   * Starts rendering the pages after the served one in the background, as configured with PrefetchHtmlPages. The pages
+   * are only of use when this output handler is kept in the report cache between requests.
+   */
+  private void prefetch( final MasterReport report, final int acceptedPage ) {
+    final int prefetchPages = PagePrefetcher.getPrefetchPages( report.getConfiguration() );
+    if ( prefetchPages <= 0 ) {
+      if ( prefetcher != null ) {
+        prefetcher.clear();
+      }
+      return;
+    }
+    if ( prefetcher == null ) {
+      prefetcher = new PagePrefetcher( this, this::renderPage );
+    }
+    prefetcher.prefetch( acceptedPage + 1, Math.min( proc.getLogicalPageCount(), acceptedPage + 1 + prefetchPages ) );
+  }
+
+  private byte[] renderPage( final int page ) throws ReportProcessingException, ContentIOException {
+    if ( proc == null || proxyOutputStream == null ) {
+      return null;
+    }
+    final PageableHtmlOutputProcessor outputProcessor = (PageableHtmlOutputProcessor) proc.getOutputProcessor();
+    outputProcessor.setFlowSelector( new SinglePageFlowSelector( page ) );
+    final ByteArrayOutputStream pageData = new ByteArrayOutputStream();
+    proxyOutputStream.setParent( pageData );
+    try {
+      reinitOutputTarget();
+      proc.processReport();
+    } finally {
+      proxyOutputStream.setParent( null );
+      printer.setContentWriter( null, null );
+      printer.setDataWriter( null, null );
+    }
+    return pageData.toByteArray();
+  }
+
   protected boolean isForceAllPages( final MasterReport report ) {
     return "true".equals( report.getConfiguration().getConfigProperty( PentahoPlatformModule.FORCE_ALL_PAGES ) );
   }
@@ -252,6 +314,9 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
   }
 
   public void close() {
+    if ( prefetcher != null ) {
+      prefetcher.clear();
+    }
     if ( proc != null ) {
       proc.close();
       proxyOutputStream = null;
@@ -13,10 +13,10 @@
 
 package org.pentaho.reporting.platform.plugin.output;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.text.StrSubstitutor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IApplicationContext;
@@ -29,7 +29,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,30 +44,44 @@ class PaginationControlWrapper {
   private static final Pattern CSS = Pattern.compile( "(.*link.*\\/getImage\\?image=)(.*)(\".*)" );
   private static final Pattern IMG = Pattern.compile( "(.*img.*src=\")(http.+)(\\/getImage\\?image=)(.*)(\".*)" );
 
-  private static String pageableHtml;
+  private static final String PAGES_PLACEHOLDER = "${pages}";
+  private static final byte[] PAGE_SEPARATOR = ", \n".getBytes( StandardCharsets.US_ASCII );
 
-  public static void write( final OutputStream stream, final IReportContent content ) throws IOException {
-
-    final StringBuilder builder = new StringBuilder();
+  // template parts before and after the pages
+  private static String pageableHtmlHead;
+  private static String pageableHtmlTail;
 
+  /**
+   * Writes the pagination template with the pages of the content. Pages are processed and encoded one at a time
+   * straight to the stream, so only a single page is held in memory besides the content itself.
+   */
+  public static void write( final OutputStream stream, final IReportContent content ) throws IOException {
+    final String head;
+    final String tail;
     synchronized ( TEMPLATE_PATH ) {
-      if ( StringUtil.isEmpty( pageableHtml ) ) {
-        pageableHtml = getSolutionDirFileContent( TEMPLATE_PATH );
+      if ( StringUtil.isEmpty( pageableHtmlHead ) ) {
+        final String pageableHtml = getSolutionDirFileContent( TEMPLATE_PATH );
+        final int placeholder = pageableHtml.indexOf( PAGES_PLACEHOLDER );
+        if ( placeholder < 0 ) {
+          pageableHtmlHead = pageableHtml;
+          pageableHtmlTail = "";
+        } else {
+          pageableHtmlHead = pageableHtml.substring( 0, placeholder );
+          pageableHtmlTail = pageableHtml.substring( placeholder + PAGES_PLACEHOLDER.length() );
+        }
       }
+      head = pageableHtmlHead;
+      tail = pageableHtmlTail;
     }
 
-    final String pages = getPageArray( content, builder );
-
-    final StrSubstitutor substitutor = new StrSubstitutor( Collections.singletonMap( "pages", pages ) );
-    final String filledTemplate = substitutor.replace( pageableHtml );
-
-    stream.write( filledTemplate.getBytes() );
+    stream.write( head.getBytes() );
+    writePageArray( content, stream );
+    stream.write( tail.getBytes() );
     stream.flush();
-
   }
 
-  private static String getPageArray( final IReportContent content, final StringBuilder builder ) throws IOException {
-    builder.append( "var pages = [ " );
+  private static void writePageArray( final IReportContent content, final OutputStream stream ) throws IOException {
+    stream.write( "var pages = [ ".getBytes( StandardCharsets.US_ASCII ) );
     int index = 0;
     byte[] page = content.getPageData( index );
     while ( page != null ) {
@@ -79,17 +93,18 @@ class PaginationControlWrapper {
         //Can't embed, let's not fail and at least make it usable inside the platform
         logger.error( "Can't embed styles and images into scheduled HTML file: ", e );
       }
-      builder.append( '\'' )
-        .append( Base64.encodeBase64String( StringEscapeUtils.escapeHtml( pageContent ).getBytes( "UTF-8" ) ) )
-        .append( '\'' )
-        .append( ", \n" );
+      if ( index > 0 ) {
+        stream.write( PAGE_SEPARATOR );
+      }
+      stream.write( '\'' );
+      try ( OutputStream base64 = new Base64OutputStream( CloseShieldOutputStream.wrap( stream ), true, 0, null ) ) {
+        base64.write( StringEscapeUtils.escapeHtml( pageContent ).getBytes( "UTF-8" ) );
+      }
+      stream.write( '\'' );
       index++;
       page = content.getPageData( index );
     }
-    //don't need comma in the end
-    builder.setLength( builder.length() - 3 );
-    builder.append( " ];\n" );
-    return builder.toString();
+    stream.write( " ];\n".getBytes( StandardCharsets.US_ASCII ) );
   }
 
   private static String embedCss( String pageContent ) throws IOException {
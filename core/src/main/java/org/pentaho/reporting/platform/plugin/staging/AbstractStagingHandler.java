@@ -21,6 +21,11 @@ import java.io.OutputStream;
 
 public abstract class AbstractStagingHandler implements StagingHandler {
 
+  /**
+   * Name of the memory-then-file staging mode, which {@link StagingMode} does not know.
+   */
+  public static final String HYBRID = "HYBRID";
+
   protected OutputStream outputStream;
   protected IPentahoSession userSession;
 
@@ -45,5 +50,23 @@ public abstract class AbstractStagingHandler implements StagingHandler {
     }
   }
 
+  /**
+   * Factory method accepting the staging mode by name, including {@link #HYBRID}. Unknown names stage THRU.
+   */
+  public static StagingHandler getStagingHandlerImpl( final OutputStream outputStream,
+                                                      final IPentahoSession userSession, final String mode )
+    throws IOException {
+    if ( HYBRID.equalsIgnoreCase( mode ) ) {
+      return new HybridStagingHandler( outputStream, userSession );
+    }
+    StagingMode stagingMode;
+    try {
+      stagingMode = StagingMode.valueOf( String.valueOf( mode ).toUpperCase() );
+    } catch ( final IllegalArgumentException e ) {
+      stagingMode = StagingMode.THRU;
+    }
+    return getStagingHandlerImpl( outputStream, userSession, stagingMode );
+  }
+
   protected abstract void initialize() throws IOException;
 }
@@ -14,6 +14,7 @@
 package org.pentaho.reporting.platform.plugin.staging;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IApplicationContext;
@@ -21,9 +22,11 @@ import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.util.UUIDUtil;
+import org.pentaho.reporting.platform.plugin.TrackingOutputStream;
 import org.pentaho.reporting.libraries.base.util.ArgumentNullException;
 import org.pentaho.platform.api.util.ITempFileDeleter;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,6 +35,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -50,15 +54,27 @@ public class AsyncJobFileStagingHandler {
 
   private String sessionId;
 
-  private OutputStream fileTrackingStream;
+  private CompressibleOutputStream fileTrackingStream;
 
   // package private for testing purpose
   File tmpFile;
 
   private String stringParentDir = null;
 
+  private final boolean durable;
+
   public AsyncJobFileStagingHandler( final IPentahoSession userSession ) throws IOException {
+    this( userSession, false );
+  }
+
+  /**
+   * @param userSession owner session
+   * @param durable     true if the staged content has to outlive the session and the JVM, because a job journal
+   *                    re-attaches it after restart. The file is not handed to the session temp file deleter then.
+   */
+  public AsyncJobFileStagingHandler( final IPentahoSession userSession, final boolean durable ) throws IOException {
     this.sessionId = userSession.getId();
+    this.durable = durable;
 
     final IApplicationContext context = PentahoSystem.getApplicationContext();
     stringParentDir = context == null ? null : context.getSolutionPath( "system/tmp" );
@@ -82,18 +98,21 @@ public class AsyncJobFileStagingHandler {
     }
     final Path tempFilePath = stagingExecutionFolder.resolve( UUIDUtil.getUUIDAsString() + POSTFIX );
     tmpFile = tempFilePath.toFile();
-    final IPentahoSession session = PentahoSessionHolder.getSession();
-    ITempFileDeleter deleter = null;
-    if ( session != null ) {
-      deleter = (ITempFileDeleter) session.getAttribute( ITempFileDeleter.DELETER_SESSION_VARIABLE );
-    }
-    if ( deleter != null ) {
-      deleter.trackTempFile( tmpFile );
-    } else {
-      tmpFile.deleteOnExit();
+    if ( !durable ) {
+      final IPentahoSession session = PentahoSessionHolder.getSession();
+      ITempFileDeleter deleter = null;
+      if ( session != null ) {
+        deleter = (ITempFileDeleter) session.getAttribute( ITempFileDeleter.DELETER_SESSION_VARIABLE );
+      }
+      if ( deleter != null ) {
+        deleter.trackTempFile( tmpFile );
+      } else {
+        tmpFile.deleteOnExit();
+      }
     }
 
-    fileTrackingStream = new BufferedOutputStream( new FileOutputStream( tmpFile ) );
+    fileTrackingStream =
+      new CompressibleOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
   }
 
   private Path getStagingExecutionFolder( final String userSession ) {
@@ -110,8 +129,50 @@ public class AsyncJobFileStagingHandler {
     return fileTrackingStream;
   }
 
-  public IFixedSizeStreamingContent getStagingContent() throws FileNotFoundException {
-    return new FixedSizeStagingContent( tmpFile );
+  public Path getStagingPath() {
+    return tmpFile == null ? null : tmpFile.toPath();
+  }
+
+  /**
+   * Compresses the staged content, see {@link StagingCompression}. Only possible before anything was written;
+   * compressed content can't be read while it is written.
+   *
+   * @return true if the content is compressed
+   */
+  public boolean compress() throws IOException {
+    return fileTrackingStream.compress();
+  }
+
+  public boolean isCompressed() {
+    return fileTrackingStream.isCompressed();
+  }
+
+  /**
+   * Stages a copy of content staged by another job instead of generating it. The copy is a hard link where the file
+   * system supports it, so cleaning either content doesn't affect the other.
+   *
+   * @param source staged content of a finished job
+   */
+  public void stageCopyOf( final Path source ) throws IOException {
+    ArgumentNullException.validate( "source", source );
+    fileTrackingStream.close();
+    final Path target = tmpFile.toPath();
+    Files.deleteIfExists( target );
+    try {
+      Files.createLink( target, source );
+    } catch ( final IOException | UnsupportedOperationException e ) {
+      logger.debug( "Unable to link staged content, copying it: " + source );
+      Files.copy( source, target );
+    }
+  }
+
+  public IFixedSizeStreamingContent getStagingContent() throws IOException {
+    if ( fileTrackingStream.isCompressed() ) {
+      // the gzip trailer is written on close
+      fileTrackingStream.close();
+      return new FixedSizeStagingContent( tmpFile, true, fileTrackingStream.getUncompressedSize() );
+    }
+    return new FixedSizeStagingContent( tmpFile, false, -1 );
   }
 
   public static void cleanSession( final IPentahoSession session ) {
@@ -154,23 +215,103 @@ public class AsyncJobFileStagingHandler {
     }
   }
 
+  /**
+   * Staging stream that can switch to compressed output until the first write. Writes are synchronized so the
+   * switch can't interleave with the report thread.
+   */
+  private static final class CompressibleOutputStream extends OutputStream {
+
+    private OutputStream delegate;
+    private TrackingOutputStream compressed;
+    private boolean written;
+    private boolean closed;
+
+    private CompressibleOutputStream( final OutputStream delegate ) {
+      this.delegate = delegate;
+    }
+
+    synchronized boolean compress() throws IOException {
+      if ( compressed != null ) {
+        return true;
+      }
+      if ( closed || written ) {
+        return false;
+      }
+      compressed = new TrackingOutputStream( StagingCompression.compress( delegate ) );
+      delegate = compressed;
+      return true;
+    }
+
+    synchronized boolean isCompressed() {
+      return compressed != null;
+    }
+
+    synchronized long getUncompressedSize() {
+      return compressed == null ? -1 : compressed.getTrackingSize();
+    }
+
+    @Override public synchronized void write( final int b ) throws IOException {
+      written = true;
+      delegate.write( b );
+    }
+
+    @Override public synchronized void write( final byte[] b, final int off, final int len ) throws IOException {
+      written = true;
+      delegate.write( b, off, len );
+    }
+
+    @Override public synchronized void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override public synchronized void close() throws IOException {
+      if ( !closed ) {
+        closed = true;
+        delegate.close();
+      }
+    }
+  }
+
   public static final class FixedSizeStagingContent implements IFixedSizeStreamingContent {
 
     private InputStream in;
-    private long size;
+    private final long size;
+    private final boolean compressed;
     File tmpFile;
 
     public FixedSizeStagingContent( File tmpFile ) {
-      this.size = tmpFile.length();
+      this( tmpFile, false, -1 );
+    }
+
+    /**
+     * @param compressed       true if the file is gzip compressed, see {@link StagingCompression}
+     * @param uncompressedSize size of the content once decompressed, only used for compressed files
+     */
+    public FixedSizeStagingContent( final File tmpFile, final boolean compressed, final long uncompressedSize ) {
+      if ( compressed && uncompressedSize < 0 ) {
+        throw new IllegalArgumentException( "Uncompressed size of compressed staging content is required" );
+      }
+      this.compressed = compressed;
+      this.size = compressed ? uncompressedSize : tmpFile.length();
       this.tmpFile = tmpFile;
     }
 
+    /**
+     * Stream of the content, compressed content is decompressed.
+     */
     @Override public InputStream getStream() {
       FileInputStream stagingInputStream = null;
       try {
         stagingInputStream = new FileInputStream( tmpFile );
+        if ( compressed ) {
+          return StagingCompression.decompress( new BufferedInputStream( stagingInputStream ) );
+        }
       } catch ( FileNotFoundException e ) {
         logger.error( "staging file not found: " + tmpFile.toPath().toString() );
+      } catch ( IOException e ) {
+        logger.error( "staging file is not readable: " + tmpFile.toPath().toString() );
+        IOUtils.closeQuietly( stagingInputStream );
+        return null;
       }
       return stagingInputStream;
     }
@@ -179,6 +320,33 @@ public class AsyncJobFileStagingHandler {
       return size;
     }
 
+    @Override public long writeTo( final OutputStream outputStream ) throws IOException {
+      if ( compressed ) {
+        return IFixedSizeStreamingContent.super.writeTo( outputStream );
+      }
+      return StagingFileTransfer.transfer( tmpFile.toPath(), outputStream );
+    }
+
+    @Override public long writeTo( final OutputStream outputStream, final long position, final long length )
+      throws IOException {
+      if ( compressed ) {
+        return IFixedSizeStreamingContent.super.writeTo( outputStream, position, length );
+      }
+      return StagingFileTransfer.transfer( tmpFile.toPath(), position, length, outputStream );
+    }
+
+    @Override public String getContentEncoding() {
+      return compressed ? StagingCompression.GZIP : null;
+    }
+
+    @Override public long getEncodedSize() {
+      return tmpFile.length();
+    }
+
+    @Override public long writeEncodedTo( final OutputStream outputStream ) throws IOException {
+      return StagingFileTransfer.transfer( tmpFile.toPath(), outputStream );
+    }
+
     @Override public boolean cleanContent() {
       return tmpFile.delete();
     }
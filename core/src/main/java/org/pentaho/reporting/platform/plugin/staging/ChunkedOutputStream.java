@@ -0,0 +1,108 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory stream backed by pooled segments. Content is written out segment by segment, without consolidating it
+ * into one array. Closing the stream returns the segments to the pool.
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+  private final StagingBufferPool pool;
+  private final List<byte[]> segments = new ArrayList<>();
+  private byte[] current;
+  private int position;
+  private long size;
+  private boolean closed;
+
+  ChunkedOutputStream( final StagingBufferPool pool ) {
+    this.pool = pool;
+  }
+
+  @Override public void write( final int b ) throws IOException {
+    ensureSegment();
+    current[ position++ ] = (byte) b;
+    size++;
+  }
+
+  @Override public void write( final byte[] b, final int off, final int len ) throws IOException {
+    if ( off < 0 || len < 0 || off + len > b.length ) {
+      throw new IndexOutOfBoundsException();
+    }
+    int offset = off;
+    int remaining = len;
+    while ( remaining > 0 ) {
+      ensureSegment();
+      final int count = Math.min( remaining, current.length - position );
+      System.arraycopy( b, offset, current, position, count );
+      position += count;
+      offset += count;
+      remaining -= count;
+      size += count;
+    }
+  }
+
+  private void ensureSegment() throws IOException {
+    if ( closed ) {
+      throw new IOException( "Stream closed" );
+    }
+    if ( current == null || position == current.length ) {
+      current = pool.acquire();
+      segments.add( current );
+      position = 0;
+    }
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Writes the content to the given stream, the content stays available.
+   */
+  public void writeTo( final OutputStream out ) throws IOException {
+    if ( closed ) {
+      throw new IOException( "Stream closed" );
+    }
+    final int last = segments.size() - 1;
+    for ( int i = 0; i < last; i++ ) {
+      final byte[] segment = segments.get( i );
+      out.write( segment, 0, segment.length );
+    }
+    if ( last >= 0 ) {
+      out.write( segments.get( last ), 0, position );
+    }
+    out.flush();
+  }
+
+  /**
+   * Returns the segments to the pool, the content is gone.
+   */
+  @Override public void close() {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    for ( final byte[] segment : segments ) {
+      pool.release( segment );
+    }
+    segments.clear();
+    current = null;
+  }
+}
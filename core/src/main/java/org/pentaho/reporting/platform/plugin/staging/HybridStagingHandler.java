@@ -0,0 +1,174 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+import org.pentaho.reporting.platform.plugin.TrackingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffers content in pooled memory segments up to a threshold and spills it to a temp file beyond,
+ * so small outputs don't pay disk I/O and large ones don't exhaust the heap.
+ * The threshold in bytes is read from the report-staging-memory-threshold system setting.
+ */
+public class HybridStagingHandler extends AbstractStagingHandler {
+
+  private static final Log logger = LogFactory.getLog( HybridStagingHandler.class );
+
+  public static final String THRESHOLD_SETTING = "report-staging-memory-threshold";
+  public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+  private static String PREFIX = "repstg";
+  private static String POSTFIX = ".tmp";
+
+  private final int threshold;
+  private TrackingOutputStream trackingStream;
+  private SpillingOutputStream spillingStream;
+
+  public HybridStagingHandler( final OutputStream outputStream, final IPentahoSession userSession )
+    throws IOException {
+    this( outputStream, userSession, getDefaultThreshold() );
+  }
+
+  public HybridStagingHandler( final OutputStream outputStream, final IPentahoSession userSession,
+                               final int threshold ) throws IOException {
+    super( outputStream, userSession );
+    this.threshold = threshold;
+  }
+
+  static int getDefaultThreshold() {
+    final String value = PentahoSystem.getSystemSetting( THRESHOLD_SETTING, null );
+    if ( value != null ) {
+      try {
+        return Integer.parseInt( value.trim() );
+      } catch ( final NumberFormatException e ) {
+        logger.debug( "Invalid " + THRESHOLD_SETTING + ": " + value );
+      }
+    }
+    return DEFAULT_THRESHOLD;
+  }
+
+  @Override
+  protected void initialize() throws IOException {
+    logger.trace( "Staging mode set - HYBRID" );
+    // the threshold is assigned after initialize, the spilling stream reads it on write
+    spillingStream = new SpillingOutputStream();
+    trackingStream = new TrackingOutputStream( spillingStream );
+  }
+
+  /**
+   * Write from memory or temp file to destination output stream
+   *
+   * @throws IOException
+   */
+  @Override
+  public void complete() throws IOException {
+    if ( spillingStream.tmpFile == null ) {
+      spillingStream.memory.writeTo( outputStream );
+    } else {
+      IOUtils.closeQuietly( trackingStream );
+      StagingFileTransfer.transfer( spillingStream.tmpFile.toPath(), outputStream );
+    }
+  }
+
+  @Override
+  public void close() {
+    IOUtils.closeQuietly( trackingStream );
+    spillingStream.memory.close();
+    final File tmpFile = spillingStream.tmpFile;
+    if ( tmpFile != null && tmpFile.exists() && !tmpFile.delete() ) {
+      logger.debug( "Unable to delete temp file for user: " + userSession.getName() );
+    }
+  }
+
+  // same-package junit test access
+  File getTmpFile() {
+    return spillingStream.tmpFile;
+  }
+
+  @Override public long getWrittenByteCount() {
+    return trackingStream.getTrackingSize();
+  }
+
+  @Override
+  public boolean canSendHeaders() {
+    return true;
+  }
+
+  @Override
+  public OutputStream getStagingOutputStream() {
+    return trackingStream;
+  }
+
+  @Override
+  public boolean isFullyBuffered() {
+    return true;
+  }
+
+  /**
+   * @return MEMORY while content fits under the threshold, TMPFILE once it was spilled
+   */
+  @Override
+  public StagingMode getStagingMode() {
+    return spillingStream.tmpFile == null ? StagingMode.MEMORY : StagingMode.TMPFILE;
+  }
+
+  private class SpillingOutputStream extends OutputStream {
+    private final ChunkedOutputStream memory = StagingBufferPool.getInstance().newStream();
+    private OutputStream target = memory;
+    private File tmpFile;
+
+    @Override public void write( final int b ) throws IOException {
+      ensureCapacity( 1 );
+      target.write( b );
+    }
+
+    @Override public void write( final byte[] b, final int off, final int len ) throws IOException {
+      ensureCapacity( len );
+      target.write( b, off, len );
+    }
+
+    private void ensureCapacity( final int len ) throws IOException {
+      if ( tmpFile != null || memory.size() + (long) len <= threshold ) {
+        return;
+      }
+      logger.trace( "Staged content exceeds " + threshold + " bytes, spilling to temp file" );
+      final IApplicationContext appCtx = PentahoSystem.getApplicationContext();
+      // Use the deleter framework for safety...
+      tmpFile = appCtx.createTempFile( userSession, PREFIX, POSTFIX, true );
+      target = new BufferedOutputStream( new FileOutputStream( tmpFile ) );
+      memory.writeTo( target );
+      memory.close();
+    }
+
+    @Override public void flush() throws IOException {
+      target.flush();
+    }
+
+    @Override public void close() throws IOException {
+      target.close();
+    }
+  }
+}
@@ -13,7 +13,11 @@
 
 package org.pentaho.reporting.platform.plugin.staging;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 public interface IFixedSizeStreamingContent {
 
@@ -27,4 +31,50 @@ public interface IFixedSizeStreamingContent {
   long getContentSize();
   boolean cleanContent();
 
+  /**
+   * Writes the whole content to the output stream. Implementations backed by a file may avoid copying through
+   * user-space buffers. The output stream is not closed.
+   *
+   * @return number of bytes written
+   */
+  default long writeTo( final OutputStream outputStream ) throws IOException {
+    try ( InputStream input = getStream() ) {
+      return IOUtils.copyLarge( input, outputStream );
+    }
+  }
+
+  /**
+   * Writes at most length bytes of the content starting at position. The output stream is not closed.
+   *
+   * @return number of bytes written
+   */
+  default long writeTo( final OutputStream outputStream, final long position, final long length ) throws IOException {
+    try ( InputStream input = getStream() ) {
+      return IOUtils.copyLarge( input, outputStream, position, length );
+    }
+  }
+
+  /**
+   * @return content coding of the stored bytes, e.g. gzip, or null if they are stored as is
+   */
+  default String getContentEncoding() {
+    return null;
+  }
+
+  /**
+   * @return number of stored bytes, differs from {@link #getContentSize()} for encoded content
+   */
+  default long getEncodedSize() {
+    return getContentSize();
+  }
+
+  /**
+   * Writes the stored bytes without decoding them. The output stream is not closed.
+   *
+   * @return number of bytes written
+   */
+  default long writeEncodedTo( final OutputStream outputStream ) throws IOException {
+    return writeTo( outputStream );
+  }
+
 }
@@ -13,20 +13,18 @@
 
 package org.pentaho.reporting.platform.plugin.staging;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.reporting.engine.classic.core.util.StagingMode;
-import org.pentaho.reporting.libraries.base.util.MemoryByteArrayOutputStream;
 import org.pentaho.reporting.platform.plugin.TrackingOutputStream;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 /**
  * Memory staging stream, write content directly into memory.
+ * Content is kept in segments of the shared {@link StagingBufferPool}.
  *
  * Created by dima.prokopenko@gmail.com on 2/3/2016.
  */
@@ -44,7 +42,7 @@ public class MemStagingHandler extends AbstractStagingHandler {
   @Override
   protected void initialize() throws IOException {
     logger.trace( "Staging mode set - MEM" );
-    memoryTrackingStream = new TrackingOutputStream( new MemoryByteArrayOutputStream() );
+    memoryTrackingStream = new TrackingOutputStream( StagingBufferPool.getInstance().newStream() );
   }
 
   /**
@@ -55,9 +53,8 @@ public class MemStagingHandler extends AbstractStagingHandler {
    */
   @Override
   public void complete() throws IOException {
-    final MemoryByteArrayOutputStream stream = (MemoryByteArrayOutputStream) memoryTrackingStream.getWrappedStream();
-    final ByteArrayInputStream inputStream = new ByteArrayInputStream( stream.getRaw() );
-    IOUtils.copy( inputStream, outputStream );
+    final ChunkedOutputStream stream = (ChunkedOutputStream) memoryTrackingStream.getWrappedStream();
+    stream.writeTo( outputStream );
   }
 
   @Override
@@ -71,7 +68,7 @@ public class MemStagingHandler extends AbstractStagingHandler {
     }
   }
 
-  @Override public int getWrittenByteCount() {
+  @Override public long getWrittenByteCount() {
     return memoryTrackingStream.getTrackingSize();
   }
 
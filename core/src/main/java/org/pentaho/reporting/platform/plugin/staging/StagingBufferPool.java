@@ -0,0 +1,91 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size byte segments recycled across memory staged requests. Segments are small enough to never be allocated as
+ * humongous objects; released segments are kept for reuse up to a global cap, the rest is left to the garbage
+ * collector.
+ */
+public class StagingBufferPool {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+  public static final int DEFAULT_MAX_POOLED_SEGMENTS = 256;
+
+  private static final StagingBufferPool INSTANCE =
+    new StagingBufferPool( DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_POOLED_SEGMENTS );
+
+  private final int segmentSize;
+  private final int maxPooledSegments;
+  private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  /**
+   * @param segmentSize       size of a segment in bytes
+   * @param maxPooledSegments number of released segments kept for reuse
+   */
+  public StagingBufferPool( final int segmentSize, final int maxPooledSegments ) {
+    if ( segmentSize <= 0 ) {
+      throw new IllegalArgumentException( "segmentSize must be positive" );
+    }
+    this.segmentSize = segmentSize;
+    this.maxPooledSegments = maxPooledSegments;
+  }
+
+  public static StagingBufferPool getInstance() {
+    return INSTANCE;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * @return number of released segments waiting for reuse
+   */
+  public int getPooledSegments() {
+    return pooled.get();
+  }
+
+  /**
+   * @return new empty stream writing into segments of this pool
+   */
+  public ChunkedOutputStream newStream() {
+    return new ChunkedOutputStream( this );
+  }
+
+  byte[] acquire() {
+    final byte[] segment = free.poll();
+    if ( segment == null ) {
+      return new byte[ segmentSize ];
+    }
+    pooled.decrementAndGet();
+    return segment;
+  }
+
+  void release( final byte[] segment ) {
+    if ( segment.length != segmentSize ) {
+      return;
+    }
+    if ( pooled.incrementAndGet() <= maxPooledSegments ) {
+      free.offer( segment );
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip staging of text outputs, enabled with the report-staging-compression system setting. Whoever keeps a staging
+ * file beyond its handler (job journal, shared spool, reused results) keeps its compression flag and uncompressed size
+ * along with it, the file itself is never inspected.
+ */
+public final class StagingCompression {
+
+  public static final String SETTING = "report-staging-compression";
+  public static final String GZIP = "gzip";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final Set<String> COMPRESSIBLE_MIME_TYPES = new HashSet<>( Arrays.asList(
+    SimpleReportingComponent.MIME_TYPE_CSV, SimpleReportingComponent.MIME_TYPE_HTML,
+    SimpleReportingComponent.MIME_TYPE_TXT, SimpleReportingComponent.MIME_TYPE_XML, "text/xml" ) );
+
+  private StagingCompression() {
+  }
+
+  /**
+   * @return true if staging is compressed for the given output
+   */
+  public static boolean isEnabledFor( final String mimeType ) {
+    if ( mimeType == null ) {
+      return false;
+    }
+    final int separator = mimeType.indexOf( ';' );
+    final String type = ( separator < 0 ? mimeType : mimeType.substring( 0, separator ) ).trim();
+    return COMPRESSIBLE_MIME_TYPES.contains( type.toLowerCase( Locale.ROOT ) ) && PentahoSystem.getSystemSettings() != null
+      && Boolean.parseBoolean( PentahoSystem.getSystemSetting( SETTING, "false" ) ); //$NON-NLS-1$
+  }
+
+  public static OutputStream compress( final OutputStream outputStream ) throws IOException {
+    return new GZIPOutputStream( outputStream, BUFFER_SIZE );
+  }
+
+  public static InputStream decompress( final InputStream inputStream ) throws IOException {
+    return new GZIPInputStream( inputStream, BUFFER_SIZE );
+  }
+
+  /**
+   * @return true if the content is staged compressed
+   */
+  public static boolean isCompressed( final IFixedSizeStreamingContent content ) {
+    return content != null && GZIP.equals( content.getContentEncoding() );
+  }
+
+  /**
+   * @param acceptEncoding value of the Accept-Encoding request header
+   * @return true if the client accepts gzip content coding
+   */
+  public static boolean acceptsGzip( final String acceptEncoding ) {
+    if ( acceptEncoding == null ) {
+      return false;
+    }
+    for ( final String coding : acceptEncoding.split( "," ) ) {
+      final String[] parts = coding.split( ";" );
+      final String name = parts[ 0 ].trim();
+      if ( !GZIP.equalsIgnoreCase( name ) && !"x-gzip".equalsIgnoreCase( name ) && !"*".equals( name ) ) {
+        continue;
+      }
+      boolean accepted = true;
+      for ( int i = 1; i < parts.length; i++ ) {
+        final String parameter = parts[ i ].trim();
+        if ( parameter.startsWith( "q=" ) ) {
+          try {
+            accepted = Double.parseDouble( parameter.substring( 2 ) ) > 0;
+          } catch ( final NumberFormatException e ) {
+            accepted = false;
+          }
+        }
+      }
+      if ( accepted ) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
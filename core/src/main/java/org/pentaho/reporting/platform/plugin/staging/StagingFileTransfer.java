@@ -0,0 +1,98 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Copies staged files to output streams. Targets backed by a file channel get the bytes via
+ * {@link FileChannel#transferTo}, so the kernel moves them without a copy to user space. Servlet streams don't expose a
+ * channel, they are fed from large pooled heap buffers instead of per-call buffers, with a single copy from the file
+ * into the buffer.
+ */
+public final class StagingFileTransfer {
+
+  static final int BUFFER_SIZE = 256 * 1024;
+  private static final int MAX_POOLED_BUFFERS = 16;
+  private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>( MAX_POOLED_BUFFERS );
+
+  private StagingFileTransfer() {
+  }
+
+  public static long transfer( final Path file, final OutputStream outputStream ) throws IOException {
+    return transfer( file, 0, Long.MAX_VALUE, outputStream );
+  }
+
+  /**
+   * @param file         staged file
+   * @param position     first byte to transfer
+   * @param length       maximum number of bytes to transfer
+   * @param outputStream target
+   * @return number of bytes transferred
+   */
+  public static long transfer( final Path file, final long position, final long length,
+                               final OutputStream outputStream ) throws IOException {
+    try ( RandomAccessFile source = new RandomAccessFile( file.toFile(), "r" ) ) {
+      final long end = Math.min( source.length(), position + Math.min( length, Long.MAX_VALUE - position ) );
+      if ( outputStream instanceof FileOutputStream ) {
+        final FileChannel channel = source.getChannel();
+        final FileChannel target = ( (FileOutputStream) outputStream ).getChannel();
+        long current = position;
+        while ( current < end ) {
+          final long transferred = channel.transferTo( current, end - current, target );
+          if ( transferred <= 0 ) {
+            // file was truncated under us
+            break;
+          }
+          current += transferred;
+        }
+        return current - position;
+      }
+
+      final byte[] buffer = acquire();
+      try {
+        source.seek( position );
+        long current = position;
+        while ( current < end ) {
+          final int read = source.read( buffer, 0, (int) Math.min( buffer.length, end - current ) );
+          if ( read < 0 ) {
+            break;
+          }
+          outputStream.write( buffer, 0, read );
+          current += read;
+        }
+        return current - position;
+      } finally {
+        release( buffer );
+      }
+    }
+  }
+
+  private static byte[] acquire() {
+    final byte[] buffer = BUFFERS.poll();
+    return buffer == null ? new byte[ BUFFER_SIZE ] : buffer;
+  }
+
+  private static void release( final byte[] buffer ) {
+    // pool is bounded, extra buffers are left to GC
+    BUFFERS.offer( buffer );
+  }
+}
@@ -32,5 +32,5 @@ public interface StagingHandler {
 
   void close();
 
-  int getWrittenByteCount();
+  long getWrittenByteCount();
 }
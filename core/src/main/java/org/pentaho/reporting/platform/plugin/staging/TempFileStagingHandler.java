@@ -25,10 +25,11 @@ import org.pentaho.reporting.platform.plugin.TrackingOutputStream;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 
 /**
  * Write data to FS temp file
@@ -44,6 +45,7 @@ public class TempFileStagingHandler extends AbstractStagingHandler {
   private static String POSTFIX = ".tmp";
 
   private TrackingOutputStream fileTrackingStream;
+  private boolean compressed;
   // same-package junit test access
   File tmpFile;
 
@@ -65,6 +67,32 @@ public class TempFileStagingHandler extends AbstractStagingHandler {
     fileTrackingStream = new TrackingOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
   }
 
+  /**
+   * Compresses the temp file, see {@link StagingCompression}. Only possible before anything was written.
+   *
+   * @return true if the content is compressed
+   */
+  public boolean compress() throws IOException {
+    if ( !compressed && fileTrackingStream.getTrackingSize() == 0 ) {
+      fileTrackingStream =
+        new TrackingOutputStream( StagingCompression.compress( fileTrackingStream.getWrappedStream() ) );
+      compressed = true;
+    }
+    return compressed;
+  }
+
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+  /**
+   * @return size of the temp file, compressed size if the content is compressed
+   */
+  public long getEncodedByteCount() {
+    IOUtils.closeQuietly( fileTrackingStream );
+    return tmpFile.length();
+  }
+
   /**
    * Write from temp file to destination output stream
    *
@@ -73,14 +101,24 @@ public class TempFileStagingHandler extends AbstractStagingHandler {
   @Override
   public void complete() throws IOException {
     IOUtils.closeQuietly( fileTrackingStream );
-    final BufferedInputStream bis = new BufferedInputStream( new FileInputStream( tmpFile ) );
-    try {
-      IOUtils.copy( bis, outputStream );
-    } finally {
-      IOUtils.closeQuietly( bis );
+    if ( compressed ) {
+      try ( InputStream input = StagingCompression.decompress(
+        new BufferedInputStream( Files.newInputStream( tmpFile.toPath() ) ) ) ) {
+        IOUtils.copyLarge( input, outputStream );
+      }
+    } else {
+      StagingFileTransfer.transfer( tmpFile.toPath(), outputStream );
     }
   }
 
+  /**
+   * Write the temp file as is to destination output stream, compressed content stays compressed.
+   */
+  public void completeEncoded() throws IOException {
+    IOUtils.closeQuietly( fileTrackingStream );
+    StagingFileTransfer.transfer( tmpFile.toPath(), outputStream );
+  }
+
   /**
    * Close output stream if not already closed,
    * delete temporary file.
@@ -101,7 +139,7 @@ public class TempFileStagingHandler extends AbstractStagingHandler {
     }
   }
 
-  @Override public int getWrittenByteCount() {
+  @Override public long getWrittenByteCount() {
     return fileTrackingStream.getTrackingSize();
   }
 
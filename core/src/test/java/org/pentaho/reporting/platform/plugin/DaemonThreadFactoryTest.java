@@ -0,0 +1,54 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DaemonThreadFactoryTest {
+
+  @After
+  public void tearDown() {
+    DaemonThreadFactory.shutdownSharedPools();
+  }
+
+  @Test
+  public void testNewThread() {
+    final Thread thread = new DaemonThreadFactory( "Test", Thread.MIN_PRIORITY ).newThread( () -> {
+    } );
+    assertTrue( thread.isDaemon() );
+    assertEquals( "Test", thread.getName() );
+    assertEquals( Thread.MIN_PRIORITY, thread.getPriority() );
+  }
+
+  @Test
+  public void testSharedPoolIsShutDown() throws Exception {
+    final ExecutorService pool = DaemonThreadFactory.getSharedPool( "Test", 1, Thread.NORM_PRIORITY );
+    assertSame( pool, DaemonThreadFactory.getSharedPool( "Test", 1, Thread.NORM_PRIORITY ) );
+    assertTrue( pool.submit( () -> Thread.currentThread().isDaemon() ).get( 5, TimeUnit.SECONDS ) );
+
+    DaemonThreadFactory.shutdownSharedPools();
+    assertTrue( pool.awaitTermination( 5, TimeUnit.SECONDS ) );
+    // used again after a reload
+    assertNotSame( pool, DaemonThreadFactory.getSharedPool( "Test", 1, Thread.NORM_PRIORITY ) );
+  }
+}
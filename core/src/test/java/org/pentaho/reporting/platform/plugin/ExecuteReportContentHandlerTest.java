@@ -37,6 +37,7 @@ import org.pentaho.reporting.engine.classic.core.modules.output.table.html.HtmlT
 import org.pentaho.reporting.engine.classic.core.util.StagingMode;
 import org.pentaho.reporting.libraries.resourceloader.ResourceException;
 import org.pentaho.reporting.platform.plugin.messages.Messages;
+import org.pentaho.reporting.platform.plugin.staging.TempFileStagingHandler;
 import org.pentaho.test.platform.engine.core.SimpleObjectFactory;
 
 import javax.servlet.http.HttpServletResponse;
@@ -52,13 +53,18 @@ import java.util.Properties;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyFloat;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -404,6 +410,27 @@ public class ExecuteReportContentHandlerTest {
     assertEquals( StagingMode.THRU, mode );
   }
 
+  @Test
+  public void testLongContentLength() {
+    ExecuteReportContentHandler.setContentLength( response, 100 );
+    verify( response, times( 1 ) ).setContentLength( 100 );
+
+    ExecuteReportContentHandler.setContentLength( response, 3L * Integer.MAX_VALUE );
+    verify( response, times( 1 ) ).setHeader( "Content-Length", String.valueOf( 3L * Integer.MAX_VALUE ) );
+  }
+
+  @Test
+  public void testHybridStagingFromInputs() {
+    final ExecuteReportContentHandler handler = new ExecuteReportContentHandler( contentGenerator );
+
+    assertFalse( handler.isHybridStaging( inputs, report ) );
+
+    inputs.put( "report-staging-mode", "hybrid" );
+    assertTrue( handler.isHybridStaging( inputs, report ) );
+    // not a StagingMode, so plain staging falls back to the default
+    assertEquals( StagingMode.THRU, handler.getStagingMode( inputs, report ) );
+  }
+
   @AfterClass
   public static void afterClass() {
     PentahoSystem.shutdown();
@@ -675,4 +702,26 @@ public class ExecuteReportContentHandlerTest {
 
     }
   }
+
+  @Test
+  public void testNegotiateEncoding() {
+    final TempFileStagingHandler compressed = mock( TempFileStagingHandler.class );
+    when( compressed.isCompressed() ).thenReturn( true );
+
+    final HttpServletResponse encoded = mock( HttpServletResponse.class );
+    assertSame( compressed, ExecuteReportContentHandler.negotiateEncoding( compressed, encoded, "gzip, deflate" ) );
+    verify( encoded ).setHeader( "Content-Encoding", "gzip" );
+    verify( encoded ).setHeader( "Vary", "Accept-Encoding" );
+
+    // the identity response of compressed staging varies too
+    final HttpServletResponse identity = mock( HttpServletResponse.class );
+    assertNull( ExecuteReportContentHandler.negotiateEncoding( compressed, identity, null ) );
+    verify( identity, never() ).setHeader( eq( "Content-Encoding" ), any() );
+    verify( identity ).setHeader( "Vary", "Accept-Encoding" );
+
+    final TempFileStagingHandler plain = mock( TempFileStagingHandler.class );
+    final HttpServletResponse uncompressed = mock( HttpServletResponse.class );
+    assertNull( ExecuteReportContentHandler.negotiateEncoding( plain, uncompressed, "gzip" ) );
+    verify( uncompressed, never() ).setHeader( eq( "Vary" ), any() );
+  }
 }
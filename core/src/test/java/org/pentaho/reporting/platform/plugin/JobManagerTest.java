@@ -41,16 +41,23 @@ import org.pentaho.reporting.platform.plugin.async.PentahoAsyncExecutor;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -152,6 +159,26 @@ public class JobManagerTest {
     assertTrue( json.contains( uuid.toString() ) );
   }
 
+  @Test public void testGetStatuses() throws IOException {
+    setSession();
+    final JobManager jobManager = new JobManager();
+    final UUID other = UUID.randomUUID();
+    final Response response =
+      jobManager.getStatuses( "[\"" + uuid.toString() + "\", \"" + other.toString() + "\", \"notauuid\"]" );
+    assertEquals( 200, response.getStatus() );
+
+    final JsonNode jsonNode = new ObjectMapper().readTree( (String) response.getEntity() );
+    assertEquals( 2, jsonNode.size() );
+    assertEquals( uuid.toString(), jsonNode.get( uuid.toString() ).get( "uuid" ).asText() );
+    assertNotNull( jsonNode.get( other.toString() ) );
+    assertNull( jsonNode.get( "notauuid" ) );
+  }
+
+  @Test public void testGetStatusesBadRequest() {
+    final JobManager jobManager = new JobManager();
+    assertEquals( 400, jobManager.getStatuses( "notajson" ).getStatus() );
+  }
+
   @Test
   public void calculateContentDisposition() throws Exception {
     final IAsyncReportState state1 =
@@ -322,6 +349,136 @@ public class JobManagerTest {
   }
 
 
+  @Test public void testRangeContent() throws IOException, ExecutionException, InterruptedException {
+    setSession();
+
+    final UUID uuid = UUID.randomUUID();
+    final JobManager jobManager = new JobManager();
+
+    final Future future = mock( Future.class );
+    final IFixedSizeStreamingContent content = mock( IFixedSizeStreamingContent.class );
+    when( content.getContentSize() ).thenReturn( 100L );
+    when( future.get() ).thenReturn( content );
+    when( executor.getFuture( uuid, session ) ).thenReturn( future );
+
+    STATUS = AsyncExecutionStatus.FINISHED;
+    final String eTag = JobManager.getETag( uuid.toString(), 100 );
+
+    final Response full = jobManager.getContent( uuid.toString(), false, null, null );
+    assertEquals( 200, full.getStatus() );
+    assertEquals( "bytes", full.getHeaderString( "Accept-Ranges" ) );
+    assertEquals( eTag, full.getHeaderString( "ETag" ) );
+    assertEquals( "100", full.getHeaderString( "Content-Length" ) );
+
+    final Response partial = jobManager.getContent( uuid.toString(), false, "bytes=10-", eTag );
+    assertEquals( 206, partial.getStatus() );
+    assertEquals( "bytes 10-99/100", partial.getHeaderString( "Content-Range" ) );
+    assertEquals( "90", partial.getHeaderString( "Content-Length" ) );
+
+    // content changed since the first part was downloaded
+    final Response stale = jobManager.getContent( uuid.toString(), false, "bytes=10-", "\"other\"" );
+    assertEquals( 200, stale.getStatus() );
+
+    final Response unsatisfiable = jobManager.getContent( uuid.toString(), false, "bytes=100-", null );
+    assertEquals( 416, unsatisfiable.getStatus() );
+    assertEquals( "bytes */100", unsatisfiable.getHeaderString( "Content-Range" ) );
+    STATUS = AsyncExecutionStatus.FAILED;
+  }
+
+  @Test public void testCompressedContent() throws IOException, ExecutionException, InterruptedException {
+    setSession();
+
+    final UUID uuid = UUID.randomUUID();
+    final JobManager jobManager = new JobManager();
+
+    final Future future = mock( Future.class );
+    final IFixedSizeStreamingContent content = mock( IFixedSizeStreamingContent.class );
+    when( content.getContentSize() ).thenReturn( 100L );
+    when( content.getEncodedSize() ).thenReturn( 30L );
+    when( content.getContentEncoding() ).thenReturn( "gzip" );
+    when( future.get() ).thenReturn( content );
+    when( executor.getFuture( uuid, session ) ).thenReturn( future );
+
+    STATUS = AsyncExecutionStatus.FINISHED;
+    final Response encoded = jobManager.getContent( uuid.toString(), false, null, null, "deflate, gzip" );
+    assertEquals( 200, encoded.getStatus() );
+    assertEquals( "gzip", encoded.getHeaderString( "Content-Encoding" ) );
+    assertEquals( "30", encoded.getHeaderString( "Content-Length" ) );
+    assertEquals( "Accept-Encoding", encoded.getHeaderString( "Vary" ) );
+
+    final Response identity = jobManager.getContent( uuid.toString(), false, null, null, "gzip;q=0" );
+    assertNull( identity.getHeaderString( "Content-Encoding" ) );
+    assertEquals( "100", identity.getHeaderString( "Content-Length" ) );
+    assertNotEquals( encoded.getHeaderString( "ETag" ), identity.getHeaderString( "ETag" ) );
+
+    final Response partial = jobManager.getContent( uuid.toString(), false, "bytes=10-", null, "gzip" );
+    assertEquals( 206, partial.getStatus() );
+    assertNull( partial.getHeaderString( "Content-Encoding" ) );
+    STATUS = AsyncExecutionStatus.FAILED;
+  }
+
+  @Test public void testByteRangeParse() {
+    JobManager.ByteRange range = JobManager.ByteRange.parse( "bytes=0-9", 100 );
+    assertEquals( 0, range.start );
+    assertEquals( 9, range.end );
+
+    range = JobManager.ByteRange.parse( "bytes=-10", 100 );
+    assertEquals( 90, range.start );
+    assertEquals( 99, range.end );
+
+    range = JobManager.ByteRange.parse( "bytes=50-500", 100 );
+    assertEquals( 99, range.end );
+
+    assertNull( JobManager.ByteRange.parse( "bytes=0-1,5-6", 100 ) );
+    assertNull( JobManager.ByteRange.parse( "items=0-1", 100 ) );
+    assertNull( JobManager.ByteRange.parse( "bytes=5-1", 100 ) );
+    assertNull( JobManager.ByteRange.parse( "bytes=a-b", 100 ) );
+    assertSame( JobManager.ByteRange.UNSATISFIABLE, JobManager.ByteRange.parse( "bytes=-0", 100 ) );
+  }
+
+  @Test public void testProgressiveContentNotStreamable() throws IOException {
+    setSession();
+
+    final UUID uuid = UUID.randomUUID();
+    final JobManager jobManager = new JobManager();
+
+    final Future future = mock( Future.class );
+    when( executor.getFuture( uuid, session ) ).thenReturn( future );
+
+    STATUS = AsyncExecutionStatus.WORKING;
+    final Response response = jobManager.getContent( uuid.toString(), true );
+    assertEquals( 202, response.getStatus() );
+    STATUS = AsyncExecutionStatus.FAILED;
+  }
+
+  @Test public void testTailingStreamingOutput() throws Exception {
+    setSession();
+
+    final File file = File.createTempFile( "tailing", ".csv" );
+    file.deleteOnExit();
+    Files.write( file.toPath(), "a,b\n".getBytes( StandardCharsets.UTF_8 ) );
+
+    final Future future = mock( Future.class );
+    when( future.isDone() ).thenReturn( true );
+    final JobManager jobManager = new JobManager();
+
+    when( executor.openStagingStream( any(), any() ) ).thenAnswer( i -> Files.newInputStream( file.toPath() ) );
+
+    STATUS = AsyncExecutionStatus.FINISHED;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JobManager.TailingStreamingOutput( jobManager.getContext( uuid.toString() ), future ).write( out );
+    assertEquals( "a,b\n", new String( out.toByteArray(), StandardCharsets.UTF_8 ) );
+
+    STATUS = AsyncExecutionStatus.FAILED;
+    try {
+      new JobManager.TailingStreamingOutput( jobManager.getContext( uuid.toString() ), future )
+        .write( new ByteArrayOutputStream() );
+      fail( "Failed job must abort the stream" );
+    } catch ( final IOException e ) {
+      // expected
+    }
+  }
+
   @Test public void testFlowNoPropting() throws IOException, ExecutionException, InterruptedException {
     setSession();
 
@@ -19,9 +19,15 @@ import org.pentaho.platform.api.engine.IActionSequenceResource;
 import org.pentaho.reporting.engine.classic.core.AttributeNames;
 import org.pentaho.reporting.engine.classic.core.MasterReport;
 import org.pentaho.reporting.engine.classic.core.ReportEnvironment;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportListener;
+import org.pentaho.reporting.engine.classic.core.event.async.ReportListenerThreadHolder;
 import org.pentaho.reporting.engine.classic.core.modules.output.table.html.HtmlTableModule;
 import org.pentaho.reporting.libraries.base.config.Configuration;
 import org.pentaho.reporting.libraries.base.config.ModifiableConfiguration;
+import org.pentaho.reporting.libraries.resourceloader.ResourceData;
+import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
+import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
+import org.pentaho.reporting.platform.plugin.output.OutputUtils;
 import org.pentaho.reporting.platform.plugin.output.ReportOutputHandler;
 
 import java.io.InputStream;
@@ -42,6 +48,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 
 public class SimpleReportingActionTest {
@@ -374,4 +381,52 @@ public class SimpleReportingActionTest {
     assertNotNull( result );
     verify( modifiableConfiguration, times( 1 ) ).setConfigProperty( HtmlTableModule.BODY_FRAGMENT, "true" );
   }
+
+  @Test
+  public void testCacheSlotId() throws Exception {
+    final long[] version = { 1 };
+    final MasterReport report = mock( MasterReport.class );
+    final Configuration config = mock( Configuration.class );
+    doReturn( config ).when( report ).getConfiguration();
+    final ResourceKey definitionSource = mock( ResourceKey.class );
+    final ResourceManager resourceManager = mock( ResourceManager.class );
+    final ResourceData resourceData = mock( ResourceData.class );
+    doReturn( definitionSource ).when( report ).getDefinitionSource();
+    doReturn( resourceManager ).when( report ).getResourceManager();
+    doReturn( resourceData ).when( resourceManager ).loadRawData( definitionSource );
+    when( resourceData.getVersion( resourceManager ) ).thenAnswer( invocation -> version[ 0 ] );
+    sra.setReport( report );
+    sra.setReportDefinitionPath( "/public/report.prpt" );
+
+    // opt-in
+    assertNull( sra.getCacheSlotId( SimpleReportingAction.PNG_EXPORT_TYPE ) );
+    doReturn( "true" ).when( config ).getConfigProperty( OutputUtils.CACHE_PAGINATED_HANDLERS );
+
+    assertEquals( SimpleReportingAction.PNG_EXPORT_TYPE + ":/public/report.prpt@1",
+      sra.getCacheSlotId( SimpleReportingAction.PNG_EXPORT_TYPE ) );
+    assertEquals( HtmlTableModule.TABLE_HTML_PAGE_EXPORT_TYPE + ":/public/report.prpt@1",
+      sra.getCacheSlotId( HtmlTableModule.TABLE_HTML_PAGE_EXPORT_TYPE ) );
+    assertNull( sra.getCacheSlotId( "pageable/pdf" ) );
+
+    // a replaced report gets a new slot, one of unknown version none
+    version[ 0 ] = 2;
+    assertEquals( SimpleReportingAction.PNG_EXPORT_TYPE + ":/public/report.prpt@2",
+      sra.getCacheSlotId( SimpleReportingAction.PNG_EXPORT_TYPE ) );
+    version[ 0 ] = -1;
+    assertNull( sra.getCacheSlotId( SimpleReportingAction.PNG_EXPORT_TYPE ) );
+    version[ 0 ] = 2;
+
+    ReportListenerThreadHolder.setListener( mock( IAsyncReportListener.class ) );
+    try {
+      assertNull( sra.getCacheSlotId( SimpleReportingAction.PNG_EXPORT_TYPE ) );
+    } finally {
+      ReportListenerThreadHolder.clear();
+    }
+
+    final Map<String, Object> inputs = new HashMap<>();
+    inputs.put( ParameterXmlContentHandler.SYS_PARAM_SESSION_ID, "viewer" );
+    sra.setVarArgs( inputs );
+    assertEquals( "viewer", sra.getCacheSlotId( SimpleReportingAction.PNG_EXPORT_TYPE ) );
+    assertEquals( "viewer", sra.getCacheSlotId( "pageable/pdf" ) );
+  }
 }
@@ -52,6 +52,15 @@ public class TrackingOutputStreamTest extends TestCase {
     assertEquals( 5, streamSpy.getTrackingSize() );
   }
 
+  @Test
+  public void testSizeBeyondIntRange() throws Exception {
+    // the wrapped stream is a mock, nothing is copied
+    stream.write( new byte[ 1 ], 0, Integer.MAX_VALUE );
+    stream.write( new byte[ 1 ], 0, Integer.MAX_VALUE );
+    stream.write( 1 );
+    assertEquals( 2L * Integer.MAX_VALUE + 1, stream.getTrackingSize() );
+  }
+
   @Test
   public void testGetStream() throws Exception {
     assertEquals( outputStream, streamSpy.getWrappedStream() );
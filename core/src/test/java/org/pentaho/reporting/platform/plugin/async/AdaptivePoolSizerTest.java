@@ -0,0 +1,132 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptivePoolSizerTest {
+
+  private final AdaptivePoolSizer sizer = new AdaptivePoolSizer();
+  private AsyncThreadPoolExecutor pool;
+
+  @After
+  public void tearDown() {
+    sizer.shutdown();
+    if ( pool != null ) {
+      pool.shutdownNow();
+    }
+  }
+
+  private void configure() {
+    sizer.setMinThreads( 1 );
+    sizer.setMaxThreads( 4 );
+    sizer.setGrowQueueWaitMillis( 1000 );
+    sizer.setShrinkQueueWaitMillis( 10 );
+    sizer.setSamplesToGrow( 2 );
+    sizer.setSamplesToShrink( 3 );
+  }
+
+  @Test
+  public void testGrowAfterConsecutiveSamples() {
+    configure();
+    assertEquals( 2, sizer.decide( 2, 2, 0, 5000, 0.1, -1 ) );
+    assertEquals( 3, sizer.decide( 2, 2, 0, 5000, 0.1, -1 ) );
+    // a calm sample in between resets the streak
+    assertEquals( 3, sizer.decide( 3, 3, 0, 500, 0.1, -1 ) );
+    assertEquals( 3, sizer.decide( 3, 3, 0, 5000, 0.1, -1 ) );
+    assertEquals( 4, sizer.decide( 3, 3, 0, 5000, 0.1, -1 ) );
+    // upper bound
+    assertEquals( 4, sizer.decide( 4, 4, 0, 5000, 0.1, -1 ) );
+    assertEquals( 4, sizer.decide( 4, 4, 0, 5000, 0.1, -1 ) );
+  }
+
+  @Test
+  public void testShrinkWhenIdle() {
+    configure();
+    assertEquals( 3, sizer.decide( 3, 1, 0, 0, 0.1, -1 ) );
+    assertEquals( 3, sizer.decide( 3, 1, 0, 0, 0.1, -1 ) );
+    assertEquals( 2, sizer.decide( 3, 1, 0, 0, 0.1, -1 ) );
+    // all threads busy, nothing waits: keep the size
+    for ( int i = 0; i < 5; i++ ) {
+      assertEquals( 2, sizer.decide( 2, 2, 0, 0, 0.1, -1 ) );
+    }
+  }
+
+  @Test
+  public void testNoGrowthWhenSaturated() {
+    configure();
+    // CPU is saturated, shrink even though tasks wait
+    assertEquals( 3, sizer.decide( 3, 3, 0, 5000, 2.0, -1 ) );
+    assertEquals( 3, sizer.decide( 3, 3, 0, 5000, 2.0, -1 ) );
+    assertEquals( 2, sizer.decide( 3, 3, 0, 5000, 2.0, -1 ) );
+    // database connections are saturated
+    assertEquals( 2, sizer.decide( 2, 2, 0, 5000, 0.1, 0.95 ) );
+    assertEquals( 2, sizer.decide( 2, 2, 0, 5000, 0.1, 0.95 ) );
+    assertEquals( 1, sizer.decide( 2, 2, 0, 5000, 0.1, 0.95 ) );
+    // lower bound
+    assertEquals( 1, sizer.decide( 1, 1, 0, 5000, 0.1, 0.95 ) );
+  }
+
+  @Test
+  public void testAdmissionWaitIsNotBusy() {
+    configure();
+    // tasks queue up while running jobs wait for memory: more threads wouldn't help
+    for ( int i = 0; i < 5; i++ ) {
+      assertEquals( 3, sizer.decide( 3, 3, 1, 5000, 0.1, -1 ) );
+    }
+    // threads waiting for memory with nothing queued count as idle
+    assertEquals( 3, sizer.decide( 3, 3, 2, 0, 0.1, -1 ) );
+    assertEquals( 3, sizer.decide( 3, 3, 2, 0, 0.1, -1 ) );
+    assertEquals( 2, sizer.decide( 3, 3, 2, 0, 0.1, -1 ) );
+  }
+
+  @Test
+  public void testPoolMeasuresQueueWait() throws Exception {
+    pool = new AsyncThreadPoolExecutor( 1, Executors.defaultThreadFactory() );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final CountDownLatch done = new CountDownLatch( 1 );
+    pool.execute( () -> {
+      try {
+        release.await();
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+    } );
+    pool.execute( done::countDown );
+    Thread.sleep( 50 );
+    assertTrue( pool.takeMaxQueueWait() >= 50 );
+
+    release.countDown();
+    assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    assertTrue( pool.takeMaxQueueWait() >= 0 );
+  }
+
+  @Test
+  public void testStartClampsPool() {
+    configure();
+    sizer.setCheckIntervalMillis( 60000 );
+    pool = new AsyncThreadPoolExecutor( 10, Executors.defaultThreadFactory() );
+    sizer.start( pool, () -> 0 );
+    assertEquals( 4, pool.getCorePoolSize() );
+    assertEquals( 4, pool.getMaximumPoolSize() );
+  }
+}
@@ -0,0 +1,142 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.pentaho.reporting.platform.plugin.async.AsyncAdmissionController.MB;
+
+public class AsyncAdmissionControllerTest {
+
+  private static final String XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+  private long usedHeap = 0;
+  private long allocated = -1;
+
+  private final AsyncAdmissionController controller = new AsyncAdmissionController() {
+    @Override protected long getMaxHeap() {
+      return 1000 * MB;
+    }
+
+    @Override protected long getUsedHeap() {
+      return usedHeap;
+    }
+
+    @Override protected long getAllocatedBytes( final long threadId ) {
+      return allocated;
+    }
+  };
+
+  @Test
+  public void testEstimate() {
+    assertEquals( 256 * MB, controller.estimate( "/a.prpt", XLSX, StagingMode.TMPFILE ) );
+    assertEquals( 32 * MB, controller.estimate( "/a.prpt", "text/csv", StagingMode.TMPFILE ) );
+
+    controller.setEstimates( Collections.singletonMap( "/a.prpt", String.valueOf( 10 * MB ) ) );
+    assertEquals( 10 * MB, controller.estimate( "/a.prpt", XLSX, StagingMode.TMPFILE ) );
+    assertEquals( 32 * MB, controller.estimate( "/b.prpt", XLSX, StagingMode.TMPFILE ) );
+  }
+
+  @Test
+  public void testObservedFootprint() {
+    controller.record( "/a.prpt", "text/csv", 100 * MB, 50 * MB );
+    assertEquals( 100 * MB, controller.estimate( "/a.prpt", "text/csv", StagingMode.TMPFILE ) );
+    assertEquals( 150 * MB, controller.estimate( "/a.prpt", "text/csv", StagingMode.MEMORY ) );
+
+    // lighter runs decay the peak
+    controller.record( "/a.prpt", "text/csv", 0, 0 );
+    assertEquals( 80 * MB, controller.estimate( "/a.prpt", "text/csv", StagingMode.TMPFILE ) );
+  }
+
+  @Test
+  public void testAcquireWaitsForBudget() throws Exception {
+    controller.acquire( 600 * MB );
+    final AtomicBoolean admitted = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch( 1 );
+    final Thread second = new Thread( () -> {
+      try {
+        controller.acquire( 200 * MB );
+        admitted.set( true );
+        done.countDown();
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+    } );
+    second.start();
+    assertFalse( done.await( 200, TimeUnit.MILLISECONDS ) );
+    assertFalse( admitted.get() );
+    assertEquals( 1, controller.getWaiting() );
+
+    controller.release( 600 * MB );
+    assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    assertEquals( 200 * MB, controller.getReserved() );
+    assertEquals( 0, controller.getWaiting() );
+  }
+
+  @Test
+  public void testGrowthCappedByOwnAllocation() throws Exception {
+    final IAsyncReportExecution<?> task = mock( IAsyncReportExecution.class );
+    doReturn( "/a.prpt" ).when( task ).getReportPath();
+    doReturn( "text/csv" ).when( task ).getMimeType();
+    final AtomicReference<AsyncAdmissionController.Admission> admission = new AtomicReference<>();
+    when( task.call() ).thenAnswer( invocation -> {
+      // another job filled the heap, this one allocated 100 MB
+      usedHeap = 500 * MB;
+      allocated = 100 * MB;
+      admission.get().reportProcessingUpdate( null );
+      return null;
+    } );
+    allocated = 0;
+    admission.set( controller.admit( task ) );
+    admission.get().call();
+    assertEquals( 100 * MB, controller.estimate( "/a.prpt", "text/csv", StagingMode.TMPFILE ) );
+  }
+
+  @Test
+  public void testSingleJobAlwaysAdmitted() throws Exception {
+    controller.acquire( 2000 * MB );
+    assertEquals( 2000 * MB, controller.getReserved() );
+    assertTrue( controller.isUnderPressure() );
+    controller.release( 2000 * MB );
+    assertFalse( controller.isUnderPressure() );
+  }
+
+  @Test
+  public void testStagingDowngrade() {
+    assertEquals( StagingMode.MEMORY, controller.admitStagingMode( "/a.prpt", "text/csv", StagingMode.MEMORY ) );
+    assertEquals( StagingMode.THRU, controller.admitStagingMode( "/a.prpt", "text/csv", StagingMode.THRU ) );
+
+    usedHeap = 690 * MB;
+    assertEquals( StagingMode.TMPFILE, controller.admitStagingMode( "/a.prpt", "text/csv", StagingMode.MEMORY ) );
+    assertEquals( StagingMode.THRU, controller.admitStagingMode( "/a.prpt", "text/csv", StagingMode.THRU ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testInvalidHeapFraction() {
+    controller.setHeapFraction( 1.5 );
+  }
+}
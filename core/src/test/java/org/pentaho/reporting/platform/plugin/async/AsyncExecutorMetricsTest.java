@@ -0,0 +1,101 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncExecutorMetricsTest {
+
+  private final AsyncThreadPoolExecutor pool = new AsyncThreadPoolExecutor( 2, Executors.defaultThreadFactory() );
+  private final AsyncExecutorMetrics metrics = new AsyncExecutorMetrics( pool, () -> 42 );
+
+  @After
+  public void tearDown() {
+    metrics.unregister();
+    pool.shutdownNow();
+  }
+
+  private static IAsyncReportState state( final AsyncExecutionStatus status ) {
+    final IAsyncReportState state = mock( IAsyncReportState.class );
+    when( state.getStatus() ).thenReturn( status );
+    return state;
+  }
+
+  @Test
+  public void testJobLifecycle() {
+    final AsyncExecutorMetrics.JobMetrics finished = metrics.submitted( "admin", "text/csv" );
+    final AsyncExecutorMetrics.JobMetrics failed = metrics.submitted( "admin", "application/pdf" );
+    final AsyncExecutorMetrics.JobMetrics canceled = metrics.submitted( "suzy", null );
+    assertEquals( 3, metrics.getSubmittedCount() );
+    assertEquals( Integer.valueOf( 2 ), metrics.getInFlightJobsByUser().get( "admin" ) );
+
+    finished.reportProcessingStarted( mock( ReportProgressEvent.class ) );
+    finished.done( state( AsyncExecutionStatus.FINISHED ), false );
+    // completion is counted once
+    finished.done( state( AsyncExecutionStatus.FINISHED ), false );
+    failed.done( state( AsyncExecutionStatus.FAILED ), false );
+    canceled.done( null, true );
+
+    assertEquals( 1, metrics.getCompletedCount() );
+    assertEquals( 1, metrics.getFailedCount() );
+    assertEquals( 1, metrics.getCanceledCount() );
+    assertTrue( metrics.getInFlightJobsByUser().isEmpty() );
+
+    assertEquals( 1, metrics.getQueueWaitHistograms().size() );
+    assertEquals( 1, metrics.getQueueWaitHistograms().get( "text/csv" )[ 0 ] );
+    assertEquals( 1, metrics.getRunTimeHistograms().get( "text/csv" )[ 0 ] );
+    assertFalse( metrics.getRunTimeHistograms().containsKey( "unknown" ) );
+
+    metrics.reset();
+    assertEquals( 0, metrics.getSubmittedCount() );
+    assertTrue( metrics.getRunTimeHistograms().isEmpty() );
+  }
+
+  @Test
+  public void testBuckets() {
+    assertArrayEquals( new long[] { 100, 1000, 10000, 60000, 600000 }, metrics.getHistogramBoundsMillis() );
+    assertEquals( 0, AsyncExecutorMetrics.getBucket( 0 ) );
+    assertEquals( 1, AsyncExecutorMetrics.getBucket( 101 ) );
+    assertEquals( 5, AsyncExecutorMetrics.getBucket( 600001 ) );
+  }
+
+  @Test
+  public void testRegistration() throws Exception {
+    metrics.scheduledWritten();
+    metrics.register();
+    final ObjectName name = new ObjectName( AsyncExecutorMetrics.OBJECT_NAME );
+    assertTrue( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+    assertEquals( 1L, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "ScheduledWrittenCount" ) );
+    assertEquals( 42L, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "StagedBytesInFlight" ) );
+    assertEquals( 2, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "PoolSize" ) );
+
+    metrics.unregister();
+    assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+  }
+}
@@ -0,0 +1,216 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncJobJournalTest {
+
+  private File dir;
+  private AsyncJobJournal journal;
+  private IPentahoSession session;
+  private IAsyncReportExecution task;
+
+  @Before
+  public void before() throws IOException {
+    dir = Files.createTempDirectory( "journal" ).toFile();
+    journal = new AsyncJobJournal( dir.getAbsolutePath(), "resubmit", 10 );
+
+    session = mock( IPentahoSession.class );
+    when( session.getId() ).thenReturn( "session" );
+    when( session.getName() ).thenReturn( "admin" );
+
+    final Map<String, Object> inputs = new HashMap<>();
+    inputs.put( "output-target", "table/csv;page-mode=stream" );
+    inputs.put( "multi", new String[] { "a", "b" } );
+    inputs.put( "skipped", new Object() );
+
+    task = mock( IAsyncReportExecution.class );
+    when( task.getReportPath() ).thenReturn( "/public/report.prpt" );
+    when( task.getMimeType() ).thenReturn( "text/csv" );
+    when( task.getStagingPath() ).thenReturn( new File( dir, "staged.tmp" ).toPath() );
+    when( task.getInputs() ).thenReturn( inputs );
+  }
+
+  @After
+  public void after() throws IOException {
+    journal.close();
+    FileUtils.deleteDirectory( dir );
+  }
+
+  @Test
+  public void testReplayMergesRecords() {
+    final UUID id = UUID.randomUUID();
+    journal.submitted( id, session, task );
+    journal.scheduled( id );
+    journal.statusChanged( id, AsyncExecutionStatus.FINISHED );
+
+    final Map<UUID, AsyncJobJournal.JobRecord> records = journal.replay();
+    assertEquals( 1, records.size() );
+    final AsyncJobJournal.JobRecord record = records.get( id );
+    assertEquals( "admin", record.getUser() );
+    assertEquals( "/public/report.prpt", record.getPath() );
+    assertEquals( "text/csv", record.getMimeType() );
+    assertTrue( record.isFinished() );
+    assertTrue( record.getScheduled() );
+    assertEquals( new File( dir, "staged.tmp" ).getPath(), record.getStagingPath() );
+    assertEquals( AsyncJobJournal.RecoveryPolicy.RESUBMIT, journal.getRecoveryPolicy() );
+
+    final Map<String, Object> inputs = AsyncJobJournal.fromJournalInputs( record.getInputs() );
+    assertEquals( "table/csv;page-mode=stream", inputs.get( "output-target" ) );
+    assertArrayEquals( new String[] { "a", "b" }, (String[]) inputs.get( "multi" ) );
+    assertFalse( inputs.containsKey( "skipped" ) );
+  }
+
+  @Test
+  public void testReplayKeepsCompression() {
+    final UUID id = UUID.randomUUID();
+    journal.submitted( id, session, task );
+    final IFixedSizeStreamingContent content = mock( IFixedSizeStreamingContent.class );
+    when( content.getContentEncoding() ).thenReturn( StagingCompression.GZIP );
+    when( content.getContentSize() ).thenReturn( 42L );
+    journal.finished( id, AsyncExecutionStatus.FINISHED, content );
+
+    final AsyncJobJournal.JobRecord record = journal.replay().get( id );
+    assertTrue( record.isFinished() );
+    assertTrue( record.getCompressed() );
+    final IFixedSizeStreamingContent recovered = record.getStagingContent();
+    assertEquals( StagingCompression.GZIP, recovered.getContentEncoding() );
+    assertEquals( 42L, recovered.getContentSize() );
+  }
+
+  @Test
+  public void testRemovedIsFinal() {
+    final UUID id = UUID.randomUUID();
+    journal.submitted( id, session, task );
+    journal.removed( id );
+    assertTrue( journal.replay().get( id ).isFinal() );
+  }
+
+  @Test
+  public void testMalformedLinesAreSkipped() throws IOException {
+    final UUID id = UUID.randomUUID();
+    journal.submitted( id, session, task );
+    journal.close();
+    Files.write( journal.getJournalFile(), "{\"id\":\"broken".getBytes( StandardCharsets.UTF_8 ),
+      StandardOpenOption.APPEND );
+
+    final Map<UUID, AsyncJobJournal.JobRecord> records = journal.replay();
+    assertEquals( 1, records.size() );
+    assertEquals( AsyncExecutionStatus.QUEUED.name(), records.get( id ).getStatus() );
+  }
+
+  @Test
+  public void testCompact() {
+    final UUID first = UUID.randomUUID();
+    final UUID second = UUID.randomUUID();
+    journal.submitted( first, session, task );
+    journal.submitted( second, session, task );
+
+    journal.compact( Collections.singletonList( journal.replay().get( second ) ) );
+    final Map<UUID, AsyncJobJournal.JobRecord> records = journal.replay();
+    assertEquals( 1, records.size() );
+    assertTrue( records.containsKey( second ) );
+
+    // journal is still writable after compaction
+    journal.removed( second );
+    assertTrue( journal.replay().get( second ).isFinal() );
+  }
+
+  @Test
+  public void testCompactWhileJournaling() throws IOException {
+    journal.setCompactThreshold( 7 );
+    final UUID live = UUID.randomUUID();
+    journal.submitted( live, session, task );
+    for ( int i = 0; i < 3; i++ ) {
+      final UUID id = UUID.randomUUID();
+      journal.submitted( id, session, task );
+      journal.removed( id );
+    }
+
+    // the seventh record triggered compaction down to the live job
+    final Map<UUID, AsyncJobJournal.JobRecord> records = journal.replay();
+    assertEquals( 1, records.size() );
+    assertTrue( records.containsKey( live ) );
+    assertEquals( 1, Files.readAllLines( journal.getJournalFile(), StandardCharsets.UTF_8 ).size() );
+
+    journal.statusChanged( live, AsyncExecutionStatus.FINISHED );
+    assertTrue( journal.replay().get( live ).isFinished() );
+  }
+
+  @Test
+  public void testSensitiveInputsAreLeftOut() throws IOException {
+    final Map<String, Object> inputs = new HashMap<>();
+    inputs.put( "region", "EU" );
+    inputs.put( "dbPassword", "secret" );
+    inputs.put( "API_KEY", "key" );
+    when( task.getInputs() ).thenReturn( inputs );
+
+    final UUID id = UUID.randomUUID();
+    journal.submitted( id, session, task );
+    final AsyncJobJournal.JobRecord record = journal.replay().get( id );
+    assertEquals( Collections.singletonMap( "region", "EU" ), record.getInputs() );
+    assertTrue( record.getRedacted() );
+    final String content = new String( Files.readAllBytes( journal.getJournalFile() ), StandardCharsets.UTF_8 );
+    assertFalse( content.contains( "secret" ) );
+
+    final UUID plain = UUID.randomUUID();
+    when( task.getInputs() ).thenReturn( Collections.<String, Object>singletonMap( "region", "EU" ) );
+    journal.submitted( plain, session, task );
+    assertNull( journal.replay().get( plain ).getRedacted() );
+  }
+
+  @Test
+  public void testClosedJournalIgnoresRecords() {
+    journal.close();
+    journal.submitted( UUID.randomUUID(), session, task );
+    final Path journalFile = journal.getJournalFile();
+    assertFalse( journalFile.toFile().exists() );
+  }
+
+  @Test
+  public void testExpired() {
+    final AsyncJobJournal.JobRecord record = new AsyncJobJournal.JobRecord( UUID.randomUUID() );
+    assertFalse( journal.isExpired( record ) );
+    record.setTimestamp( System.currentTimeMillis() - 11 * 60 * 1000 );
+    assertTrue( journal.isExpired( record ) );
+  }
+}
@@ -0,0 +1,121 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncJobWatchdogTest {
+
+  private final AsyncJobWatchdog watchdog = new AsyncJobWatchdog();
+
+  @After
+  public void tearDown() {
+    watchdog.shutdown();
+  }
+
+  @Test
+  public void testLimitsResolution() {
+    watchdog.setMaxMillis( 100 );
+    watchdog.setLimits( Collections.singletonMap( "text/csv", "200,0,10" ) );
+    assertEquals( 100, watchdog.getLimits( "/a.prpt", "application/pdf" ).maxMillis );
+    assertEquals( 200, watchdog.getLimits( "/a.prpt", "text/csv" ).maxMillis );
+    assertEquals( 10, watchdog.getLimits( null, "text/csv" ).maxRows );
+  }
+
+  @Test
+  public void testUnlimitedJobsAreNotWatched() {
+    final IAsyncReportExecution task = mock( IAsyncReportExecution.class );
+    final ReportProgressListener listener = watchdog.watch( task );
+    listener.reportProcessingStarted( mock( ReportProgressEvent.class ) );
+    watchdog.check();
+    verify( task, never() ).abort( anyString() );
+  }
+
+  @Test
+  public void testRowLimit() {
+    watchdog.setMaxRows( 10 );
+    final IAsyncReportExecution task = mock( IAsyncReportExecution.class );
+    final ReportProgressListener listener = watchdog.watch( task );
+    final ReportProgressEvent event = mock( ReportProgressEvent.class );
+    when( event.getMaximumRow() ).thenReturn( 5 );
+    listener.reportProcessingStarted( event );
+    watchdog.check();
+    verify( task, never() ).abort( anyString() );
+
+    when( event.getMaximumRow() ).thenReturn( 11 );
+    listener.reportProcessingUpdate( event );
+    watchdog.check();
+    verify( task ).abort( startsWith( "Row limit" ) );
+  }
+
+  @Test
+  public void testTimeLimit() throws Exception {
+    watchdog.setMaxMillis( 1 );
+    final IAsyncReportExecution task = mock( IAsyncReportExecution.class );
+    final ReportProgressListener listener = watchdog.watch( task );
+    // not started yet, queued time doesn't count
+    Thread.sleep( 5 );
+    watchdog.check();
+    verify( task, never() ).abort( anyString() );
+
+    listener.reportProcessingStarted( mock( ReportProgressEvent.class ) );
+    Thread.sleep( 5 );
+    watchdog.check();
+    verify( task ).abort( startsWith( "Execution time limit" ) );
+  }
+
+  @Test
+  public void testStagedBytesLimit() throws Exception {
+    final File file = File.createTempFile( "watchdog", ".tmp" );
+    try {
+      Files.write( file.toPath(), new byte[ 100 ] );
+      watchdog.setMaxStagedBytes( 50 );
+      final IAsyncReportExecution task = mock( IAsyncReportExecution.class );
+      when( task.getStagingPath() ).thenReturn( file.toPath() );
+      watchdog.watch( task );
+      watchdog.check();
+      verify( task ).abort( startsWith( "Staged content limit" ) );
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testUnwatch() {
+    watchdog.setMaxRows( 1 );
+    final IAsyncReportExecution task = mock( IAsyncReportExecution.class );
+    final ReportProgressListener listener = watchdog.watch( task );
+    final ReportProgressEvent event = mock( ReportProgressEvent.class );
+    when( event.getMaximumRow() ).thenReturn( 2 );
+    listener.reportProcessingUpdate( event );
+    watchdog.unwatch( task );
+    watchdog.check();
+    verify( task, never() ).abort( anyString() );
+  }
+}
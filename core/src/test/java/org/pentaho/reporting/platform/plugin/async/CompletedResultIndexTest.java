@@ -0,0 +1,145 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CompletedResultIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testKeyIsCanonical() {
+    final Map<String, Object> inputs = new LinkedHashMap<>();
+    inputs.put( "b", new String[] { "1", "2" } );
+    inputs.put( "a", 1 );
+    final Map<String, Object> reordered = new HashMap<>();
+    reordered.put( "a", 1 );
+    reordered.put( "b", new String[] { "1", "2" } );
+    reordered.put( "reservedId", "3" );
+    reordered.put( "::session", "x" );
+
+    assertEquals( CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html", inputs ),
+      CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html", reordered ) );
+    assertNotEquals( CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html", inputs ),
+      CompletedResultIndex.getKey( "admin", "/a.prpt", "2", "text/html", inputs ) );
+    assertNotEquals( CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html", inputs ),
+      CompletedResultIndex.getKey( "suzy", "/a.prpt", "1", "text/html", inputs ) );
+  }
+
+  @Test
+  public void testAcceptedPageIsPartOfKey() {
+    final Map<String, Object> first = new HashMap<>();
+    first.put( "accepted-page", "0" );
+    final Map<String, Object> third = new HashMap<>();
+    third.put( "accepted-page", "2" );
+
+    assertNotEquals( CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html", first ),
+      CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html", third ) );
+  }
+
+  @Test
+  public void testUnmatchableKey() {
+    assertNull( CompletedResultIndex.getKey( "admin", "/a.prpt", null, "text/html", null ) );
+    assertNull( CompletedResultIndex.getKey( "admin", "/a.prpt", "1", "text/html",
+      Collections.<String, Object>singletonMap( "stream", new Object() ) ) );
+  }
+
+  @Test
+  public void testFind() throws Exception {
+    final CompletedResultIndex index = new CompletedResultIndex( 10, 60000 );
+    final File staged = folder.newFile();
+    final IAsyncReportState state = finished();
+    assertTrue( index.put( "key", UUID.randomUUID(), state, staged.toPath(), false, -1 ) );
+    assertSame( state, index.find( "key", null ).getState() );
+    assertNull( index.find( "other", null ) );
+
+    // content is gone
+    assertTrue( staged.delete() );
+    assertNull( index.find( "key", null ) );
+  }
+
+  @Test
+  public void testFirstPageOnlyIsNotIndexed() throws Exception {
+    final CompletedResultIndex index = new CompletedResultIndex( 10, 60000 );
+    final IAsyncReportState firstPage = finished();
+    when( firstPage.getGeneratedPage() ).thenReturn( 1 );
+    when( firstPage.getTotalPages() ).thenReturn( 8 );
+    assertFalse( index.put( "key", UUID.randomUUID(), firstPage, folder.newFile().toPath(), false, -1 ) );
+    assertNull( index.find( "key", null ) );
+
+    final IAsyncReportState limited = finished();
+    when( limited.getIsQueryLimitReached() ).thenReturn( true );
+    assertFalse( index.put( "key", UUID.randomUUID(), limited, folder.newFile().toPath(), false, -1 ) );
+
+    final IAsyncReportState allPages = finished();
+    when( allPages.getGeneratedPage() ).thenReturn( 8 );
+    when( allPages.getTotalPages() ).thenReturn( 8 );
+    assertTrue( index.put( "key", UUID.randomUUID(), allPages, folder.newFile().toPath(), false, -1 ) );
+  }
+
+  @Test
+  public void testRecalculatedJobIsExcluded() throws Exception {
+    final CompletedResultIndex index = new CompletedResultIndex( 10, 60000 );
+    final UUID id = UUID.randomUUID();
+    final IAsyncReportState state = finished();
+    index.put( "key", id, state, folder.newFile().toPath(), false, -1 );
+
+    assertNull( index.find( "key", id ) );
+    assertSame( state, index.find( "key", UUID.randomUUID() ).getState() );
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    final CompletedResultIndex index = new CompletedResultIndex( 10, 1 );
+    index.put( "key", UUID.randomUUID(), finished(), folder.newFile().toPath(), false, -1 );
+    Thread.sleep( 10 );
+    assertNull( index.find( "key", null ) );
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    final CompletedResultIndex index = new CompletedResultIndex( 1, 60000 );
+    index.put( "first", UUID.randomUUID(), finished(), folder.newFile().toPath(), false, -1 );
+    index.put( "second", UUID.randomUUID(), finished(), folder.newFile().toPath(), false, -1 );
+    assertNull( index.find( "first", null ) );
+  }
+
+  private static IAsyncReportState finished() {
+    final IAsyncReportState state = mock( IAsyncReportState.class );
+    when( state.getStatus() ).thenReturn( AsyncExecutionStatus.FINISHED );
+    return state;
+  }
+}
@@ -0,0 +1,130 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Test;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+
+import java.io.File;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExecutionHistoryTest {
+
+  private static final String REPORT = "/public/report.prpt";
+  private static final String PDF = "application/pdf";
+
+  @Test
+  public void testNoHistory() {
+    final ExecutionHistory history = new ExecutionHistory();
+    assertEquals( -1, history.predict( REPORT, PDF, 100 ) );
+    assertEquals( -1, history.predict( null, PDF, 100 ) );
+  }
+
+  @Test
+  public void testLinearPrediction() {
+    final ExecutionHistory history = new ExecutionHistory();
+    history.record( REPORT, PDF, 1000, 1000 );
+    history.record( REPORT, PDF, 2000, 2000 );
+    history.record( REPORT, PDF, 3000, 3000 );
+    final long predicted = history.predict( REPORT, PDF, 3500 );
+    assertTrue( String.valueOf( predicted ), Math.abs( predicted - 3500 ) <= 1 );
+    // other output type has its own model
+    assertEquals( -1, history.predict( REPORT, "text/csv", 3500 ) );
+  }
+
+  @Test
+  public void testSingleSampleUsesMean() {
+    final ExecutionHistory history = new ExecutionHistory();
+    history.record( REPORT, PDF, 100, 500 );
+    assertEquals( 500, history.predict( REPORT, PDF, 120 ) );
+  }
+
+  @Test
+  public void testUnknownRowsUseMean() {
+    final ExecutionHistory history = new ExecutionHistory();
+    history.record( REPORT, PDF, 1000, 1000 );
+    history.record( REPORT, PDF, 2000, 2000 );
+    history.record( REPORT, PDF, 3000, 3000 );
+    // queued jobs have no row count yet, the intercept of the fit would be close to 0
+    final long predicted = history.predict( REPORT, PDF, 0 );
+    assertTrue( String.valueOf( predicted ), predicted > 1000 && predicted < 3000 );
+    assertEquals( -1, history.predict( REPORT, "text/csv", 0 ) );
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDropped() {
+    final ExecutionHistory history = new ExecutionHistory( null, 4 );
+    history.record( "/first.prpt", PDF, 100, 500 );
+    history.record( "/second.prpt", PDF, 100, 500 );
+    assertEquals( 500, history.predict( "/first.prpt", PDF, 100 ) );
+    history.record( "/third.prpt", PDF, 100, 500 );
+    assertEquals( 500, history.predict( "/first.prpt", PDF, 100 ) );
+    assertEquals( -1, history.predict( "/second.prpt", PDF, 100 ) );
+  }
+
+  @Test
+  public void testBuckets() {
+    assertEquals( 0, ExecutionHistory.getBucket( 0 ) );
+    assertEquals( 1, ExecutionHistory.getBucket( 1 ) );
+    assertEquals( 11, ExecutionHistory.getBucket( 1500 ) );
+    assertEquals( 11, ExecutionHistory.getBucket( 2047 ) );
+    assertEquals( 12, ExecutionHistory.getBucket( 2048 ) );
+  }
+
+  @Test
+  public void testPersistence() throws Exception {
+    final File file = File.createTempFile( "asynchistory", ".json" );
+    file.delete();
+    try {
+      final ExecutionHistory history = new ExecutionHistory( file.getAbsolutePath(), 10 );
+      history.record( REPORT, PDF, 100, 500 );
+      history.record( REPORT, PDF, 100, 700 );
+      history.save();
+      assertTrue( file.exists() );
+
+      final ExecutionHistory restored = new ExecutionHistory( file.getAbsolutePath(), 10 );
+      assertEquals( history.predict( REPORT, PDF, 100 ), restored.predict( REPORT, PDF, 100 ) );
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testAutoScheduleByPrediction() {
+    final ExecutionHistory history = new ExecutionHistory();
+    history.record( REPORT, PDF, 100, 60000 );
+
+    final ReportProgressEvent event = mock( ReportProgressEvent.class );
+    when( event.getMaximumRow() ).thenReturn( 100 );
+
+    final UUID id = UUID.randomUUID();
+    final IPentahoSession session = mock( IPentahoSession.class );
+    final IPentahoAsyncExecutor executor = mock( IPentahoAsyncExecutor.class );
+    new AutoScheduleListener( id, session, 0, executor, history, 120000, REPORT, PDF )
+      .reportProcessingUpdate( event );
+    verify( executor, never() ).preSchedule( id, session );
+
+    new AutoScheduleListener( id, session, 0, executor, history, 30000, REPORT, PDF )
+      .reportProcessingUpdate( event );
+    verify( executor ).preSchedule( id, session );
+  }
+}
@@ -405,6 +405,7 @@ public class PentahoAsyncExecutionAuditTest {
     // simulate on-logout call - will attempt to cancel all tasks.
     // remember - now we have one scheduled execution - so it should survive onLogout call
     executor.onLogout( session );
+    assertEquals( "scheduled keeps its staging file from the sweeper", 1, executor.getStagingOwners().size() );
 
     final ListenableFuture<List<IFixedSizeStreamingContent>> all = Futures.successfulAsList( futures );
     startLatch.countDown();
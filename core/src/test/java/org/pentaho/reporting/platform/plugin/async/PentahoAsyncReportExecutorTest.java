@@ -14,6 +14,8 @@
 package org.pentaho.reporting.platform.plugin.async;
 
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import junit.framework.Assert;
 import net.jcip.annotations.NotThreadSafe;
 import org.junit.*;
@@ -54,8 +56,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -64,6 +69,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -1053,6 +1059,132 @@ public class PentahoAsyncReportExecutorTest {
 
   }
 
+  @Test public void testRecalculateReusesFinishedResult() throws Exception {
+    final PentahoAsyncExecutor exec = new PentahoAsyncExecutor( 10, autoSchedulerThreshold ) {
+      @Override protected String getReportVersion( final String path ) {
+        return "1.0";
+      }
+    };
+
+    final AsyncJobJournal.JobRecord record = new AsyncJobJournal.JobRecord();
+    record.setPath( "junit-path" );
+    record.setMimeType( "text/html" );
+    record.setStagingPath( temp.getPath() );
+    final UUID id1 = exec.addTask( new RecoveredReportExecution( UUID.randomUUID(), record ), session1 );
+    awaitIndexed( exec, id1 );
+    final UUID id2 = exec.addTask( new RecoveredReportExecution( UUID.randomUUID(), record ), session1 );
+    awaitIndexed( exec, id2 );
+
+    // never answered with its own result, a recovered task can't be executed again
+    assertNull( exec.recalculate( id2, session1 ) );
+
+    final UUID recalculate = exec.recalculate( id1, session1 );
+    assertNotNull( recalculate );
+    assertNotEquals( id1, recalculate );
+    // the staged content is copied, not executed again
+    final IFixedSizeStreamingContent content = exec.getFuture( recalculate, session1 ).get();
+    assertEquals( MAGIC, CharStreams.toString( new InputStreamReader( content.getStream() ) ) );
+    assertEquals( AsyncExecutionStatus.FINISHED, exec.getReportState( recalculate, session1 ).getStatus() );
+    assertTrue( content.cleanContent() );
+    assertTrue( temp.isFile() );
+
+    assertTrue( exec.schedule( recalculate, session1 ) );
+    assertEquals( AsyncExecutionStatus.SCHEDULED, exec.getReportState( recalculate, session1 ).getStatus() );
+  }
+
+  private void awaitIndexed( final PentahoAsyncExecutor exec, final UUID id ) throws InterruptedException {
+    // listeners run in order, the result is indexed once this one runs
+    final CountDownLatch indexed = new CountDownLatch( 1 );
+    ( (ListenableFuture<IFixedSizeStreamingContent>) exec.getFuture( id, session1 ) )
+      .addListener( indexed::countDown, MoreExecutors.directExecutor() );
+    assertTrue( indexed.await( 5, TimeUnit.SECONDS ) );
+  }
+
+
+  @Test public void testSpooledJobRunsOnOtherExecutor() throws Exception {
+    final String spoolDir = Files.createTempDirectory( "spool" ).toString();
+    final File produced = File.createTempFile( "spooled", "tmp" );
+    Files.write( produced.toPath(), "spooled".getBytes( StandardCharsets.UTF_8 ) );
+
+    final PentahoAsyncExecutor offering = new PentahoAsyncExecutor( 1, autoSchedulerThreshold );
+    offering.setSharedSpool( new SharedSpool( spoolDir, "offering", 60, 60000 ) );
+    final PentahoAsyncExecutor claiming = new PentahoAsyncExecutor( 1, autoSchedulerThreshold ) {
+      @Override protected IAsyncReportExecution createRecoveredTask( final AsyncJobJournal.JobRecord record,
+                                                                     final IPentahoSession session ) {
+        assertEquals( "test", session.getName() );
+        record.setStagingPath( produced.getPath() );
+        return new RecoveredReportExecution( UUID.fromString( record.getId() ), record );
+      }
+    };
+    claiming.setSharedSpool( new SharedSpool( spoolDir, "claiming", 60, 60000 ) );
+
+    // keep the only thread of the offering executor busy
+    final CountDownLatch running = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final IAsyncReportExecution blocking = mock( IAsyncReportExecution.class );
+    when( blocking.call() ).thenAnswer( invocation -> {
+      running.countDown();
+      release.await();
+      return input;
+    } );
+    try {
+      offering.addTask( blocking, session1 );
+      assertTrue( running.await( 5, TimeUnit.SECONDS ) );
+
+      final UUID id = offering.addTask( createMockCallable( session1 ), session1 );
+      assertEquals( AsyncExecutionStatus.QUEUED, offering.getReportState( id, session1 ).getStatus() );
+      assertFalse( offering.schedule( id, session1 ) );
+
+      claiming.pollSpool();
+      final Future<IFixedSizeStreamingContent> future = offering.getFuture( id, session1 );
+      while ( !future.isDone() ) {
+        Thread.sleep( 10 );
+        offering.pollSpool();
+      }
+
+      assertEquals( "spooled", CharStreams.toString( new InputStreamReader( future.get().getStream() ) ) );
+      assertEquals( AsyncExecutionStatus.FINISHED, offering.getReportState( id, session1 ).getStatus() );
+      // claimed jobs are tracked like local ones
+      assertEquals( 1, claiming.getMetrics().getSubmittedCount() );
+      final Path content = offering.getStagingPath( id, session1 );
+      assertTrue( Files.isRegularFile( content ) );
+
+      offering.cleanFuture( id, session1 );
+      assertNull( offering.getReportState( id, session1 ) );
+      assertFalse( Files.exists( content ) );
+    } finally {
+      release.countDown();
+      offering.shutdown();
+      claiming.shutdown();
+    }
+  }
+
+  @Test public void testSensitiveJobIsNotSpooled() throws Exception {
+    final String spoolDir = Files.createTempDirectory( "spool" ).toString();
+    final PentahoAsyncExecutor offering = new PentahoAsyncExecutor( 1, autoSchedulerThreshold );
+    offering.setSharedSpool( new SharedSpool( spoolDir, "offering", 60, 60000 ) );
+
+    final CountDownLatch running = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final IAsyncReportExecution blocking = mock( IAsyncReportExecution.class );
+    when( blocking.call() ).thenAnswer( invocation -> {
+      running.countDown();
+      release.await();
+      return input;
+    } );
+    when( component.getInputs() ).thenReturn( Collections.<String, Object>singletonMap( "dbPassword", "secret" ) );
+    try {
+      offering.addTask( blocking, session1 );
+      assertTrue( running.await( 5, TimeUnit.SECONDS ) );
+
+      final UUID id = offering.addTask( createMockCallable( session1 ), session1 );
+      assertNull( new SharedSpool( spoolDir, "claiming", 60, 60000 ).claimNext() );
+      assertNotNull( offering.getReportState( id, session1 ) );
+    } finally {
+      release.countDown();
+      offering.shutdown();
+    }
+  }
 
   @Test
   public void testProvidedUuid() {
@@ -0,0 +1,78 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RepositoryNameReservationTest {
+
+  @Test
+  public void testSkipsExistingAndReserved() {
+    final String first = RepositoryNameReservation.reserve( "/skip", "report", ".pdf", "report.pdf"::equals );
+    assertEquals( "report(1).pdf", first );
+    assertTrue( RepositoryNameReservation.isReserved( "/skip", first ) );
+
+    final String second = RepositoryNameReservation.reserve( "/skip", "report", ".pdf", "report.pdf"::equals );
+    assertEquals( "report(2).pdf", second );
+
+    RepositoryNameReservation.release( "/skip", first );
+    RepositoryNameReservation.release( "/skip", second );
+    assertFalse( RepositoryNameReservation.isReserved( "/skip", first ) );
+  }
+
+  @Test
+  public void testFoldersAreIndependent() {
+    final String a = RepositoryNameReservation.reserve( "/a", "report", ".pdf", name -> false );
+    final String b = RepositoryNameReservation.reserve( "/b", "report", ".pdf", name -> false );
+    assertEquals( a, b );
+    RepositoryNameReservation.release( "/a", a );
+    RepositoryNameReservation.release( "/b", b );
+  }
+
+  @Test
+  public void testConcurrentReservationsAreUnique() throws Exception {
+    final ExecutorService executorService = Executors.newFixedThreadPool( 10 );
+    try {
+      final List<Future<String>> results = new ArrayList<>();
+      for ( int i = 0; i < 50; i++ ) {
+        final Callable<String> task = () -> RepositoryNameReservation.reserve( "/concurrent", "report", ".pdf",
+          name -> false );
+        results.add( executorService.submit( task ) );
+      }
+      final Set<String> names = new HashSet<>();
+      for ( final Future<String> result : results ) {
+        names.add( result.get() );
+      }
+      assertEquals( 50, names.size() );
+      for ( final String name : names ) {
+        RepositoryNameReservation.release( "/concurrent", name );
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
+import org.pentaho.reporting.platform.plugin.staging.StagingCompression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharedSpoolTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private SharedSpool node1;
+  private SharedSpool node2;
+
+  @Before
+  public void setUp() {
+    final String dir = folder.getRoot().getAbsolutePath();
+    node1 = new SharedSpool( dir, "node1", 60, 100 );
+    node2 = new SharedSpool( dir, "node2", 60, 100 );
+  }
+
+  private AsyncJobJournal.JobRecord offer( final SharedSpool spool ) throws IOException {
+    final AsyncJobJournal.JobRecord record = new AsyncJobJournal.JobRecord( UUID.randomUUID() );
+    record.setUser( "admin" );
+    record.setPath( "/public/report.prpt" );
+    record.setMimeType( "text/html" );
+    spool.offer( record );
+    return record;
+  }
+
+  @Test
+  public void testClaimIsExclusive() throws IOException {
+    final AsyncJobJournal.JobRecord record = offer( node1 );
+
+    final AsyncJobJournal.JobRecord claimed = node2.claimNext();
+    assertNotNull( claimed );
+    assertEquals( record.getId(), claimed.getId() );
+    assertEquals( "/public/report.prpt", claimed.getPath() );
+    assertNull( node1.claimNext() );
+    assertNull( node2.claimNext() );
+    assertTrue( node2.renew( record.getId() ) );
+  }
+
+  @Test
+  public void testExpiredLeaseIsTakenOver() throws IOException {
+    final SharedSpool node3 = new SharedSpool( folder.getRoot().getAbsolutePath(), "node3", 0, 100 );
+    final AsyncJobJournal.JobRecord record = offer( node1 );
+    assertTrue( node2.claim( record.getId() ) );
+    assertFalse( node1.claim( record.getId() ) );
+
+    final Path lease = node2.getDir( "leases" ).resolve( record.getId() + ".lease" );
+    Files.setLastModifiedTime( lease, FileTime.fromMillis( System.currentTimeMillis() - 10000 ) );
+
+    final AsyncJobJournal.JobRecord claimed = node3.claimNext();
+    assertNotNull( claimed );
+    assertEquals( record.getId(), claimed.getId() );
+    assertEquals( "node3", new String( Files.readAllBytes( lease ), StandardCharsets.UTF_8 ) );
+  }
+
+  @Test
+  public void testRacingTakeOverHasOneWinner() throws Exception {
+    final String dir = folder.getRoot().getAbsolutePath();
+    final SharedSpool racer1 = new SharedSpool( dir, "racer1", 1, 100 );
+    final SharedSpool racer2 = new SharedSpool( dir, "racer2", 1, 100 );
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    try {
+      for ( int round = 0; round < 50; round++ ) {
+        final String id = offer( node1 ).getId();
+        assertTrue( node1.claim( id ) );
+        final Path lease = node1.getDir( "leases" ).resolve( id + ".lease" );
+        Files.setLastModifiedTime( lease, FileTime.fromMillis( System.currentTimeMillis() - 10000 ) );
+
+        final CyclicBarrier barrier = new CyclicBarrier( 2 );
+        final Future<Boolean> first = executor.submit( () -> {
+          barrier.await();
+          return racer1.claim( id );
+        } );
+        final Future<Boolean> second = executor.submit( () -> {
+          barrier.await();
+          return racer2.claim( id );
+        } );
+
+        assertTrue( first.get() ^ second.get() );
+        final String winner = first.get() ? "racer1" : "racer2";
+        assertEquals( winner, new String( Files.readAllBytes( lease ), StandardCharsets.UTF_8 ) );
+        assertTrue( ( first.get() ? racer1 : racer2 ).renew( id ) );
+        assertFalse( ( first.get() ? racer2 : racer1 ).renew( id ) );
+        assertFalse( node1.renew( id ) );
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCompleteKeepsCompression() throws IOException {
+    final AsyncJobJournal.JobRecord record = offer( node1 );
+    assertNotNull( node2.claimNext() );
+    node2.complete( record.getId(), folder.newFile( "staged" ).toPath(), true, 42 );
+
+    final SharedSpool.Result result = node1.getResult( record.getId() );
+    assertTrue( result.getCompressed() );
+    final IFixedSizeStreamingContent content = result.getContent( node1.getResultContent( record.getId() ) );
+    assertEquals( StagingCompression.GZIP, content.getContentEncoding() );
+    assertEquals( 42L, content.getContentSize() );
+  }
+
+  @Test
+  public void testComplete() throws IOException {
+    final AsyncJobJournal.JobRecord record = offer( node1 );
+    assertNotNull( node2.claimNext() );
+    assertNull( node1.getResult( record.getId() ) );
+
+    final Path staged = folder.newFile( "staged" ).toPath();
+    Files.write( staged, "content".getBytes( StandardCharsets.UTF_8 ) );
+    node2.complete( record.getId(), staged );
+
+    assertFalse( Files.exists( staged ) );
+    final SharedSpool.Result result = node1.getResult( record.getId() );
+    assertNotNull( result );
+    assertTrue( result.isFinished() );
+    assertEquals( "content", new String( Files.readAllBytes( node1.getResultContent( record.getId() ) ),
+      StandardCharsets.UTF_8 ) );
+
+    assertNull( result.getCompressed() );
+
+    node1.acknowledge( record.getId() );
+    assertNull( node1.getResult( record.getId() ) );
+    assertTrue( Files.exists( node1.getResultContent( record.getId() ) ) );
+    node1.remove( record.getId() );
+    assertFalse( Files.exists( node1.getResultContent( record.getId() ) ) );
+  }
+
+  @Test
+  public void testFail() throws IOException {
+    final AsyncJobJournal.JobRecord record = offer( node1 );
+    assertNotNull( node2.claimNext() );
+    node2.fail( record.getId(), "boom" );
+
+    final SharedSpool.Result result = node1.getResult( record.getId() );
+    assertNotNull( result );
+    assertFalse( result.isFinished() );
+    assertEquals( AsyncExecutionStatus.FAILED.name(), result.getStatus() );
+    assertEquals( "boom", result.getErrorMessage() );
+    assertNull( node1.claimNext() );
+  }
+
+  @Test
+  public void testWithdrawnJobIsNotRenewed() throws IOException {
+    final AsyncJobJournal.JobRecord record = offer( node1 );
+    assertNotNull( node2.claimNext() );
+    node1.remove( record.getId() );
+
+    assertFalse( node2.renew( record.getId() ) );
+    assertNull( node2.claimNext() );
+  }
+}
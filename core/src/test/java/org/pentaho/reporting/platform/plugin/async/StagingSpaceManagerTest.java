@@ -0,0 +1,135 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StagingSpaceManagerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final StagingSpaceManager manager = new StagingSpaceManager();
+
+  @After
+  public void tearDown() {
+    manager.shutdown();
+  }
+
+  @Test
+  public void testUserQuotaAbortsLargestWorkingJob() throws Exception {
+    manager.setCheckIntervalMillis( 60000 );
+    manager.setMaxUserBytes( 120 );
+    final IAsyncReportExecution small = job( 50, AsyncExecutionStatus.WORKING );
+    final IAsyncReportExecution large = job( 100, AsyncExecutionStatus.WORKING );
+    final IAsyncReportExecution other = job( 100, AsyncExecutionStatus.WORKING );
+    final Map<IAsyncReportExecution<?>, String> jobs = new HashMap<>();
+    jobs.put( small, "joe" );
+    jobs.put( large, "joe" );
+    jobs.put( other, "suzy" );
+    manager.start( () -> jobs );
+
+    manager.check();
+    verify( large ).abort( startsWith( "Async staging quota of 120 bytes per user exceeded" ) );
+    verify( small, never() ).abort( anyString() );
+    verify( other, never() ).abort( anyString() );
+  }
+
+  @Test
+  public void testGlobalQuotaSparesFinishedContent() throws Exception {
+    manager.setMaxTotalBytes( 150 );
+    final IAsyncReportExecution finished = job( 100, AsyncExecutionStatus.FINISHED );
+    final IAsyncReportExecution working = job( 100, AsyncExecutionStatus.WORKING );
+    final Map<IAsyncReportExecution<?>, String> jobs = new HashMap<>();
+    jobs.put( finished, "joe" );
+    jobs.put( working, "suzy" );
+    manager.start( () -> jobs );
+
+    manager.check();
+    verify( working ).abort( startsWith( "Global async staging quota of 150 bytes exceeded" ) );
+    verify( finished, never() ).abort( anyString() );
+  }
+
+  @Test
+  public void testWithinQuota() throws Exception {
+    manager.setMaxTotalBytes( 1000 );
+    manager.setMaxUserBytes( 1000 );
+    final IAsyncReportExecution working = job( 100, AsyncExecutionStatus.WORKING );
+    manager.start( () -> Collections.<IAsyncReportExecution<?>, String>singletonMap( working, "joe" ) );
+
+    manager.check();
+    verify( working, never() ).abort( anyString() );
+  }
+
+  @Test
+  public void testSweepDeletesOnlyOldOrphans() throws Exception {
+    final File stagingDir = folder.newFolder( "asyncstaging" );
+    final File abandoned = new File( stagingDir, "crashed" );
+    assertTrue( abandoned.mkdir() );
+    final File orphan = new File( abandoned, "orphan.tmp" );
+    Files.write( orphan.toPath(), new byte[] { 1 } );
+
+    final File active = new File( stagingDir, "active" );
+    assertTrue( active.mkdir() );
+    final File inUse = new File( active, "inuse.tmp" );
+    Files.write( inUse.toPath(), new byte[] { 1 } );
+    final File recent = new File( active, "recent.tmp" );
+    Files.write( recent.toPath(), new byte[] { 1 } );
+
+    final long old = System.currentTimeMillis() - 10000;
+    assertTrue( orphan.setLastModified( old ) );
+    assertTrue( abandoned.setLastModified( old ) );
+    assertTrue( inUse.setLastModified( old ) );
+
+    manager.sweep( stagingDir.toPath(), Collections.singleton( inUse.toPath().toAbsolutePath().normalize() ),
+      System.currentTimeMillis() - 5000 );
+
+    assertFalse( orphan.exists() );
+    assertFalse( abandoned.exists() );
+    assertTrue( inUse.exists() );
+    assertTrue( recent.exists() );
+  }
+
+  private IAsyncReportExecution job( final int size, final AsyncExecutionStatus status ) throws Exception {
+    final Path file = folder.newFile().toPath();
+    Files.write( file, new byte[ size ] );
+    final IAsyncReportState state = mock( IAsyncReportState.class );
+    when( state.getStatus() ).thenReturn( status );
+    final IAsyncReportExecution task = mock( IAsyncReportExecution.class );
+    when( task.getStagingPath() ).thenReturn( file );
+    when( task.getState() ).thenReturn( state );
+    return task;
+  }
+}
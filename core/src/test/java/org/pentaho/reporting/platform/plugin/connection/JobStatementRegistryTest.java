@@ -0,0 +1,133 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.connection;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JobStatementRegistryTest {
+
+  private final Object job = new Object();
+
+  @After
+  public void tearDown() {
+    JobStatementRegistry.unbind();
+  }
+
+  @Test
+  public void testUnboundConnectionIsNotTracked() {
+    final Connection connection = mock( Connection.class );
+    assertSame( connection, JobStatementRegistry.track( connection ) );
+  }
+
+  @Test
+  public void testCancelRunningStatements() throws Exception {
+    final Connection connection = mock( Connection.class );
+    final PreparedStatement statement = mock( PreparedStatement.class );
+    when( connection.prepareStatement( "select 1" ) ).thenReturn( statement );
+
+    JobStatementRegistry.bind( job );
+    final Connection tracked = JobStatementRegistry.track( connection );
+    assertNotSame( connection, tracked );
+
+    final PreparedStatement prepared = tracked.prepareStatement( "select 1" );
+    assertTrue( prepared instanceof PreparedStatement );
+    assertEquals( 1, JobStatementRegistry.getStatementCount( job ) );
+
+    JobStatementRegistry.cancel( job );
+    verify( statement ).cancel();
+  }
+
+  @Test
+  public void testClosedStatementIsReleased() throws Exception {
+    final Connection connection = mock( Connection.class );
+    final Statement statement = mock( Statement.class );
+    when( connection.createStatement() ).thenReturn( statement );
+
+    JobStatementRegistry.bind( job );
+    final Statement created = JobStatementRegistry.track( connection ).createStatement();
+    created.close();
+    verify( statement ).close();
+    assertEquals( 0, JobStatementRegistry.getStatementCount( job ) );
+  }
+
+  @Test
+  public void testForeignProxyIsTracked() throws Exception {
+    final Connection connection = mock( Connection.class );
+    final Statement statement = mock( Statement.class );
+    when( connection.createStatement() ).thenReturn( statement );
+    // pooled connections of some data sources are proxies as well
+    final Connection pooled = (Connection) Proxy.newProxyInstance( getClass().getClassLoader(),
+      new Class<?>[] { Connection.class }, ( proxy, method, args ) -> {
+        try {
+          return method.invoke( connection, args );
+        } catch ( final InvocationTargetException e ) {
+          throw e.getCause();
+        }
+      } );
+
+    JobStatementRegistry.bind( job );
+    final Connection tracked = JobStatementRegistry.track( pooled );
+    assertNotSame( pooled, tracked );
+    assertSame( tracked, JobStatementRegistry.track( tracked ) );
+
+    tracked.createStatement();
+    assertEquals( 1, JobStatementRegistry.getStatementCount( job ) );
+    tracked.close();
+  }
+
+  @Test
+  public void testOpenConnectionCount() throws Exception {
+    final int before = JobStatementRegistry.getOpenConnectionCount();
+    JobStatementRegistry.bind( job );
+    final Connection tracked = JobStatementRegistry.track( mock( Connection.class ) );
+    assertEquals( before + 1, JobStatementRegistry.getOpenConnectionCount() );
+    tracked.close();
+    tracked.close();
+    assertEquals( before, JobStatementRegistry.getOpenConnectionCount() );
+  }
+
+  @Test
+  public void testNoStatementsAfterCancel() throws Exception {
+    final Connection connection = mock( Connection.class );
+    final Statement statement = mock( Statement.class );
+    when( connection.createStatement() ).thenReturn( statement );
+
+    JobStatementRegistry.bind( job );
+    final Connection tracked = JobStatementRegistry.track( connection );
+    JobStatementRegistry.cancel( job );
+    try {
+      tracked.createStatement();
+      fail( "Canceled job must not run new statements" );
+    } catch ( final SQLException e ) {
+      verify( statement ).close();
+    }
+  }
+}
@@ -14,6 +14,32 @@
 package org.pentaho.reporting.platform.plugin.output;
 
 import junit.framework.TestCase;
+import org.mockito.ArgumentCaptor;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
+import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
+import org.pentaho.reporting.platform.plugin.cache.IReportContent;
+import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+import org.pentaho.reporting.platform.plugin.cache.ReportContentImpl;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class PNGOutputTest extends TestCase {
   PNGOutput pngOutput;
@@ -22,6 +48,10 @@ public class PNGOutputTest extends TestCase {
     pngOutput = new PNGOutput();
   }
 
+  protected void tearDown() {
+    PentahoSystem.clearObjectFactory();
+  }
+
   public void testPaginate() throws Exception {
     assertEquals( 0, pngOutput.paginate( null, 0 ) );
   }
@@ -33,5 +63,63 @@ public class PNGOutputTest extends TestCase {
   public void testGetReportLock() throws Exception {
     assertEquals( pngOutput, pngOutput.getReportLock() );
   }
-}
 
+  public void testScale() throws Exception {
+    ClassicEngineBoot.getInstance().start();
+    final ByteArrayOutputStream full = new ByteArrayOutputStream();
+    pngOutput.generate( new MasterReport(), 0, full, 0 );
+
+    final MasterReport report = new MasterReport();
+    report.getReportConfiguration().setConfigProperty( PNGOutput.SCALE_CONFIG, "0.5" );
+    report.getReportConfiguration().setConfigProperty( PNGOutput.COMPRESSION_CONFIG, "1" );
+    final ByteArrayOutputStream half = new ByteArrayOutputStream();
+    new PNGOutput().generate( report, 0, half, 0 );
+
+    final BufferedImage fullImage = ImageIO.read( new ByteArrayInputStream( full.toByteArray() ) );
+    final BufferedImage halfImage = ImageIO.read( new ByteArrayInputStream( half.toByteArray() ) );
+    assertTrue( Math.abs( fullImage.getWidth() / 2 - halfImage.getWidth() ) <= 1 );
+    assertTrue( Math.abs( fullImage.getHeight() / 2 - halfImage.getHeight() ) <= 1 );
+  }
+
+  public void testCachedPages() throws Exception {
+    ClassicEngineBoot.getInstance().start();
+    final IReportContentCache cache = mock( IReportContentCache.class );
+    final IPluginCacheManager cacheManager = mock( IPluginCacheManager.class );
+    when( cacheManager.getCache() ).thenReturn( cache );
+    PentahoSystem.registerObject( cacheManager, IPluginCacheManager.class );
+
+    // a multi-page report, so that the second page is encoded in the background
+    final File source = new File( "target/test/resource/solution/test/reporting/report1.prpt" );
+    final MasterReport report =
+      (MasterReport) new ResourceManager().createDirectly( source, MasterReport.class ).getResource();
+    report.getReportConfiguration().setConfigProperty( PNGOutput.CACHE_CONFIG, "true" );
+    report.getReportConfiguration().setConfigProperty( PNGOutput.ENCODE_PAGES_CONFIG, "2" );
+
+    final ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+    pngOutput.generate( report, 0, rendered, 0 );
+    assertTrue( rendered.size() > 0 );
+    verify( cache ).put( endsWith( "-0" ), any( IReportContent.class ) );
+    final ArgumentCaptor<IReportContent> next = ArgumentCaptor.forClass( IReportContent.class );
+    verify( cache, timeout( 5000 ) ).put( endsWith( "-1" ), next.capture() );
+    assertTrue( next.getValue().getPageCount() > 1 );
+    assertNotNull( ImageIO.read( new ByteArrayInputStream( next.getValue().getPageData( 1 ) ) ) );
+
+    final byte[] cachedData = new byte[] { 1, 2, 3 };
+    when( cache.get( anyString() ) )
+      .thenReturn( new ReportContentImpl( 1, Collections.singletonMap( 0, cachedData ) ) );
+    final ByteArrayOutputStream cached = new ByteArrayOutputStream();
+    new PNGOutput().generate( report, 0, cached, 0 );
+    assertTrue( Arrays.equals( cachedData, cached.toByteArray() ) );
+    // served from the cache without encoding any page again
+    verify( cache, times( 1 ) ).put( endsWith( "-1" ), any( IReportContent.class ) );
+  }
+
+  public void testEncodePagesClamped() throws Exception {
+    final MasterReport report = new MasterReport();
+    assertEquals( 1, PNGOutput.getEncodePages( report.getConfiguration() ) );
+    report.getReportConfiguration().setConfigProperty( PNGOutput.ENCODE_PAGES_CONFIG, "1000" );
+    assertEquals( PNGOutput.MAX_ENCODE_PAGES, PNGOutput.getEncodePages( report.getConfiguration() ) );
+    report.getReportConfiguration().setConfigProperty( PNGOutput.ENCODE_PAGES_CONFIG, "-1" );
+    assertEquals( 1, PNGOutput.getEncodePages( report.getConfiguration() ) );
+  }
+}
@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.junit.Test;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PagePrefetcherTest {
+
+  @Test
+  public void testPrefetchWindow() throws Exception {
+    final Set<Integer> rendered = ConcurrentHashMap.newKeySet();
+    final CountDownLatch latch = new CountDownLatch( 3 );
+    final PagePrefetcher prefetcher = new PagePrefetcher( new Object(), page -> {
+      rendered.add( page );
+      latch.countDown();
+      return new byte[] { (byte) page };
+    } );
+
+    prefetcher.prefetch( 2, 5 );
+    assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+    awaitPage( prefetcher, 4 );
+    assertArrayEquals( new byte[] { 2 }, prefetcher.getPage( 2 ) );
+    assertArrayEquals( new byte[] { 3 }, prefetcher.getPage( 3 ) );
+    assertNull( prefetcher.getPage( 5 ) );
+
+    // moving the window keeps the pages inside of it and renders only the missing ones
+    rendered.clear();
+    prefetcher.prefetch( 3, 6 );
+    awaitPage( prefetcher, 5 );
+    assertNull( prefetcher.getPage( 2 ) );
+    assertArrayEquals( new byte[] { 3 }, prefetcher.getPage( 3 ) );
+    assertEquals( 1, rendered.size() );
+    assertTrue( rendered.contains( 5 ) );
+
+    prefetcher.clear();
+    assertNull( prefetcher.getPage( 3 ) );
+  }
+
+  @Test
+  public void testStopWaitsForReportLock() throws Exception {
+    final Object lock = new Object();
+    final CountDownLatch rendered = new CountDownLatch( 1 );
+    final PagePrefetcher prefetcher = new PagePrefetcher( lock, page -> {
+      rendered.countDown();
+      return new byte[] { (byte) page };
+    } );
+
+    synchronized ( lock ) {
+      prefetcher.prefetch( 0, 10 );
+      prefetcher.stop();
+    }
+    // a stopped prefetch does not render once the request releases the lock
+    assertFalse( rendered.await( 500, TimeUnit.MILLISECONDS ) );
+    for ( int page = 0; page < 10; page++ ) {
+      assertNull( prefetcher.getPage( page ) );
+    }
+  }
+
+  @Test
+  public void testGetPrefetchPages() {
+    final Configuration configuration = mock( Configuration.class );
+    assertEquals( 0, PagePrefetcher.getPrefetchPages( configuration ) );
+    when( configuration.getConfigProperty( PagePrefetcher.PREFETCH_PAGES_CONFIG ) ).thenReturn( "3" );
+    assertEquals( 3, PagePrefetcher.getPrefetchPages( configuration ) );
+    when( configuration.getConfigProperty( PagePrefetcher.PREFETCH_PAGES_CONFIG ) ).thenReturn( "-1" );
+    assertEquals( 0, PagePrefetcher.getPrefetchPages( configuration ) );
+    when( configuration.getConfigProperty( PagePrefetcher.PREFETCH_PAGES_CONFIG ) ).thenReturn( "many" );
+    assertEquals( 0, PagePrefetcher.getPrefetchPages( configuration ) );
+  }
+
+  private static void awaitPage( final PagePrefetcher prefetcher, final int page ) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+    while ( prefetcher.getPage( page ) == null && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( 10 );
+    }
+    assertTrue( prefetcher.getPage( page ) != null );
+  }
+}
@@ -23,6 +23,7 @@ import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.engine.core.system.StandaloneSession;
 import org.pentaho.platform.engine.core.system.boot.PlatformInitializationException;
 import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
@@ -34,22 +35,32 @@ import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportListene
 import org.pentaho.reporting.engine.classic.core.event.async.ReportListenerThreadHolder;
 import org.pentaho.reporting.engine.classic.core.modules.output.pageable.base.PageableReportProcessor;
 import org.pentaho.reporting.engine.classic.core.modules.output.table.html.AllItemsHtmlPrinter;
+import org.pentaho.reporting.libraries.base.config.ModifiableConfiguration;
 import org.pentaho.reporting.libraries.repository.ContentIOException;
 import org.pentaho.reporting.libraries.resourceloader.ResourceException;
 import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
 import org.pentaho.reporting.platform.plugin.MicroPlatformFactory;
+import org.pentaho.reporting.platform.plugin.SimpleReportingComponent;
 import org.pentaho.reporting.platform.plugin.async.TestListener;
+import org.pentaho.reporting.platform.plugin.cache.DefaultReportCache;
 import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
 import org.pentaho.reporting.platform.plugin.cache.IReportContent;
 import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
 import org.pentaho.reporting.platform.plugin.cache.PluginCacheManagerImpl;
+import org.pentaho.reporting.platform.plugin.cache.ReportCache;
 import org.pentaho.test.platform.engine.core.MicroPlatform;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -405,4 +416,78 @@ public class PageableHTMLOutputTest {
     verify( mockCachingPageableHTMLOutput ).regenerateCache( mockMasterReport, 1, key, 1 );
     assertTrue( returnedValue == -1 );
   }
+
+  @Test
+  public void testCachedHandlerResumesFromPageStates() throws Exception {
+    ReportListenerThreadHolder.clear();
+    ClassicEngineBoot.getInstance().start();
+    final ModifiableConfiguration config = ClassicEngineBoot.getInstance().getEditableConfig();
+    config.setConfigProperty( OutputUtils.CACHE_PAGINATED_HANDLERS, "true" );
+    MicroPlatform microPlatform = MicroPlatformFactory.create();
+    final IPentahoSession session = new StandaloneSession();
+    try {
+      microPlatform.define( ReportCache.class, DefaultReportCache.class );
+      microPlatform.define( ReportOutputHandlerFactory.class, CountingHandlerFactory.class );
+      microPlatform.start();
+      PentahoSessionHolder.setSession( session );
+      CountingPageableHTMLOutput.PROCESSORS.set( 0 );
+      CountingPageableHTMLOutput.RESUMED.clear();
+
+      final File src = new File( "target/test/resource/solution/test/reporting/report1.prpt" );
+      final MasterReport report = (MasterReport) new ResourceManager().createDirectly( src, MasterReport.class )
+        .getResource();
+      requestPage( report, 0 );
+      requestPage( report, 3 );
+
+      // the second request continues from the stored page states instead of paginating the report again
+      assertEquals( 1, CountingPageableHTMLOutput.PROCESSORS.get() );
+      assertEquals( Arrays.asList( false, true ), CountingPageableHTMLOutput.RESUMED );
+    } finally {
+      config.setConfigProperty( OutputUtils.CACHE_PAGINATED_HANDLERS, null );
+      PentahoSystem.invokeLogoutListeners( session );
+      PentahoSessionHolder.removeSession();
+      microPlatform.stop();
+      microPlatform = null;
+    }
+  }
+
+  private static void requestPage( final MasterReport report, final int page ) throws Exception {
+    final SimpleReportingComponent component = new SimpleReportingComponent();
+    component.setReport( report );
+    component.setReportDefinitionPath( "/test/reporting/report1.prpt" );
+    component.setOutputType( "text/html" ); //$NON-NLS-1$
+    final Map<String, Object> inputs = new HashMap<>();
+    inputs.put( "paginate", "true" ); //$NON-NLS-1$ //$NON-NLS-2$
+    inputs.put( "accepted-page", String.valueOf( page ) ); //$NON-NLS-1$
+    component.setInputs( inputs );
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    component.setOutputStream( out );
+    assertTrue( component.execute() );
+    assertTrue( out.size() > 0 );
+  }
+
+  public static class CountingHandlerFactory extends FastExportReportOutputHandlerFactory {
+    @Override protected ReportOutputHandler createHtmlPageOutput( final ReportOutputHandlerSelector selector ) {
+      return new CountingPageableHTMLOutput();
+    }
+  }
+
+  private static class CountingPageableHTMLOutput extends PageableHTMLOutput {
+    static final AtomicInteger PROCESSORS = new AtomicInteger();
+    static final List<Boolean> RESUMED = new CopyOnWriteArrayList<>();
+
+    @Override protected PageableReportProcessor createReportProcessor( final MasterReport report,
+                                                                       final int yieldRate )
+      throws ReportProcessingException {
+      PROCESSORS.incrementAndGet();
+      return super.createReportProcessor( report, yieldRate );
+    }
+
+    @Override public int generate( final MasterReport report, final int acceptedPage, final OutputStream outputStream,
+                                   final int yieldRate )
+      throws ReportProcessingException, IOException, ContentIOException {
+      RESUMED.add( getReportProcessor() != null && getReportProcessor().isPaginated() );
+      return super.generate( report, acceptedPage, outputStream, yieldRate );
+    }
+  }
 }
@@ -13,7 +13,9 @@
 
 package org.pentaho.reporting.platform.plugin.output;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -138,4 +140,37 @@ public class PaginationControlWrapperTest {
       tmp.delete();
     }
   }
+
+  @Test
+  public void streamPages() throws Exception {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    final StringBuilder largePage = new StringBuilder();
+    for ( int i = 0; i < 20000; i++ ) {
+      largePage.append( "<td>\u00e9" ).append( i ).append( "</td>" );
+    }
+    pages.put( 0, largePage.toString().getBytes( "UTF-8" ) );
+    pages.put( 1, "<p>B</p>".getBytes( "UTF-8" ) );
+
+    final String res;
+    try ( ByteArrayOutputStream baos = new ByteArrayOutputStream() ) {
+      PaginationControlWrapper.write( baos, new ReportContentImpl( 2, pages ) );
+      res = new String( baos.toByteArray(), "UTF-8" );
+    }
+
+    final String first = Base64.encodeBase64String(
+      StringEscapeUtils.escapeHtml( largePage.toString() ).getBytes( "UTF-8" ) );
+    final String second = Base64.encodeBase64String( StringEscapeUtils.escapeHtml( "<p>B</p>" ).getBytes( "UTF-8" ) );
+    assertTrue( res.contains( "var pages = [ '" + first + "', \n'" + second + "' ];\n" ) );
+    assertFalse( res.contains( "${pages}" ) );
+  }
+
+  @Test
+  public void writeEmpty() throws Exception {
+    final String res;
+    try ( ByteArrayOutputStream baos = new ByteArrayOutputStream() ) {
+      PaginationControlWrapper.write( baos, new ReportContentImpl( 0, new HashMap<>() ) );
+      res = new String( baos.toByteArray(), "UTF-8" );
+    }
+    assertTrue( res.contains( "var pages = [  ];" ) );
+  }
 }
@@ -45,6 +45,13 @@ public class AbstractStagingHandlerTest {
         AbstractStagingHandler.getStagingHandlerImpl( null, new StandaloneSession( "test" ), StagingMode.TMPFILE );
       assertTrue( handler3 instanceof TempFileStagingHandler );
 
+      assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, "hybrid" )
+        instanceof HybridStagingHandler );
+      assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, "MEMORY" )
+        instanceof MemStagingHandler );
+      assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, "unknown" )
+        instanceof ThruStagingHandler );
+
     } finally {
       microPlatform.stop();
       microPlatform = null;
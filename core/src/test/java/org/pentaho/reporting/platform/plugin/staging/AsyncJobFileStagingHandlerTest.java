@@ -21,9 +21,12 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.pentaho.platform.api.engine.IApplicationContext;
 import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.api.util.ITempFileDeleter;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,6 +34,7 @@ import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
@@ -42,10 +46,14 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -128,6 +136,65 @@ public class AsyncJobFileStagingHandlerTest {
     assertFalse( "File got deleted explicitly", tempFile.exists() );
   }
 
+  @Test public void testCompressedContent() throws IOException {
+    final AsyncJobFileStagingHandler handler = new AsyncJobFileStagingHandler( session );
+    assertTrue( handler.compress() );
+    final byte[] text = new byte[ 10000 ];
+    Arrays.fill( text, (byte) 'a' );
+    try ( OutputStream out = handler.getStagingOutputStream() ) {
+      out.write( text );
+    }
+
+    final IFixedSizeStreamingContent content = handler.getStagingContent();
+    assertEquals( StagingCompression.GZIP, content.getContentEncoding() );
+    assertEquals( text.length, content.getContentSize() );
+    assertTrue( content.getEncodedSize() < text.length );
+    try ( InputStream in = content.getStream() ) {
+      assertArrayEquals( text, IOUtils.toByteArray( in ) );
+    }
+    final ByteArrayOutputStream range = new ByteArrayOutputStream();
+    content.writeTo( range, 10, 20 );
+    assertEquals( 20, range.size() );
+
+    // copies of the staging file are served with the recorded compression
+    final IFixedSizeStreamingContent copy =
+      new AsyncJobFileStagingHandler.FixedSizeStagingContent( handler.getStagingPath().toFile(), true,
+        content.getContentSize() );
+    assertEquals( StagingCompression.GZIP, copy.getContentEncoding() );
+    assertEquals( text.length, copy.getContentSize() );
+    final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    copy.writeEncodedTo( encoded );
+    assertEquals( content.getEncodedSize(), encoded.size() );
+    assertTrue( content.cleanContent() );
+  }
+
+  @Test public void testCompressAfterWrite() throws IOException {
+    final AsyncJobFileStagingHandler handler = new AsyncJobFileStagingHandler( session );
+    handler.getStagingOutputStream().write( 1 );
+    assertFalse( handler.compress() );
+    assertFalse( handler.isCompressed() );
+    handler.getStagingOutputStream().close();
+    assertNull( handler.getStagingContent().getContentEncoding() );
+    handler.getStagingContent().cleanContent();
+  }
+
+  @Test public void testDurableContentIsNotTracked() throws IOException {
+    final ITempFileDeleter deleter = mock( ITempFileDeleter.class );
+    when( session.getAttribute( ITempFileDeleter.DELETER_SESSION_VARIABLE ) ).thenReturn( deleter );
+    PentahoSessionHolder.setSession( session );
+    try {
+      final AsyncJobFileStagingHandler durable = new AsyncJobFileStagingHandler( session, true );
+      verify( deleter, never() ).trackTempFile( any( File.class ) );
+      durable.getStagingOutputStream().close();
+
+      final AsyncJobFileStagingHandler handler = new AsyncJobFileStagingHandler( session );
+      verify( deleter ).trackTempFile( handler.tmpFile );
+      handler.getStagingOutputStream().close();
+    } finally {
+      PentahoSessionHolder.removeSession();
+    }
+  }
+
   @Test public void testStagingDirNotGetDeletedBetweenExecutions() throws Exception {
     CountDownLatch startSignal = new CountDownLatch( 0 );
 
@@ -0,0 +1,114 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HybridStagingHandlerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private IPentahoSession session = mock( IPentahoSession.class );
+  private IApplicationContext appContext = mock( IApplicationContext.class );
+
+  @Before
+  public void before() throws IOException {
+    final File tmpFile = folder.newFile( "repstg.tmp" );
+    when( appContext.createTempFile( eq( session ), anyString(), anyString(), anyBoolean() ) ).thenReturn( tmpFile );
+    PentahoSystem.setApplicationContext( appContext );
+  }
+
+  @After
+  public void after() {
+    PentahoSystem.setApplicationContext( null );
+  }
+
+  @Test
+  public void testSmallOutputStaysInMemory() throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final HybridStagingHandler handler = new HybridStagingHandler( baos, session, 16 );
+    try {
+      handler.getStagingOutputStream().write( "0123456789".getBytes() );
+
+      assertNull( handler.getTmpFile() );
+      assertEquals( StagingMode.MEMORY, handler.getStagingMode() );
+      assertEquals( 0, baos.size() );
+
+      handler.complete();
+      assertEquals( "0123456789", baos.toString() );
+      assertEquals( 10, handler.getWrittenByteCount() );
+    } finally {
+      handler.close();
+    }
+  }
+
+  @Test
+  public void testLargeOutputSpills() throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final HybridStagingHandler handler = new HybridStagingHandler( baos, session, 16 );
+    final byte[] content = new byte[ 100 ];
+    Arrays.fill( content, (byte) 'x' );
+    content[ 0 ] = 'a';
+
+    final OutputStream stream = handler.getStagingOutputStream();
+    stream.write( content, 0, 10 );
+    stream.write( content[ 10 ] );
+    stream.write( content, 11, 89 );
+
+    final File tmpFile = handler.getTmpFile();
+    assertTrue( tmpFile.exists() );
+    assertEquals( StagingMode.TMPFILE, handler.getStagingMode() );
+
+    handler.complete();
+    assertArrayEquals( content, baos.toByteArray() );
+    assertEquals( 100, handler.getWrittenByteCount() );
+
+    handler.close();
+    assertFalse( tmpFile.exists() );
+  }
+
+  @Test
+  public void testFullyBuffered() throws IOException {
+    final HybridStagingHandler handler = new HybridStagingHandler( new ByteArrayOutputStream(), session, 16 );
+
+    assertTrue( handler.isFullyBuffered() );
+    assertTrue( handler.canSendHeaders() );
+  }
+}
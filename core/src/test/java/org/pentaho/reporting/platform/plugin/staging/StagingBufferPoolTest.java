@@ -0,0 +1,83 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StagingBufferPoolTest {
+
+  @Test
+  public void testWritesAcrossSegments() throws IOException {
+    final StagingBufferPool pool = new StagingBufferPool( 8, 10 );
+    final ChunkedOutputStream stream = pool.newStream();
+    final byte[] content = new byte[ 21 ];
+    for ( int i = 0; i < content.length; i++ ) {
+      content[ i ] = (byte) i;
+    }
+    stream.write( content, 0, 5 );
+    stream.write( content[ 5 ] );
+    stream.write( content, 6, 15 );
+    assertEquals( 21, stream.size() );
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stream.writeTo( out );
+    assertArrayEquals( content, out.toByteArray() );
+
+    stream.close();
+    assertEquals( 3, pool.getPooledSegments() );
+  }
+
+  @Test
+  public void testEmptyStream() throws IOException {
+    final ChunkedOutputStream stream = new StagingBufferPool( 8, 10 ).newStream();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stream.writeTo( out );
+    assertEquals( 0, out.size() );
+  }
+
+  @Test
+  public void testSegmentsAreReused() throws IOException {
+    final StagingBufferPool pool = new StagingBufferPool( 8, 10 );
+    final byte[] segment = pool.acquire();
+    pool.release( segment );
+    assertSame( segment, pool.acquire() );
+    assertEquals( 0, pool.getPooledSegments() );
+  }
+
+  @Test
+  public void testPoolIsCapped() throws IOException {
+    final StagingBufferPool pool = new StagingBufferPool( 8, 2 );
+    final ChunkedOutputStream stream = pool.newStream();
+    stream.write( new byte[ 40 ] );
+    stream.close();
+    assertEquals( 2, pool.getPooledSegments() );
+    // foreign sized arrays are not pooled
+    pool.release( new byte[ 4 ] );
+    assertEquals( 2, pool.getPooledSegments() );
+  }
+
+  @Test( expected = IOException.class )
+  public void testClosedStream() throws IOException {
+    final ChunkedOutputStream stream = new StagingBufferPool( 8, 2 ).newStream();
+    stream.close();
+    stream.write( 1 );
+  }
+}
@@ -0,0 +1,71 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StagingCompressionTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testAcceptsGzip() {
+    assertTrue( StagingCompression.acceptsGzip( "gzip, deflate, br" ) );
+    assertTrue( StagingCompression.acceptsGzip( "deflate;q=1.0, GZIP;q=0.5" ) );
+    assertTrue( StagingCompression.acceptsGzip( "*" ) );
+    assertFalse( StagingCompression.acceptsGzip( "gzip;q=0" ) );
+    assertFalse( StagingCompression.acceptsGzip( "deflate, br" ) );
+    assertFalse( StagingCompression.acceptsGzip( null ) );
+  }
+
+  @Test
+  public void testIsEnabledOnlyForText() {
+    assertFalse( StagingCompression.isEnabledFor( "application/pdf" ) );
+    assertFalse( StagingCompression.isEnabledFor( null ) );
+  }
+
+  @Test
+  public void testCompressedContent() throws IOException {
+    final Path compressed = folder.newFile().toPath();
+    try ( OutputStream out = StagingCompression.compress( Files.newOutputStream( compressed ) ) ) {
+      out.write( "a,b,c\n1,2,3\n".getBytes() );
+    }
+    final IFixedSizeStreamingContent content =
+      new AsyncJobFileStagingHandler.FixedSizeStagingContent( compressed.toFile(), true, 12 );
+    assertTrue( StagingCompression.isCompressed( content ) );
+    assertEquals( 12, content.getContentSize() );
+
+    // plain content is never sniffed
+    assertFalse( StagingCompression.isCompressed(
+      new AsyncJobFileStagingHandler.FixedSizeStagingContent( compressed.toFile() ) ) );
+    assertFalse( StagingCompression.isCompressed( null ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testCompressedContentNeedsSize() throws IOException {
+    new AsyncJobFileStagingHandler.FixedSizeStagingContent( folder.newFile(), true, -1 );
+  }
+}
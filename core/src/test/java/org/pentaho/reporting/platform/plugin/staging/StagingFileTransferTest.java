@@ -0,0 +1,79 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StagingFileTransferTest {
+
+  private File source;
+  private File target;
+  private byte[] data;
+
+  @Before
+  public void setUp() throws Exception {
+    source = File.createTempFile( "staging", ".tmp" );
+    target = File.createTempFile( "staging", ".out" );
+    // span more than one transfer buffer
+    data = new byte[ StagingFileTransfer.BUFFER_SIZE * 2 + 17 ];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = (byte) i;
+    }
+    Files.write( source.toPath(), data );
+  }
+
+  @After
+  public void tearDown() {
+    source.delete();
+    target.delete();
+  }
+
+  @Test
+  public void testTransferToStream() throws Exception {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    assertEquals( data.length, StagingFileTransfer.transfer( source.toPath(), baos ) );
+    assertArrayEquals( data, baos.toByteArray() );
+  }
+
+  @Test
+  public void testTransferToFile() throws Exception {
+    try ( FileOutputStream fos = new FileOutputStream( target ) ) {
+      assertEquals( data.length, StagingFileTransfer.transfer( source.toPath(), fos ) );
+    }
+    assertArrayEquals( data, Files.readAllBytes( target.toPath() ) );
+  }
+
+  @Test
+  public void testTransferRange() throws Exception {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    assertEquals( 10, StagingFileTransfer.transfer( source.toPath(), 5, 10, baos ) );
+    final byte[] expected = new byte[ 10 ];
+    System.arraycopy( data, 5, expected, 0, 10 );
+    assertArrayEquals( expected, baos.toByteArray() );
+
+    // range past the end is clipped
+    baos.reset();
+    assertEquals( 3, StagingFileTransfer.transfer( source.toPath(), data.length - 3, 100, baos ) );
+  }
+}